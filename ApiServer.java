@@ -0,0 +1,439 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// JSON over HTTP on top of the same repositories the GUI uses. For each
+// table, e.g. /api/cars:
+//
+//   GET    /api/cars?offset=0&limit=100   one page, in table order
+//   GET    /api/cars?make=Ford            rows matching an indexed column
+//   GET    /api/cars?q=mustang            rows matching a search
+//   GET    /api/cars/{id}                 one row, with its version as ETag
+//   POST   /api/cars                      add a row from a JSON object
+//   PUT    /api/cars/{id}                 replace a row; If-Match makes it
+//                                         conditional on the ETag
+//   DELETE /api/cars/{id}                 remove a row; If-Match as for PUT
+//   GET    /api/metrics                   Metrics.report() as plain text
+//
+// GETs honour If-None-Match with 304 Not Modified. Rows use the same JSON
+// as the JSON-lines export, and the same validation and integrity checks as
+// every other write; writes are answered once they are on disk. Requests
+// get a virtual thread each where the JVM has them and share a fixed pool
+// otherwise.
+//
+// There is no authentication, so the server only listens on the loopback
+// address unless -Dcarstore.api.bind names another one, e.g. 0.0.0.0 for
+// point-of-sale terminals on the shop's network.
+class ApiServer {
+    static final int DEFAULT_PORT = 8080;
+    private static final String BIND_ADDRESS = System.getProperty("carstore.api.bind");
+    private static final int DEFAULT_PAGE = 100;
+    private static final int MAX_PAGE = 1000;
+    private static final int MAX_BODY_BYTES = 64 << 10;
+
+    // One table as the API sees it.
+    static final class Resource<T> {
+        private final StoreFormat<T> format;
+        private final Repository<T> rows;
+        private final Map<String, Repository.Index<T>> filters = new LinkedHashMap<>();
+        private SearchIndex<T> search;
+        private PersistentTable<T> table;
+
+        Resource(StoreFormat<T> format, Repository<T> rows) {
+            this.format = format;
+            this.rows = rows;
+        }
+
+        Resource<T> filter(String column, Repository.Index<T> index) {
+            filters.put(column, index);
+            return this;
+        }
+
+        Resource<T> search(SearchIndex<T> index) {
+            this.search = index;
+            return this;
+        }
+
+        // Writes are answered once the table has them on disk.
+        Resource<T> persistedBy(PersistentTable<T> table) {
+            this.table = table;
+            return this;
+        }
+    }
+
+    private static final class ApiException extends RuntimeException {
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CompletableFuture<Void> ready;
+    private final Map<String, Resource<?>> resources = new LinkedHashMap<>();
+
+    // Requests are answered with 503 until ready completes, and for good if
+    // it completes exceptionally.
+    ApiServer(int port, CompletableFuture<Void> ready, Resource<?>... tables) throws IOException {
+        this.ready = ready;
+        for (Resource<?> table : tables) {
+            resources.put(table.format.name(), table);
+        }
+        this.executor = requestExecutor();
+        // The server writes headers and body separately; with Nagle's
+        // algorithm on, each response then waits ~40 ms for a delayed ACK.
+        // Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(BIND_ADDRESS == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(BIND_ADDRESS, port), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor exists from Java 21 on; it
+    // is looked up so the code still builds and runs on Java 17.
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (exchange.getRequestURI().getRawPath().equals("/api/metrics")) {
+                sendText(exchange, Metrics.report());
+                return;
+            }
+            if (!ready.isDone()) {
+                throw new ApiException(503, "Data is still loading");
+            }
+            if (ready.isCompletedExceptionally()) {
+                throw new ApiException(503, "Data could not be loaded");
+            }
+            String[] path = exchange.getRequestURI().getRawPath().substring("/api/".length()).split("/", -1);
+            Resource<?> resource = resources.get(path[0]);
+            if (resource == null || path.length > 2 || (path.length == 2 && path[1].isEmpty())) {
+                throw new ApiException(404, "No such resource");
+            }
+            String id = path.length == 2 ? decode(path[1]) : null;
+            route(exchange, resource, id);
+        } catch (ApiException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            sendError(exchange, 500, e.toString());
+        } finally {
+            exchange.close();
+            Metrics.record("api." + exchange.getRequestMethod(), start);
+            Metrics.count("api.status." + exchange.getResponseCode());
+        }
+    }
+
+    private <T> void route(HttpExchange exchange, Resource<T> resource, String id) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (id == null && method.equals("GET")) {
+            list(exchange, resource);
+        } else if (id == null && method.equals("POST")) {
+            create(exchange, resource);
+        } else if (id != null && method.equals("GET")) {
+            get(exchange, resource, id);
+        } else if (id != null && method.equals("PUT")) {
+            replace(exchange, resource, id);
+        } else if (id != null && method.equals("DELETE")) {
+            delete(exchange, resource, id);
+        } else {
+            exchange.getResponseHeaders().set("Allow", id == null ? "GET, POST" : "GET, PUT, DELETE");
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private <T> void list(HttpExchange exchange, Resource<T> resource) throws IOException {
+        Map<String, String> query = query(exchange);
+        int offset = intParameter(query, "offset", 0);
+        int limit = Math.min(MAX_PAGE, intParameter(query, "limit", DEFAULT_PAGE));
+        // Taken before reading, so a change during the read gives a newer
+        // tag next time rather than a stale one.
+        String etag = "\"t" + resource.rows.lastVersion() + "\"";
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        List<T> matches = null;
+        for (Map.Entry<String, String> parameter : query.entrySet()) {
+            List<T> found;
+            if (parameter.getKey().equals("q") && resource.search != null) {
+                found = resource.search.search(parameter.getValue());
+            } else if (resource.filters.containsKey(parameter.getKey())) {
+                found = resource.filters.get(parameter.getKey()).find(parameter.getValue());
+            } else if (parameter.getKey().equals("offset") || parameter.getKey().equals("limit")) {
+                continue;
+            } else {
+                throw new ApiException(400, "Cannot filter on " + parameter.getKey());
+            }
+            if (matches != null) {
+                found.retainAll(new HashSet<>(matches));
+            }
+            matches = found;
+        }
+        List<T> page;
+        int total;
+        if (matches == null) {
+            int[] size = new int[1];
+            page = resource.rows.read(() -> {
+                size[0] = resource.rows.size();
+                List<T> rows = new ArrayList<>();
+                for (int i = offset; i < Math.min(size[0], offset + limit); i++) {
+                    rows.add(resource.rows.get(i));
+                }
+                return rows;
+            });
+            total = size[0];
+        } else {
+            total = matches.size();
+            page = matches.subList(Math.min(offset, total), Math.min(total, offset + limit));
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"total\":").append(total).append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit).append(",\"items\":[");
+        for (int i = 0; i < page.size(); i++) {
+            json.append(i > 0 ? "," : "").append(JsonLines.toJson(resource.format, page.get(i)));
+        }
+        json.append("]}");
+        exchange.getResponseHeaders().set("ETag", etag);
+        send(exchange, 200, json.toString());
+    }
+
+    private <T> void get(HttpExchange exchange, Resource<T> resource, String id) throws IOException {
+        Repository.Versioned<T> found = find(resource, id);
+        String etag = etag(found);
+        if (notModified(exchange, etag)) {
+            return;
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        send(exchange, 200, JsonLines.toJson(resource.format, found.row));
+    }
+
+    // Rows posted without a time are stamped with the current one.
+    private <T> void create(HttpExchange exchange, Resource<T> resource) throws IOException {
+        T row = resource.format.withTime(readRow(exchange, resource), System.currentTimeMillis());
+        String id = resource.format.idOf(row);
+        try {
+            resource.rows.add(row);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(409, e.getMessage());
+        }
+        awaitDurable(resource);
+        Repository.Versioned<T> created = find(resource, id);
+        exchange.getResponseHeaders().set("Location", "/api/" + resource.format.name() + "/" + id);
+        exchange.getResponseHeaders().set("ETag", etag(created));
+        send(exchange, 201, JsonLines.toJson(resource.format, created.row));
+    }
+
+    // A replacement without a time keeps the one the row had.
+    private <T> void replace(HttpExchange exchange, Resource<T> resource, String id) throws IOException {
+        T row = readRow(exchange, resource);
+        Repository.Versioned<T> previous = resource.rows.findVersioned(id);
+        if (previous != null) {
+            row = resource.format.withTime(row, resource.format.timeOf(previous.row));
+        }
+        Long expected = expectedVersion(exchange);
+        try {
+            if (expected == null) {
+                if (resource.rows.positionOf(id) < 0) {
+                    throw new ApiException(404, "No " + resource.format.name() + " with ID " + id);
+                }
+                resource.rows.update(id, row);
+            } else if (!resource.rows.compareAndSet(id, expected, row)) {
+                find(resource, id);
+                throw new ApiException(412, "Changed since it was read");
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ApiException(409, e.getMessage());
+        }
+        awaitDurable(resource);
+        Repository.Versioned<T> updated = find(resource, resource.format.idOf(row));
+        exchange.getResponseHeaders().set("ETag", etag(updated));
+        send(exchange, 200, JsonLines.toJson(resource.format, updated.row));
+    }
+
+    private <T> void delete(HttpExchange exchange, Resource<T> resource, String id) throws IOException {
+        Long expected = expectedVersion(exchange);
+        try {
+            if (expected == null) {
+                if (resource.rows.removeById(id) == null) {
+                    throw new ApiException(404, "No " + resource.format.name() + " with ID " + id);
+                }
+            } else if (!resource.rows.compareAndRemove(id, expected)) {
+                find(resource, id);
+                throw new ApiException(412, "Changed since it was read");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(409, e.getMessage());
+        }
+        awaitDurable(resource);
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    // Concurrent writers share one journal fsync, so waiting here costs a
+    // client at most the group-commit delay plus that fsync.
+    private static void awaitDurable(Resource<?> resource) {
+        if (resource.table == null) {
+            return;
+        }
+        try {
+            resource.table.durable().join();
+        } catch (CompletionException e) {
+            throw new ApiException(500, "Saved in memory but not on disk: " + e.getCause().getMessage());
+        }
+    }
+
+    private static <T> Repository.Versioned<T> find(Resource<T> resource, String id) {
+        Repository.Versioned<T> found = resource.rows.findVersioned(id);
+        if (found == null) {
+            throw new ApiException(404, "No " + resource.format.name() + " with ID " + id);
+        }
+        return found;
+    }
+
+    private static <T> T readRow(HttpExchange exchange, Resource<T> resource) throws IOException {
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (bytes.length > MAX_BODY_BYTES) {
+                throw new ApiException(413, "Body too large");
+            }
+            body = new String(bytes, StandardCharsets.UTF_8).trim();
+        }
+        T row;
+        try {
+            row = resource.format.fromValues(JsonLines.parse(resource.format, body));
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+        String problem = resource.format.validate(row);
+        if (problem != null) {
+            throw new ApiException(400, problem);
+        }
+        return row;
+    }
+
+    private static String etag(Repository.Versioned<?> row) {
+        return "\"" + row.version + "\"";
+    }
+
+    private static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null || !Arrays.asList(ifNoneMatch.split("\\s*,\\s*")).contains(etag)) {
+            return false;
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.sendResponseHeaders(304, -1);
+        return true;
+    }
+
+    private static Long expectedVersion(HttpExchange exchange) {
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(ifMatch.trim().replace("\"", ""));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "If-Match must be an ETag from this server");
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = decode(equals < 0 ? pair : pair.substring(0, equals));
+            parameters.put(key, equals < 0 ? "" : decode(pair.substring(equals + 1)));
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) {
+                throw new NumberFormatException();
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a non-negative integer");
+        }
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":\"");
+        for (char c : String.valueOf(message).toCharArray()) {
+            json.append(c == '"' || c == '\\' ? "\\" + c : c < 0x20 ? " " : String.valueOf(c));
+        }
+        send(exchange, status, json.append("\"}").toString());
+    }
+
+    private static void sendText(HttpExchange exchange, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import javax.swing.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Shared executors that keep disk and heavy work off the Event Dispatch
+// Thread. All file I/O goes through one ordered thread so journal appends,
+// loads and compactions never interleave; queries get a small bounded pool.
+final class BackgroundTasks {
+    private static final int QUERY_QUEUE_CAPACITY = 256;
+
+    private static final ExecutorService io = Executors.newSingleThreadExecutor(daemonThreads("store-io"));
+    private static final ExecutorService queries = new ThreadPoolExecutor(
+            Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(),
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUERY_QUEUE_CAPACITY), daemonThreads("store-query"));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(BackgroundTasks::drainIo, "store-io-drain"));
+    }
+
+    private BackgroundTasks() {
+    }
+
+    static Executor io() {
+        return io;
+    }
+
+    static CompletableFuture<Void> io(Runnable task) {
+        return CompletableFuture.runAsync(task, io);
+    }
+
+    // Time spent waiting for a free worker is recorded as "query.wait".
+    static <T> CompletableFuture<T> query(Supplier<T> task) {
+        long queued = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            Metrics.record("query.wait", queued);
+            return task.get();
+        }, queries);
+    }
+
+    // Runs the task on the query pool and hands the result to the EDT.
+    static <T> void query(Supplier<T> task, Consumer<T> onEdt) {
+        query(task).whenComplete((result, error) -> {
+            if (error != null) {
+                Metrics.failure("query", "Background query failed: " + error.getMessage());
+            } else {
+                SwingUtilities.invokeLater(() -> onEdt.accept(result));
+            }
+        });
+    }
+
+    static void onEdt(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            SwingUtilities.invokeLater(task);
+        }
+    }
+
+    // Queued journal appends must reach the disk even when the window is
+    // closed with EXIT_ON_CLOSE.
+    private static void drainIo() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS)) {
+                Metrics.failure("save.exit", "Timed out flushing pending writes on exit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -4,13 +4,20 @@ class Car {
     private final String model;
     private final double price;
     private final String feature;
+    // Epoch milliseconds; 0 for cars listed before listings carried a time.
+    private final long listedAt;
 
     public Car(String id, String make, String model, double price, String feature) {
+        this(id, make, model, price, feature, 0);
+    }
+
+    public Car(String id, String make, String model, double price, String feature, long listedAt) {
         this.id = id;
         this.make = make;
         this.model = model;
         this.price = price;
         this.feature = feature;
+        this.listedAt = listedAt;
     }
 
     public String getId() {
@@ -32,4 +39,8 @@ class Car {
     public String getFeature() {
         return feature;
     }
+
+    public long getListedAt() {
+        return listedAt;
+    }
 }
\ No newline at end of file
@@ -1,132 +1,241 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.io.*;
-import java.nio.file.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 public class CarStoreApp {
 
-    private static final List<Car> cars = new ArrayList<>();
-     private static final List<Customer> customers = new ArrayList<>();
-    private static final List<Sale> sales = new ArrayList<>();
+    // One lock for all three tables, since sales are checked against cars
+    // and customers.
+    private static final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private static final RowStore<Car> carRows = rowStore(StoreFormat.CARS, Car::getId);
+    private static final RowStore<Customer> customerRows = rowStore(StoreFormat.CUSTOMERS, Customer::getId);
+    private static final Repository<Car> cars = new Repository<>(Car::getId, carRows, storeLock);
+    private static final Repository<Customer> customers = new Repository<>(Customer::getId, customerRows, storeLock);
+    private static final SaleColumnStore saleColumns = new SaleColumnStore();
+    private static final Repository<Sale> sales = new Repository<>(Sale::getSaleId, saleColumns, storeLock);
+    private static final Repository.Index<Car> carsByMake = cars.addIndex(Car::getMake);
+    private static final Repository.Index<Sale> salesByCar = sales.addIndex(Sale::getCarId);
+    private static final Repository.Index<Sale> salesByCustomer = sales.addIndex(Sale::getCustomerId);
+    private static final ChangeFeed<Car> carChanges = new ChangeFeed<>(cars);
+    private static final ChangeFeed<Customer> customerChanges = new ChangeFeed<>(customers);
+    private static final ChangeFeed<Sale> saleChanges = new ChangeFeed<>(sales);
+    private static final OrderedIndex<Car, Double> carPriceOrder = new OrderedIndex<>(cars, Car::getPrice);
+    private static final OrderedIndex<Car, String> carMakeOrder = new OrderedIndex<>(cars, Car::getMake);
+    private static final OrderedIndex<Car, String> carModelOrder = new OrderedIndex<>(cars, Car::getModel);
+    private static final OrderedIndex<Sale, Double> salePriceOrder = new OrderedIndex<>(sales, Sale::getTotalPrice);
+    private static final SearchIndex<Car> carSearch = new SearchIndex<>(cars,
+            Car::getId, Car::getMake, Car::getModel, Car::getFeature);
+    private static final SearchIndex<Customer> customerSearch = new SearchIndex<>(customers,
+            Customer::getId, Customer::getName, Customer::getEmail, Customer::getPhone);
+    private static final PricingEngine pricing = new PricingEngine(cars,
+            PricingEngine.readOptions(Paths.get(PricingEngine.OPTIONS_FILE)));
+    private static final StoreAggregates aggregates = new StoreAggregates(cars, customers, sales);
+    private static final SalesRollups rollups = new SalesRollups(cars, customers, sales, salesByCar);
+    private static final ReferentialIntegrity integrity = new ReferentialIntegrity(cars, customers, sales,
+            salesByCar, salesByCustomer);
     
-    private static final String CAR_CSV_FILE = "cars.csv";
-    private static final String CUSTOMER_CSV_FILE = "customers.csv";
-    private static final String SALE_CSV_FILE = "sales.csv";
+    private static final PersistentTable<Car> carTable = new PersistentTable<>(StoreFormat.CARS, cars);
+    private static final PersistentTable<Customer> customerTable = new PersistentTable<>(StoreFormat.CUSTOMERS, customers);
+    private static final PersistentTable<Sale> saleTable = new PersistentTable<>(StoreFormat.SALES, sales);
+    private static final CompletableFuture<Void> dataLoaded = new CompletableFuture<>();
    
     private static boolean loggedIn = false;
 
-    public static void main(String[] args) {
-        //addInitialData();
-        loadCarsFromCSV(); 
-        loadCustomersFromCSV();
-        loadSalesFromCSV();
-        SwingUtilities.invokeLater(CarStoreApp::createAndShowGUI);
+    // Rough heap cost of a loaded row per byte of its CSV line, and of one
+    // cached row.
+    private static final int HEAP_BYTES_PER_FILE_BYTE = 6;
+    private static final int CACHED_ROW_BYTES = 256;
+    private static final int CACHE_IDLE_MINUTES = 10;
+
+    // The window of the dashboard's and reports' "recent" figures.
+    private static final int RECENT_DAYS = 30;
+
+    // A table that would take more than a quarter of the heap is kept on
+    // disk behind a cache of recently read rows sized to a sixteenth of it.
+    // -Dcarstore.tiered=true or false overrides the guess.
+    private static <T> RowStore<T> rowStore(StoreFormat<T> format, Function<T, String> idOf) {
+        long heap = Runtime.getRuntime().maxMemory();
+        String forced = System.getProperty("carstore.tiered");
+        boolean tiered = forced != null ? Boolean.parseBoolean(forced)
+                : storedBytes(format) * HEAP_BYTES_PER_FILE_BYTE > heap / 4;
+        if (!tiered) {
+            return new ListRowStore<>(idOf);
+        }
+        int cachedRows = (int) Math.max(1000, Math.min(Integer.MAX_VALUE, heap / 16 / CACHED_ROW_BYTES));
+        return new TieredRowStore<>(format, Paths.get(format.name() + ".rows"), cachedRows,
+                CACHE_IDLE_MINUTES, TimeUnit.MINUTES);
     }
 
-    private static void loadCarsFromCSV() {
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(CAR_CSV_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length == 5) {
-                    String id = data[0];
-                    String make = data[1];
-                    String model = data[2];
-                    double price = Double.parseDouble(data[3]);
-                    String feature = data[4];
-                    cars.add(new Car(id, make, model, price, feature));
-                }
+    private static long storedBytes(StoreFormat<?> format) {
+        long bytes = 0;
+        for (String file : new String[]{format.csvFile(), format.snapshotFile()}) {
+            try {
+                bytes = Math.max(bytes, Files.size(Paths.get(file)));
+            } catch (IOException e) {
+                // Not there yet.
             }
-        } catch (IOException e) {
-            System.err.println("Error reading cars from CSV: " + e.getMessage());
         }
+        return bytes;
     }
-    
-     private static void saveCarsToCSV() {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(CAR_CSV_FILE))) {
-            for (Car car : cars) {
-                writer.write(String.join(",", car.getId(), car.getMake(), car.getModel(), 
-                                          String.valueOf(car.getPrice()), car.getFeature()));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving cars to CSV: " + e.getMessage());
+
+    private static void registerGauges() {
+        Metrics.gauge("rows.cars", cars::size);
+        Metrics.gauge("rows.customers", customers::size);
+        Metrics.gauge("rows.sales", sales::size);
+        if (carRows instanceof TieredRowStore) {
+            Metrics.gauge("cache.cars", ((TieredRowStore<Car>) carRows)::cacheStats);
+        }
+        if (customerRows instanceof TieredRowStore) {
+            Metrics.gauge("cache.customers", ((TieredRowStore<Customer>) customerRows)::cacheStats);
         }
     }
 
-    private static void loadCustomersFromCSV() {
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(CUSTOMER_CSV_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length == 4) {
-                    String id = data[0];
-                    String name = data[1];
-                    String email = data[2];
-                    String phone = data[3];
-                    customers.add(new Customer(id, name, email, phone));
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading customers from CSV: " + e.getMessage());
+    // No arguments: the GUI. "serve [port]": only the HTTP API. "--api
+    // [port]": both, sharing the same data. Anything else: StoreCli.
+    public static void main(String[] args) {
+        boolean serve = args.length > 0 && args[0].equals("serve");
+        boolean api = serve || args.length > 0 && args[0].equals("--api");
+        if (args.length > 0 && !api) {
+            System.exit(StoreCli.run(args));
         }
-    }
-    
-    private static void saveCustomersToCSV() {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(CUSTOMER_CSV_FILE))) {
-            for (Customer customer : customers) {
-                writer.write(String.join(",", customer.getId(), customer.getName(), 
-                                          customer.getEmail(), customer.getPhone()));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving customers to CSV: " + e.getMessage());
+        //addInitialData();
+        registerGauges();
+        if (!serve) {
+            SwingUtilities.invokeLater(() -> createAndShowGUI(!api));
+        }
+        if (api) {
+            startApi(args.length > 1 ? Integer.parseInt(args[1]) : ApiServer.DEFAULT_PORT);
+            loadData(!serve);
         }
     }
-    
-    private static void loadSalesFromCSV() {
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(SALE_CSV_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] data = line.split(",");
-                if (data.length == 4) {
-                    String saleId = data[0];
-                    String carId = data[1];
-                    String customerId = data[2];
-                    double totalPrice = Double.parseDouble(data[3]);
-                    sales.add(new Sale(saleId, carId, customerId, totalPrice));
+
+    private static void loadData(boolean showProblems) {
+        BackgroundTasks.io(() -> {
+            carTable.load();
+            customerTable.load();
+            saleTable.load();
+        }).whenComplete((ignored, error) -> BackgroundTasks.onEdt(() -> {
+            if (error != null) {
+                Metrics.failure("load", "Error loading the data: " + error.getMessage());
+                dataLoaded.completeExceptionally(error);
+                if (showProblems) {
+                    JOptionPane.showMessageDialog(null, "The data could not be loaded completely:\n"
+                            + error.getMessage(), "Data Problems", JOptionPane.ERROR_MESSAGE);
                 }
+                return;
             }
+            integrity.startEnforcing();
+            dataLoaded.complete(null);
+            reportOrphanSales(showProblems);
+        }));
+    }
+
+    private static void startApi(int port) {
+        try {
+            ApiServer server = new ApiServer(port, dataLoaded,
+                    new ApiServer.Resource<>(StoreFormat.CARS, cars).filter("make", carsByMake).search(carSearch)
+                            .persistedBy(carTable),
+                    new ApiServer.Resource<>(StoreFormat.CUSTOMERS, customers).search(customerSearch)
+                            .persistedBy(customerTable),
+                    new ApiServer.Resource<>(StoreFormat.SALES, sales)
+                            .filter("carId", salesByCar).filter("customerId", salesByCustomer)
+                            .persistedBy(saleTable));
+            server.start();
+            System.out.println("API listening on http://localhost:" + server.port() + "/api/");
         } catch (IOException e) {
-            System.err.println("Error reading sales from CSV: " + e.getMessage());
+            Metrics.failure("api", "Could not start the API on port " + port + ": " + e.getMessage());
         }
     }
 
-    private static void saveSalesToCSV() {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(SALE_CSV_FILE))) {
-            for (Sale sale : sales) {
-                writer.write(String.join(",", sale.getSaleId(), sale.getCarId(), 
-                                          sale.getCustomerId(), String.valueOf(sale.getTotalPrice())));
-                writer.newLine();
+    // Sales loaded from disk are kept even if their car or customer is gone;
+    // they are listed in sales.csv.violations so they can be fixed by hand.
+    private static void reportOrphanSales(boolean showDialog) {
+        Path report = Paths.get(StoreFormat.SALES.csvFile() + ".violations");
+        sales.read(() -> {
+            List<Car> carRows = cars.snapshot();
+            List<Customer> customerRows = customers.snapshot();
+            SaleColumnStore.Snapshot snapshot = saleColumns.snapshot();
+            return BackgroundTasks.query(() -> Metrics.time("query.orphans", () -> ReferentialIntegrity.findOrphans(
+                    snapshot, carRows.stream().map(Car::getId).collect(Collectors.toSet()),
+                    customerRows.stream().map(Customer::getId).collect(Collectors.toSet()))));
+        }).thenAcceptAsync(orphans -> {
+            try {
+                if (orphans.isEmpty()) {
+                    Files.deleteIfExists(report);
+                    return;
+                }
+                Files.write(report, orphans);
+            } catch (IOException e) {
+                Metrics.failure("save.violations", "Error writing " + report + ": " + e.getMessage());
             }
-        } catch (IOException e) {
-            System.err.println("Error saving sales to CSV: " + e.getMessage());
+            String message = orphans.size() + " sales refer to a car or customer that does not exist.\n"
+                    + "They are listed in " + report.toAbsolutePath() + ".";
+            if (showDialog) {
+                BackgroundTasks.onEdt(() -> JOptionPane.showMessageDialog(null, message, "Data Problems",
+                        JOptionPane.WARNING_MESSAGE));
+            } else {
+                System.err.println(message);
+            }
+        }, BackgroundTasks.io());
+    }
+
+    // Snapshots are taken only once loading has finished without errors,
+    // otherwise a partially loaded table would overwrite a complete snapshot.
+    private static void exit(JFrame frame) {
+        frame.setVisible(false);
+        if (!dataLoaded.isDone() || dataLoaded.isCompletedExceptionally()) {
+            System.exit(0);
         }
+        CompletableFuture.allOf(carTable.writeSnapshot(), customerTable.writeSnapshot(), saleTable.writeSnapshot())
+                .whenComplete((ignored, error) -> System.exit(0));
     }
     
-    private static void createAndShowGUI() {
+    // Only the login card is built before the window opens. Once it is
+    // up, the other cards are built in the background and, unless the API
+    // already started it, the data starts loading.
+    private static void createAndShowGUI(boolean loadWhenOpened) {
+        EdtMonitor.install();
         JFrame frame = new JFrame("Car Store Management System");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        LazyCards cards = new LazyCards();
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                if (loadWhenOpened) {
+                    loadData(true);
+                }
+                cards.prefetch();
+            }
+
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exit(frame);
+            }
+        });
         frame.setSize(1200, 800);
         frame.setLocationRelativeTo(null);
 
-        CardLayout cardLayout = new CardLayout();
-        JPanel contentPanel = new JPanel(cardLayout);
-
         Color primaryColor = new Color(0, 0, 102); 
         Color secondaryColor = new Color(255, 255, 255); 
         Color accentColor = new Color(204, 0, 0); 
@@ -157,10 +266,7 @@ public class CarStoreApp {
                     BorderFactory.createEmptyBorder(10, 20, 10, 20)));
             button.addActionListener(e -> {
                 if (loggedIn || item.equals("Logout")) {
-                    cardLayout.show(contentPanel, item);
-                    if (item.equals("Dashboard")) {
-                        updateDashboardPanel(contentPanel);
-                    }
+                    Metrics.time("ui.nav." + item.toLowerCase(), () -> cards.show(item));
                 } else {
                     JOptionPane.showMessageDialog(frame, "Please log in first.", "Access Denied", JOptionPane.WARNING_MESSAGE);
                 }
@@ -169,23 +275,31 @@ public class CarStoreApp {
         }
         mainPanel.add(navPanel, BorderLayout.SOUTH);
 
-        contentPanel.add(createLoginPanel(cardLayout, contentPanel), "Login");
-        contentPanel.add(createDashboardPanel(), "Dashboard");
-        contentPanel.add(createCarManagementPanel(), "Cars");
-        contentPanel.add(createCustomerManagementPanel(), "Customers");
-        contentPanel.add(createSalesManagementPanel(), "Sales");
-        contentPanel.add(createCustomizationsPanel(), "Customize");
-        contentPanel.add(createReportsPanel(), "Reports");
-        contentPanel.add(createLogoutPanel(cardLayout, contentPanel), "Logout");
+        cards.add("Login", () -> createLoginPanel(cards));
+        cards.add("Dashboard", CarStoreApp::createDashboardPanel);
+        cards.add("Cars", CarStoreApp::createCarManagementPanel);
+        cards.add("Customers", CarStoreApp::createCustomerManagementPanel);
+        cards.add("Sales", CarStoreApp::createSalesManagementPanel);
+        cards.add("Customize", CarStoreApp::createCustomizationsPanel);
+        cards.add("Reports", CarStoreApp::createReportsPanel);
+        cards.add("Logout", () -> createLogoutPanel(cards));
+        cards.show("Login");
 
-        mainPanel.add(contentPanel, BorderLayout.CENTER);
+        mainPanel.add(cards.panel(), BorderLayout.CENTER);
 
         frame.setContentPane(mainPanel);
-        cardLayout.show(contentPanel, "Login");
+        mainPanel.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(
+                KeyStroke.getKeyStroke("ctrl shift D"), "diagnostics");
+        mainPanel.getActionMap().put("diagnostics", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                DiagnosticsDialog.show(frame);
+            }
+        });
         frame.setVisible(true);
     }
 
-    private static JPanel createLoginPanel(CardLayout cardLayout, JPanel contentPanel) {
+    private static JPanel createLoginPanel(LazyCards cards) {
         JPanel loginPanel = new JPanel(new GridBagLayout());
         loginPanel.setBackground(new Color(248, 249, 250));
         GridBagConstraints gbc = new GridBagConstraints();
@@ -230,8 +344,7 @@ public class CarStoreApp {
             String password = new String(passwordField.getPassword());
             if ("admin".equals(username) && "12345".equals(password)) {
                 loggedIn = true;
-                cardLayout.show(contentPanel, "Dashboard");
-                updateDashboardPanel(contentPanel);
+                cards.show("Dashboard");
             } else {
                 JOptionPane.showMessageDialog(loginPanel, "Invalid credentials", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -241,6 +354,9 @@ public class CarStoreApp {
         return loginPanel;
     }
 
+    // The figures follow every change through the change feeds, and are
+    // worked out again whenever the Dashboard is shown, as today and the
+    // last 30 days move on.
     private static JPanel createDashboardPanel() {
         JPanel dashboardPanel = new JPanel(new BorderLayout());
         dashboardPanel.setBackground(new Color(248, 249, 250));
@@ -249,33 +365,45 @@ public class CarStoreApp {
         titleLabel.setFont(new Font("Arial", Font.BOLD, 24));
         dashboardPanel.add(titleLabel, BorderLayout.NORTH);
 
-        JPanel statsPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+        String[] titles = {"Available Cars", "Customers", "Total Sales", "Revenue", "New Listings", "Inquiries Today",
+                "Sales (" + RECENT_DAYS + " Days)", "Revenue (" + RECENT_DAYS + " Days)"};
+        JLabel[] values = new JLabel[titles.length];
+        JPanel statsPanel = new JPanel(new GridLayout(4, 2, 10, 10));
         statsPanel.setBackground(new Color(248, 249, 250));
         statsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        statsPanel.add(createStatPanel("Available Cars", String.valueOf(cars.size())));
-        statsPanel.add(createStatPanel("Customers", String.valueOf(customers.size())));
-        statsPanel.add(createStatPanel("Total Sales", String.valueOf(sales.size())));
-        statsPanel.add(createStatPanel("Revenue", "$" + sales.stream().mapToDouble(Sale::getTotalPrice).sum()));
-        statsPanel.add(createStatPanel("New Listings", "10"));
-        statsPanel.add(createStatPanel("Inquiries Today", "5"));
+        for (int i = 0; i < titles.length; i++) {
+            values[i] = new JLabel("", SwingConstants.CENTER);
+            statsPanel.add(createStatPanel(titles[i], values[i]));
+        }
+        Runnable refresh = () -> Metrics.time("ui.dashboard.refresh", () -> refreshDashboard(values));
+        refresh.run();
+        ChangeFeed.onChange(refresh, carChanges, customerChanges, saleChanges);
+        dashboardPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(ComponentEvent e) {
+                refresh.run();
+            }
+        });
 
         dashboardPanel.add(statsPanel, BorderLayout.CENTER);
         return dashboardPanel;
     }
 
-    private static void updateDashboardPanel(JPanel contentPanel) {
-        JPanel dashboardPanel = (JPanel) contentPanel.getComponent(1);
-        JPanel statsPanel = (JPanel) dashboardPanel.getComponent(1);
-
-        ((JLabel) ((JPanel) statsPanel.getComponent(0)).getComponent(1)).setText(String.valueOf(cars.size()));
-        ((JLabel) ((JPanel) statsPanel.getComponent(1)).getComponent(1)).setText(String.valueOf(customers.size()));
-        ((JLabel) ((JPanel) statsPanel.getComponent(2)).getComponent(1)).setText(String.valueOf(sales.size()));
-        ((JLabel) ((JPanel) statsPanel.getComponent(3)).getComponent(1)).setText("$" + sales.stream().mapToDouble(Sale::getTotalPrice).sum());
-        ((JLabel) ((JPanel) statsPanel.getComponent(4)).getComponent(1)).setText("10");
-        ((JLabel) ((JPanel) statsPanel.getComponent(5)).getComponent(1)).setText("5");
+    private static void refreshDashboard(JLabel[] values) {
+        long now = System.currentTimeMillis();
+        SalesRollups.Totals today = rollups.total(rollups.startOf(SalesRollups.DAY, now), now);
+        SalesRollups.Totals recent = rollups.total(now - Duration.ofDays(RECENT_DAYS).toMillis(), now);
+        values[0].setText(String.valueOf(aggregates.getCarCount()));
+        values[1].setText(String.valueOf(aggregates.getCustomerCount()));
+        values[2].setText(String.valueOf(aggregates.getSaleCount()));
+        values[3].setText("$" + aggregates.getRevenue());
+        values[4].setText(String.valueOf(today.listings));
+        values[5].setText(String.valueOf(today.newCustomers));
+        values[6].setText(String.valueOf(recent.sales));
+        values[7].setText("$" + recent.revenue);
     }
 
-    private static JPanel createStatPanel(String title, String value) {
+    private static JPanel createStatPanel(String title, JLabel valueLabel) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
         panel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
@@ -284,7 +412,6 @@ public class CarStoreApp {
         titleLabel.setFont(new Font("Arial", Font.PLAIN, 18));
         panel.add(titleLabel, BorderLayout.NORTH);
 
-        JLabel valueLabel = new JLabel(value, SwingConstants.CENTER);
         valueLabel.setFont(new Font("Arial", Font.BOLD, 24));
         panel.add(valueLabel, BorderLayout.CENTER);
 
@@ -305,16 +432,19 @@ public class CarStoreApp {
         searchPanel.add(new JLabel("Search:"));
         JTextField searchField = new JTextField(20);
         searchPanel.add(searchField);
+        JTextField fromField = new JTextField(7);
+        JTextField toField = new JTextField(7);
+        searchPanel.add(new JLabel("Price from:"));
+        searchPanel.add(fromField);
+        searchPanel.add(new JLabel("to:"));
+        searchPanel.add(toField);
         carPanel.add(searchPanel, BorderLayout.NORTH);
 
-        String[] columnNames = {"ID", "Make", "Model", "Price", "Feature"};
-        Object[][] data = new Object[cars.size()][5];
-        for (int i = 0; i < cars.size(); i++) {
-            Car car = cars.get(i);
-            data[i] = new Object[]{car.getId(), car.getMake(), car.getModel(), car.getPrice(), car.getFeature()};
-        }
-        DefaultTableModel tableModel = new DefaultTableModel(data, columnNames);
+        CarTableModel tableModel = new CarTableModel(cars, carChanges);
         JTable carTable = new JTable(tableModel);
+        TableSearch.install(searchField, carChanges, carSearch, tableModel);
+        TableOrder.sortOnHeaderClick(carTable, tableModel, Map.of(1, carMakeOrder, 2, carModelOrder, 3, carPriceOrder));
+        TableOrder.filterOnRange(fromField, toField, tableModel, carPriceOrder);
         carPanel.add(new JScrollPane(carTable), BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel();
@@ -322,7 +452,7 @@ public class CarStoreApp {
         JButton editButton = new JButton("Edit");
         JButton deleteButton = new JButton("Delete");
 
-        addButton.addActionListener(e -> addCar(tableModel));
+        addButton.addActionListener(e -> addCar());
         editButton.addActionListener(e -> editCar(carTable, tableModel));
         deleteButton.addActionListener(e -> deleteCar(carTable, tableModel));
 
@@ -335,46 +465,65 @@ public class CarStoreApp {
         return panel;
     }
 
-   private static void addCar(DefaultTableModel tableModel) {
+    private static void addCar() {
         String id = JOptionPane.showInputDialog("Enter ID:");
         String make = JOptionPane.showInputDialog("Enter Make:");
         String model = JOptionPane.showInputDialog("Enter Model:");
         String price = JOptionPane.showInputDialog("Enter Price:");
         String feature = JOptionPane.showInputDialog("Enter Feature:");
-        Car car = new Car(id, make, model, Double.parseDouble(price), feature);
-        tableModel.addRow(new Object[]{id, make, model, price, feature});
-        cars.add(car);
-        saveCarsToCSV(); // Save the updated car list
+        if (cars.containsId(id)) {
+            JOptionPane.showMessageDialog(null, "A car with ID " + id + " already exists.");
+            return;
+        }
+        Car car = new Car(id, make, model, Double.parseDouble(price), feature, System.currentTimeMillis());
+        try {
+            cars.add(car);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage());
+        }
     }
 
-    private static void editCar(JTable table, DefaultTableModel tableModel) {
+    private static void editCar(JTable table, CarTableModel tableModel) {
         int selectedRow = table.getSelectedRow();
         if (selectedRow >= 0) {
-            String id = JOptionPane.showInputDialog("Edit ID:", tableModel.getValueAt(selectedRow, 0));
-            String make = JOptionPane.showInputDialog("Edit Make:", tableModel.getValueAt(selectedRow, 1));
-            String model = JOptionPane.showInputDialog("Edit Model:", tableModel.getValueAt(selectedRow, 2));
-            String price = JOptionPane.showInputDialog("Edit Price:", tableModel.getValueAt(selectedRow, 3));
-            String feature = JOptionPane.showInputDialog("Edit Feature:", tableModel.getValueAt(selectedRow, 4));
-            Car car = new Car(id, make, model, Double.parseDouble(price), feature);
-            tableModel.setValueAt(id, selectedRow, 0);
-            tableModel.setValueAt(make, selectedRow, 1);
-            tableModel.setValueAt(model, selectedRow, 2);
-            tableModel.setValueAt(price, selectedRow, 3);
-            tableModel.setValueAt(feature, selectedRow, 4);
-            cars.set(selectedRow, car);
-            saveCarsToCSV(); // Save the updated car list
+            Repository.Versioned<Car> read = cars.findVersioned(tableModel.getRow(selectedRow).getId());
+            if (read == null) {
+                JOptionPane.showMessageDialog(table, "That car has just been deleted.");
+                return;
+            }
+            Car current = read.row;
+            String id = JOptionPane.showInputDialog("Edit ID:", current.getId());
+            String make = JOptionPane.showInputDialog("Edit Make:", current.getMake());
+            String model = JOptionPane.showInputDialog("Edit Model:", current.getModel());
+            String price = JOptionPane.showInputDialog("Edit Price:", current.getPrice());
+            String feature = JOptionPane.showInputDialog("Edit Feature:", current.getFeature());
+            if (!id.equals(current.getId()) && cars.containsId(id)) {
+                JOptionPane.showMessageDialog(table, "A car with ID " + id + " already exists.");
+                return;
+            }
+            Car car = new Car(id, make, model, Double.parseDouble(price), feature, current.getListedAt());
+            try {
+                if (!cars.compareAndSet(current.getId(), read.version, car)) {
+                    JOptionPane.showMessageDialog(table, "Car " + current.getId()
+                            + " was changed by someone else while you were editing it. Please edit it again.");
+                }
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(table, e.getMessage());
+            }
         } else {
             JOptionPane.showMessageDialog(table, "Please select a car to edit.");
         }
     }
 
 
-    private static void deleteCar(JTable table, DefaultTableModel tableModel) {
+    private static void deleteCar(JTable table, CarTableModel tableModel) {
         int selectedRow = table.getSelectedRow();
         if (selectedRow >= 0) {
-            tableModel.removeRow(selectedRow);
-            cars.remove(selectedRow);
-            saveCarsToCSV(); // Save the updated car list
+            try {
+                cars.removeById(tableModel.getRow(selectedRow).getId());
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(table, e.getMessage());
+            }
         } else {
             JOptionPane.showMessageDialog(table, "Please select a car to delete.");
         }
@@ -397,70 +546,126 @@ public class CarStoreApp {
         searchPanel.add(searchField);
         customerPanel.add(searchPanel, BorderLayout.NORTH);
 
-        String[] columnNames = {"ID", "Name", "Email", "Phone"};
-        Object[][] data = new Object[customers.size()][4];
-        for (int i = 0; i < customers.size(); i++) {
-            Customer customer = customers.get(i);
-            data[i] = new Object[]{customer.getId(), customer.getName(), customer.getEmail(), customer.getPhone()};
-        }
-        DefaultTableModel tableModel = new DefaultTableModel(data, columnNames);
+        CustomerTableModel tableModel = new CustomerTableModel(customers, customerChanges);
         JTable customerTable = new JTable(tableModel);
+        TableSearch.install(searchField, customerChanges, customerSearch, tableModel);
         customerPanel.add(new JScrollPane(customerTable), BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel();
         JButton addButton = new JButton("Add");
         JButton editButton = new JButton("Edit");
         JButton deleteButton = new JButton("Delete");
+        JButton duplicatesButton = new JButton("Find Duplicates");
 
-        addButton.addActionListener(e -> addCustomer(tableModel));
+        addButton.addActionListener(e -> addCustomer());
         editButton.addActionListener(e -> editCustomer(customerTable, tableModel));
         deleteButton.addActionListener(e -> deleteCustomer(customerTable, tableModel));
+        duplicatesButton.addActionListener(e -> findDuplicateCustomers(customerTable));
 
         buttonPanel.add(addButton);
         buttonPanel.add(editButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(duplicatesButton);
         customerPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         panel.add(customerPanel, BorderLayout.CENTER);
         return panel;
     }
 
-    private static void addCustomer(DefaultTableModel tableModel) {
+    private static void addCustomer() {
         String id = JOptionPane.showInputDialog("Enter ID:");
         String name = JOptionPane.showInputDialog("Enter Name:");
         String email = JOptionPane.showInputDialog("Enter Email:");
         String phone = JOptionPane.showInputDialog("Enter Phone:");
-        Customer customer = new Customer(id, name, email, phone);
-        tableModel.addRow(new Object[]{id, name, email, phone});
-        customers.add(customer);
-        saveCustomersToCSV(); // Save updated customer list
+        if (customers.containsId(id)) {
+            JOptionPane.showMessageDialog(null, "A customer with ID " + id + " already exists.");
+            return;
+        }
+        Customer customer = new Customer(id, name, email, phone, System.currentTimeMillis());
+        BackgroundTasks.query(() -> Metrics.time("query.similar", () -> similarCustomers(customer)), similar -> {
+            if (!similar.isEmpty()) {
+                Customer existing = similar.get(0);
+                int answer = JOptionPane.showConfirmDialog(null, "This looks like customer " + existing.getId()
+                                + ": " + existing.getName() + ", " + existing.getEmail() + ", " + existing.getPhone()
+                                + (similar.size() > 1 ? " (and " + (similar.size() - 1) + " more)" : "")
+                                + ".\nAdd anyway?", "Possible Duplicate", JOptionPane.YES_NO_OPTION);
+                if (answer != JOptionPane.YES_OPTION) {
+                    return;
+                }
+            }
+            try {
+                customers.add(customer);
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(null, e.getMessage());
+            }
+        });
+    }
+
+    // Candidates come from the search index: the same email, the last four
+    // digits of the phone, or the name.
+    private static List<Customer> similarCustomers(Customer customer) {
+        Map<String, Customer> candidates = new LinkedHashMap<>();
+        String email = CustomerDedupe.emailKey(customer.getEmail());
+        String phone = CustomerDedupe.phoneKey(customer.getPhone());
+        String name = CustomerDedupe.nameKey(customer.getName());
+        for (String query : new String[]{email, phone.isEmpty() ? "" : phone.substring(phone.length() - 4), name}) {
+            if (!query.isEmpty()) {
+                customerSearch.search(query).forEach(candidate -> candidates.put(candidate.getId(), candidate));
+            }
+        }
+        return CustomerDedupe.similar(customer, candidates.values(), CustomerDedupe.DEFAULT_MIN_SCORE);
+    }
+
+    // Sales per customer are counted in one pass over the sales snapshot,
+    // rather than asking the index once per customer.
+    private static void findDuplicateCustomers(JTable table) {
+        List<Customer> snapshot = customers.snapshot();
+        SaleColumnStore.Snapshot saleRows = sales.read(saleColumns::snapshot);
+        BackgroundTasks.query(() -> Metrics.time("query.dedupe", () -> {
+            Map<String, Integer> salesOf = saleRows.countByCustomer();
+            return CustomerDedupe.find(snapshot, id -> salesOf.getOrDefault(id, 0), CustomerDedupe.DEFAULT_MIN_SCORE);
+        }), merges -> DuplicatesDialog.show(table, merges, customers, sales, salesByCustomer));
     }
 
-    private static void editCustomer(JTable table, DefaultTableModel tableModel) {
+    private static void editCustomer(JTable table, CustomerTableModel tableModel) {
         int selectedRow = table.getSelectedRow();
         if (selectedRow >= 0) {
-            String id = JOptionPane.showInputDialog("Edit ID:", tableModel.getValueAt(selectedRow, 0));
-            String name = JOptionPane.showInputDialog("Edit Name:", tableModel.getValueAt(selectedRow, 1));
-            String email = JOptionPane.showInputDialog("Edit Email:", tableModel.getValueAt(selectedRow, 2));
-            String phone = JOptionPane.showInputDialog("Edit Phone:", tableModel.getValueAt(selectedRow, 3));
-            Customer customer = new Customer(id, name, email, phone);
-            tableModel.setValueAt(id, selectedRow, 0);
-            tableModel.setValueAt(name, selectedRow, 1);
-            tableModel.setValueAt(email, selectedRow, 2);
-            tableModel.setValueAt(phone, selectedRow, 3);
-            customers.set(selectedRow, customer);
-            saveCustomersToCSV(); // Save updated customer list
+            Repository.Versioned<Customer> read = customers.findVersioned(tableModel.getRow(selectedRow).getId());
+            if (read == null) {
+                JOptionPane.showMessageDialog(table, "That customer has just been deleted.");
+                return;
+            }
+            Customer current = read.row;
+            String id = JOptionPane.showInputDialog("Edit ID:", current.getId());
+            String name = JOptionPane.showInputDialog("Edit Name:", current.getName());
+            String email = JOptionPane.showInputDialog("Edit Email:", current.getEmail());
+            String phone = JOptionPane.showInputDialog("Edit Phone:", current.getPhone());
+            if (!id.equals(current.getId()) && customers.containsId(id)) {
+                JOptionPane.showMessageDialog(table, "A customer with ID " + id + " already exists.");
+                return;
+            }
+            Customer customer = new Customer(id, name, email, phone, current.getJoinedAt());
+            try {
+                if (!customers.compareAndSet(current.getId(), read.version, customer)) {
+                    JOptionPane.showMessageDialog(table, "Customer " + current.getId()
+                            + " was changed by someone else while you were editing it. Please edit it again.");
+                }
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(table, e.getMessage());
+            }
         } else {
             JOptionPane.showMessageDialog(table, "Please select a customer to edit.");
         }
     }
 
-    private static void deleteCustomer(JTable table, DefaultTableModel tableModel) {
+    private static void deleteCustomer(JTable table, CustomerTableModel tableModel) {
         int selectedRow = table.getSelectedRow();
         if (selectedRow >= 0) {
-            tableModel.removeRow(selectedRow);
-            customers.remove(selectedRow);
-            saveCustomersToCSV(); // Save updated customer list
+            try {
+                customers.removeById(tableModel.getRow(selectedRow).getId());
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(table, e.getMessage());
+            }
         } else {
             JOptionPane.showMessageDialog(table, "Please select a customer to delete.");
         }
@@ -480,23 +685,25 @@ public class CarStoreApp {
         searchPanel.add(new JLabel("Search:"));
         JTextField searchField = new JTextField(20);
         searchPanel.add(searchField);
+        JTextField fromField = new JTextField(7);
+        JTextField toField = new JTextField(7);
+        searchPanel.add(new JLabel("Total from:"));
+        searchPanel.add(fromField);
+        searchPanel.add(new JLabel("to:"));
+        searchPanel.add(toField);
         salesPanel.add(searchPanel, BorderLayout.NORTH);
 
-        String[] columnNames = {"Sale ID", "Car ID", "Customer ID", "Total Price"};
-        Object[][] data = new Object[sales.size()][4];
-        for (int i = 0; i < sales.size(); i++) {
-            Sale sale = sales.get(i);
-            data[i] = new Object[]{sale.getSaleId(), sale.getCarId(), sale.getCustomerId(), sale.getTotalPrice()};
-        }
-        DefaultTableModel tableModel = new DefaultTableModel(data, columnNames);
+        SaleTableModel tableModel = new SaleTableModel(sales, saleChanges);
         JTable salesTable = new JTable(tableModel);
+        TableOrder.sortOnHeaderClick(salesTable, tableModel, Map.of(3, salePriceOrder));
+        TableOrder.filterOnRange(fromField, toField, tableModel, salePriceOrder);
         salesPanel.add(new JScrollPane(salesTable), BorderLayout.CENTER);
 
         JPanel buttonPanel = new JPanel();
         JButton addButton = new JButton("Add");
         JButton deleteButton = new JButton("Delete");
 
-        addButton.addActionListener(e -> addSale(tableModel));
+        addButton.addActionListener(e -> addSale());
         deleteButton.addActionListener(e -> deleteSale(salesTable, tableModel));
 
         buttonPanel.add(addButton);
@@ -507,23 +714,27 @@ public class CarStoreApp {
         return panel;
     }
 
-    private static void addSale(DefaultTableModel tableModel) {
+    private static void addSale() {
         String saleId = JOptionPane.showInputDialog("Enter Sale ID:");
         String carId = JOptionPane.showInputDialog("Enter Car ID:");
         String customerId = JOptionPane.showInputDialog("Enter Customer ID:");
         String totalPrice = JOptionPane.showInputDialog("Enter Total Price:");
-        Sale sale = new Sale(saleId, carId, customerId, Double.parseDouble(totalPrice));
-        tableModel.addRow(new Object[]{saleId, carId, customerId, totalPrice});
-        sales.add(sale);
-        saveSalesToCSV(); // Save updated sales list
+        if (sales.containsId(saleId)) {
+            JOptionPane.showMessageDialog(null, "A sale with ID " + saleId + " already exists.");
+            return;
+        }
+        Sale sale = new Sale(saleId, carId, customerId, Double.parseDouble(totalPrice), System.currentTimeMillis());
+        try {
+            sales.add(sale);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage());
+        }
     }
 
-    private static void deleteSale(JTable table, DefaultTableModel tableModel) {
+    private static void deleteSale(JTable table, SaleTableModel tableModel) {
         int selectedRow = table.getSelectedRow();
         if (selectedRow >= 0) {
-            tableModel.removeRow(selectedRow);
-            sales.remove(selectedRow);
-            saveSalesToCSV(); // Save updated sales list
+            sales.removeById(tableModel.getRow(selectedRow).getSaleId());
         } else {
             JOptionPane.showMessageDialog(table, "Please select a sale to delete.");
         }
@@ -551,41 +762,21 @@ public class CarStoreApp {
         gbc.gridx = 1;
         customizationPanel.add(carIdField, gbc);
 
-        JLabel colorLabel = new JLabel("Color:");
-        gbc.gridx = 0;
-        gbc.gridy = 1;
-        customizationPanel.add(colorLabel, gbc);
-        JComboBox<String> colorComboBox = new JComboBox<>(new String[]{"Red", "Blue", "Black", "White", "Silver"});
-        gbc.gridx = 1;
-        customizationPanel.add(colorComboBox, gbc);
-
-        JLabel wheelsLabel = new JLabel("Wheels:");
-        gbc.gridx = 0;
-        gbc.gridy = 2;
-        customizationPanel.add(wheelsLabel, gbc);
-        JComboBox<String> wheelsComboBox = new JComboBox<>(new String[]{"Standard", "Sport", "Alloy"});
-        gbc.gridx = 1;
-        customizationPanel.add(wheelsComboBox, gbc);
-
-        JLabel interiorLabel = new JLabel("Interior:");
-        gbc.gridx = 0;
-        gbc.gridy = 3;
-        customizationPanel.add(interiorLabel, gbc);
-        JComboBox<String> interiorComboBox = new JComboBox<>(new String[]{"Leather", "Fabric", "Synthetic"});
-        gbc.gridx = 1;
-        customizationPanel.add(interiorComboBox, gbc);
-
-        JLabel soundSystemLabel = new JLabel("Sound System:");
-        gbc.gridx = 0;
-        gbc.gridy = 4;
-        customizationPanel.add(soundSystemLabel, gbc);
-        JComboBox<String> soundSystemComboBox = new JComboBox<>(new String[]{"Standard", "Premium", "Luxury"});
-        gbc.gridx = 1;
-        customizationPanel.add(soundSystemComboBox, gbc);
+        List<JComboBox<String>> optionComboBoxes = new ArrayList<>();
+        List<String> categories = pricing.getCategories();
+        for (int c = 0; c < categories.size(); c++) {
+            gbc.gridx = 0;
+            gbc.gridy = c + 1;
+            customizationPanel.add(new JLabel(categories.get(c) + ":"), gbc);
+            JComboBox<String> comboBox = new JComboBox<>(pricing.getOptions(c).toArray(new String[0]));
+            gbc.gridx = 1;
+            customizationPanel.add(comboBox, gbc);
+            optionComboBoxes.add(comboBox);
+        }
 
         JLabel priceLabelTitle = new JLabel("Price:");
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = categories.size() + 1;
         customizationPanel.add(priceLabelTitle, gbc);
         JLabel priceLabel = new JLabel("$0");
         gbc.gridx = 1;
@@ -593,22 +784,14 @@ public class CarStoreApp {
 
         JButton calculateButton = new JButton("Calculate Price");
         gbc.gridx = 0;
-        gbc.gridy = 6;
+        gbc.gridy = categories.size() + 2;
         gbc.gridwidth = 2;
         gbc.fill = GridBagConstraints.NONE;
         gbc.anchor = GridBagConstraints.CENTER;
         calculateButton.addActionListener(e -> {
-            double basePrice = cars.stream()
-                    .filter(car -> car.getId().equals(carIdField.getText()))
-                    .mapToDouble(Car::getPrice)
-                    .findFirst()
-                    .orElse(0);
-            double customPrice = basePrice +
-                    colorComboBox.getSelectedIndex() * 500 +
-                    wheelsComboBox.getSelectedIndex() * 800 +
-                    interiorComboBox.getSelectedIndex() * 1000 +
-                    soundSystemComboBox.getSelectedIndex() * 1200;
-            priceLabel.setText("$" + customPrice);
+            int[] chosen = optionComboBoxes.stream().mapToInt(JComboBox::getSelectedIndex).toArray();
+            double customPrice = pricing.price(carIdField.getText().trim(), chosen);
+            priceLabel.setText(Double.isNaN(customPrice) ? "Unknown car ID" : "$" + customPrice);
         });
         customizationPanel.add(calculateButton, gbc);
 
@@ -624,21 +807,23 @@ public class CarStoreApp {
         label.setFont(new Font("Arial", Font.BOLD, 24));
         panel.add(label, BorderLayout.NORTH);
 
-        JPanel reportsPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+        JPanel reportsPanel = new JPanel(new GridLayout(4, 2, 10, 10));
         reportsPanel.setBackground(new Color(248, 249, 250));
         reportsPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-        reportsPanel.add(createReportPanel("Car Report"));
-        reportsPanel.add(createReportPanel("Customer Report"));
-        reportsPanel.add(createReportPanel("Sales Report"));
-        reportsPanel.add(createReportPanel("Customization Report"));
-        reportsPanel.add(createReportPanel("Financial Report"));
-        reportsPanel.add(createReportPanel("Inventory Report"));
+        reportsPanel.add(createReportPanel("Car Report", ReportEngine::carReport));
+        reportsPanel.add(createReportPanel("Customer Report", ReportEngine::customerReport));
+        reportsPanel.add(createReportPanel("Sales Report", ReportEngine::salesReport));
+        reportsPanel.add(createReportPanel("Customization Report", ReportEngine::customizationReport));
+        reportsPanel.add(createReportPanel("Financial Report", ReportEngine::financialReport));
+        reportsPanel.add(createReportPanel("Inventory Report", ReportEngine::inventoryReport));
+        reportsPanel.add(createReportPanel("Monthly Sales Report", ReportEngine::monthlyReport));
+        reportsPanel.add(createReportPanel("Last " + RECENT_DAYS + " Days Report", engine -> engine.recentReport(RECENT_DAYS)));
 
         panel.add(reportsPanel, BorderLayout.CENTER);
         return panel;
     }
 
-    private static JPanel createReportPanel(String title) {
+    private static JPanel createReportPanel(String title, Function<ReportEngine, Report> report) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(Color.WHITE);
         panel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
@@ -650,13 +835,15 @@ public class CarStoreApp {
         JButton viewButton = new JButton("View Report");
         viewButton.setBackground(new Color(0, 123, 255));
         viewButton.setForeground(Color.WHITE);
-        viewButton.addActionListener(e -> JOptionPane.showMessageDialog(panel, title + " is displayed here."));
+        viewButton.addActionListener(e -> ReportDialog.show(panel, title,
+                sales.read(() -> new ReportEngine(cars.snapshot(), customers.snapshot(), saleColumns.snapshot(),
+                        rollups)), report));
         panel.add(viewButton, BorderLayout.CENTER);
 
         return panel;
     }
 
-    private static JPanel createLogoutPanel(CardLayout cardLayout, JPanel contentPanel) {
+    private static JPanel createLogoutPanel(LazyCards cards) {
         JPanel panel = new JPanel(new BorderLayout());
         panel.setBackground(new Color(248, 249, 250));
         JLabel label = new JLabel("You have been logged out.", SwingConstants.CENTER);
@@ -668,7 +855,7 @@ public class CarStoreApp {
         loginAgainButton.setForeground(Color.WHITE);
         loginAgainButton.addActionListener(e -> {
             loggedIn = false;
-            cardLayout.show(contentPanel, "Login");
+            cards.show("Login");
         });
         panel.add(loginAgainButton, BorderLayout.SOUTH);
 
@@ -0,0 +1,23 @@
+class CarTableModel extends RepositoryTableModel<Car> {
+
+    CarTableModel(Repository<Car> cars, ChangeFeed<Car> changes) {
+        super(cars, changes, "ID", "Make", "Model", "Price", "Feature", "Listed");
+    }
+
+    @Override
+    Object valueAt(Car car, int column) {
+        switch (column) {
+            case 0: return car.getId();
+            case 1: return car.getMake();
+            case 2: return car.getModel();
+            case 3: return car.getPrice();
+            case 4: return car.getFeature();
+            default: return formatTime(car.getListedAt());
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 3 ? Double.class : String.class;
+    }
+}
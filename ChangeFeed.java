@@ -0,0 +1,178 @@
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// A repository's inserts, updates and deletes for Swing views, delivered on
+// the EDT in batches. The repository callback only queues the change; one
+// frame later every feed with queued changes hands them to its subscribers
+// together, so an import of 100k rows reaches a table as a few batches
+// instead of 100k events, and a view fed by several repositories repaints
+// once. Past MAX_CHANGES a batch only counts its changes, and subscribers
+// read the repository again instead. Nothing is queued while a feed has no
+// subscribers.
+class ChangeFeed<T> implements Repository.Listener<T> {
+    static final int INSERTED = 0;
+    static final int UPDATED = 1;
+    static final int REMOVED = 2;
+
+    static final int FRAME_MILLIS = 16;
+    private static final int MAX_CHANGES = 1000;
+
+    // previous is null for an insert and row is null for a delete. position
+    // is the row's position in the repository when the change was made.
+    static final class Change<T> {
+        final int kind;
+        final int position;
+        final T previous;
+        final T row;
+
+        private Change(int kind, int position, T previous, T row) {
+            this.kind = kind;
+            this.position = position;
+            this.previous = previous;
+            this.row = row;
+        }
+    }
+
+    // The changes since the last frame, oldest first.
+    static final class Batch<T> {
+        final List<Change<T>> changes = new ArrayList<>();
+        int inserted;
+        int updated;
+        int removed;
+        // False once there were too many changes to keep.
+        boolean complete = true;
+
+        boolean onlyInserts() {
+            return updated == 0 && removed == 0;
+        }
+
+        private void add(int kind, int position, T previous, T row) {
+            if (kind == INSERTED) {
+                inserted++;
+            } else if (kind == UPDATED) {
+                updated++;
+            } else {
+                removed++;
+            }
+            if (changes.size() == MAX_CHANGES) {
+                changes.clear();
+                complete = false;
+            } else if (complete) {
+                changes.add(new Change<>(kind, position, previous, row));
+            }
+        }
+    }
+
+    // Called on the EDT.
+    interface Subscriber<T> {
+        void changed(Batch<T> batch);
+    }
+
+    private static final List<ChangeFeed<?>> pendingFeeds = new ArrayList<>();
+    private static final Timer frame = new Timer(FRAME_MILLIS, e -> deliverFrame());
+    private static boolean frameScheduled;
+
+    static {
+        frame.setRepeats(false);
+    }
+
+    private final List<Subscriber<T>> subscribers = new CopyOnWriteArrayList<>();
+    private final List<Runnable> refreshers = new CopyOnWriteArrayList<>();
+    private Batch<T> pending;
+
+    ChangeFeed(Repository<T> repository) {
+        repository.addListener(this);
+    }
+
+    void subscribe(Subscriber<T> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    void unsubscribe(Subscriber<T> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // For views that just redraw from the repositories: refresh runs once
+    // in each frame in which any of the feeds changed.
+    static void onChange(Runnable refresh, ChangeFeed<?>... feeds) {
+        for (ChangeFeed<?> feed : feeds) {
+            feed.refreshers.add(refresh);
+        }
+    }
+
+    @Override
+    public void inserted(int position, T row) {
+        queue(INSERTED, position, null, row);
+    }
+
+    @Override
+    public void updated(int position, T previous, T row) {
+        queue(UPDATED, position, previous, row);
+    }
+
+    @Override
+    public void removed(int position, T row) {
+        queue(REMOVED, position, row, null);
+    }
+
+    private void queue(int kind, int position, T previous, T row) {
+        if (subscribers.isEmpty() && refreshers.isEmpty()) {
+            return;
+        }
+        boolean first;
+        synchronized (this) {
+            first = pending == null;
+            if (first) {
+                pending = new Batch<>();
+            }
+            pending.add(kind, position, previous, row);
+        }
+        if (first) {
+            scheduleFrame(this);
+        }
+    }
+
+    private static void scheduleFrame(ChangeFeed<?> feed) {
+        boolean start;
+        synchronized (pendingFeeds) {
+            pendingFeeds.add(feed);
+            start = !frameScheduled;
+            frameScheduled = true;
+        }
+        if (start) {
+            SwingUtilities.invokeLater(frame::start);
+        }
+    }
+
+    private static void deliverFrame() {
+        List<ChangeFeed<?>> feeds;
+        synchronized (pendingFeeds) {
+            feeds = new ArrayList<>(pendingFeeds);
+            pendingFeeds.clear();
+            frameScheduled = false;
+        }
+        Metrics.time("ui.changes", () -> {
+            Set<Runnable> refreshes = new LinkedHashSet<>();
+            for (ChangeFeed<?> feed : feeds) {
+                feed.deliver();
+                refreshes.addAll(feed.refreshers);
+            }
+            refreshes.forEach(Runnable::run);
+        });
+    }
+
+    private void deliver() {
+        Batch<T> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = null;
+        }
+        for (Subscriber<T> subscriber : subscribers) {
+            subscriber.changed(batch);
+        }
+    }
+}
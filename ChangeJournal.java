@@ -0,0 +1,398 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only change log kept next to a CSV snapshot. Every mutation is one
+// checksummed line "seq<TAB>op<TAB>key<TAB>row<TAB>crc"; the CSV is only
+// rewritten by compaction, which seals the current log, writes a new snapshot
+// in the background and then drops the sealed log.
+//
+// Changes are committed in groups: they are queued for the I/O thread and
+// written with one fsync per batch, once the batch is full or its oldest
+// change has waited the maximum delay. With the default delay of 0 a batch
+// is whatever queued up while the previous one was being written, which
+// adds no latency; a delay only pays off where fsync is slow and writers
+// are many. Both limits can be set with -Dcarstore.commit.maxBatch and
+// -Dcarstore.commit.maxDelayMillis; a batch of 1 gives the old fsync per
+// change.
+class ChangeJournal {
+    static final char INSERT = 'I';
+    static final char UPDATE = 'U';
+    static final char DELETE = 'D';
+
+    private static final int COMPACTION_THRESHOLD = 1000;
+    private static final int MAX_BATCH = Integer.getInteger("carstore.commit.maxBatch", 256);
+    private static final long MAX_DELAY_MILLIS = Long.getLong("carstore.commit.maxDelayMillis", 0);
+
+    static class Entry {
+        final long sequence;
+        final char op;
+        final String key;
+        final String row;
+
+        Entry(long sequence, char op, String key, String row) {
+            this.sequence = sequence;
+            this.op = op;
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    // A logged change waiting for its batch to be written.
+    private static final class Pending {
+        final long sequence;
+        final byte[] line;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        Pending(long sequence, byte[] line) {
+            this.sequence = sequence;
+            this.line = line;
+        }
+    }
+
+    private final Path activeFile;
+    private final Path sealedFile;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private boolean flushScheduled;
+    private FileChannel channel;
+    private long sequence;
+    private int pendingEntries;
+    private boolean compactionScheduled;
+    // While a compaction is pending, the last change its snapshot covers.
+    // Later changes must not reach the log it is about to seal.
+    private long compactionCovers = Long.MAX_VALUE;
+
+    ChangeJournal(String csvFile) {
+        this(csvFile, MAX_BATCH, MAX_DELAY_MILLIS);
+    }
+
+    ChangeJournal(String csvFile, int maxBatch, long maxDelayMillis) {
+        this.activeFile = Paths.get(csvFile + ".journal");
+        this.sealedFile = Paths.get(csvFile + ".journal.sealed");
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+    }
+
+    // Replays the sealed log (left behind by an interrupted or failed
+    // compaction) and then the active one. Reading stops at the first torn
+    // or corrupt line, and each log is cut back to its last good record. The
+    // replayed entries count as pending, so the next compaction covers the
+    // sealed log too and deletes it.
+    synchronized int replay(Consumer<Entry> consumer) throws IOException {
+        int replayed = 0;
+        if (Files.exists(sealedFile)) {
+            replayed += replayFile(sealedFile, consumer, true);
+        }
+        if (Files.exists(activeFile)) {
+            replayed += replayFile(activeFile, consumer, true);
+        }
+        pendingEntries = replayed;
+        return replayed;
+    }
+
+    private int replayFile(Path file, Consumer<Entry> consumer, boolean truncateTail) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int count = 0;
+        int start = 0;
+        int goodLength = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n') {
+                end++;
+            }
+            if (end == bytes.length) {
+                break;
+            }
+            Entry entry = decode(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            if (entry == null) {
+                break;
+            }
+            sequence = Math.max(sequence, entry.sequence);
+            consumer.accept(entry);
+            count++;
+            start = end + 1;
+            goodLength = start;
+        }
+        if (truncateTail && goodLength < bytes.length) {
+            Metrics.failure("load.journal", "Discarding corrupt journal tail in " + file + " at byte " + goodLength);
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(goodLength);
+                truncate.force(true);
+            }
+        }
+        return count;
+    }
+
+    // Safe to call from any thread; changes reach the log in the order they
+    // were logged. The future completes once the change is on disk, or
+    // fails if its batch could not be written.
+    synchronized CompletableFuture<Void> log(char op, String key, String row) {
+        String body = (++sequence) + "\t" + op + "\t" + escape(key) + "\t" + escape(row);
+        Pending change = new Pending(sequence, (body + "\t" + checksum(body) + "\n").getBytes(StandardCharsets.UTF_8));
+        queue.add(change);
+        pendingEntries++;
+        if (queue.size() >= maxBatch) {
+            notifyAll();
+        }
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduleFlush();
+        }
+        return change.durable;
+    }
+
+    private synchronized void scheduleFlush() {
+        try {
+            BackgroundTasks.io().execute(this::flushWhenReady);
+        } catch (RejectedExecutionException e) {
+            // Exiting: the I/O thread is draining and takes no new work.
+            flushScheduled = false;
+            write(take(compactionCovers, Integer.MAX_VALUE));
+        }
+    }
+
+    // The last sequence number handed out, which the snapshot of a scheduled
+    // compaction covers. Until the log is sealed, flushes stop after it.
+    synchronized long coverCompaction() {
+        compactionCovers = sequence;
+        return sequence;
+    }
+
+    // Runs on the I/O thread. Waits, with the lock released, until the batch
+    // is full or its oldest change has waited long enough, and writes it
+    // without holding the lock so changes can keep queueing meanwhile. A
+    // longer queue is written in several batches, each behind whatever other
+    // I/O was queued in between.
+    private void flushWhenReady() {
+        List<Pending> batch;
+        synchronized (this) {
+            long deadline = queue.isEmpty() ? 0 : queue.peek().queuedAt + maxDelayNanos;
+            long remaining;
+            while (!queue.isEmpty() && queue.size() < maxBatch && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            batch = take(compactionCovers, maxBatch);
+        }
+        write(batch);
+        synchronized (this) {
+            if (queue.isEmpty() || queue.peek().sequence > compactionCovers) {
+                // Anything left is flushed once the compaction has sealed the log.
+                flushScheduled = false;
+            } else {
+                scheduleFlush();
+            }
+        }
+    }
+
+    private synchronized List<Pending> take(long upToSequence, int limit) {
+        List<Pending> batch = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().sequence <= upToSequence && batch.size() < limit) {
+            batch.add(queue.poll());
+        }
+        return batch;
+    }
+
+    // One write and one fsync for the whole batch. Writes never overlap: a
+    // flush counts as scheduled until its write is done, and compaction runs
+    // on the same I/O thread.
+    private void write(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        batch.forEach(change -> bytes.write(change.line, 0, change.line.length));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(activeFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            Metrics.failure("save.journal", "Error writing change journal " + activeFile + ": " + e.getMessage());
+            batch.forEach(change -> change.durable.completeExceptionally(e));
+            return;
+        }
+        Metrics.record("save.flush", start);
+        Metrics.count("save.flushes");
+        Metrics.count("save.flushed", batch.size());
+        batch.forEach(change -> change.durable.complete(null));
+    }
+
+    synchronized boolean needsCompaction() {
+        return pendingEntries >= COMPACTION_THRESHOLD && !compactionScheduled;
+    }
+
+    // Only one compaction may be queued or running at a time.
+    synchronized boolean scheduleCompaction() {
+        if (compactionScheduled) {
+            return false;
+        }
+        compactionScheduled = true;
+        return true;
+    }
+
+    synchronized boolean hasPendingEntries() {
+        return pendingEntries > 0;
+    }
+
+    synchronized void beginCompaction() throws IOException {
+        beginCompaction(Long.MAX_VALUE);
+    }
+
+    // Seals the active log once it holds every change up to the given
+    // sequence, the ones covered by the snapshot the caller is about to
+    // write. Later changes stay queued for the next log. A sealed log that
+    // is still there from an earlier compaction is covered by the same
+    // snapshot, so the active log is appended to it.
+    synchronized void beginCompaction(long coveredSequence) throws IOException {
+        write(take(coveredSequence, Integer.MAX_VALUE));
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            if (Files.exists(activeFile)) {
+                if (Files.exists(sealedFile)) {
+                    appendToSealed();
+                } else {
+                    Files.move(activeFile, sealedFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            pendingEntries = queue.size();
+        } finally {
+            resumeFlushing();
+        }
+    }
+
+    // The active log is only deleted once its copy is on disk; a crash in
+    // between leaves its entries in both logs, and replaying them twice
+    // gives the same rows.
+    private void appendToSealed() throws IOException {
+        try (FileChannel source = FileChannel.open(activeFile, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(sealedFile, StandardOpenOption.WRITE,
+                     StandardOpenOption.APPEND)) {
+            long size = source.size();
+            for (long copied = 0; copied < size; ) {
+                copied += source.transferTo(copied, size - copied, target);
+            }
+            target.force(false);
+        }
+        Files.delete(activeFile);
+    }
+
+    private synchronized void resumeFlushing() {
+        compactionCovers = Long.MAX_VALUE;
+        if (!queue.isEmpty() && !flushScheduled) {
+            flushScheduled = true;
+            scheduleFlush();
+        }
+    }
+
+    synchronized void finishCompaction() throws IOException {
+        Files.deleteIfExists(sealedFile);
+        compactionScheduled = false;
+    }
+
+    synchronized void abandonCompaction() {
+        compactionScheduled = false;
+        resumeFlushing();
+    }
+
+    synchronized void close() throws IOException {
+        write(take(Long.MAX_VALUE, Integer.MAX_VALUE));
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static Entry decode(String line) {
+        int crcStart = line.lastIndexOf('\t');
+        if (crcStart < 0) {
+            return null;
+        }
+        String body = line.substring(0, crcStart);
+        if (!line.substring(crcStart + 1).equals(checksum(body))) {
+            return null;
+        }
+        String[] parts = body.split("\t", -1);
+        if (parts.length != 4 || parts[1].length() != 1) {
+            return null;
+        }
+        try {
+            return new Entry(Long.parseLong(parts[0]), parts[1].charAt(0), unescape(parts[2]), unescape(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default: sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
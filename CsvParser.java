@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Byte-level reader for the store's CSV files. The file is memory mapped and
+// split into chunks at line boundaries; chunks are tokenized in parallel and
+// handed to the consumer in file order. Fields are located by offsets into
+// the mapping and trimmed, so the only Strings created are the ones the
+// mapper asks for, and numbers are parsed straight from the bytes.
+// Quoting is not supported, matching what the store itself writes.
+class CsvParser {
+    private static final long MIN_CHUNK_BYTES = 8L << 20;
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+    private static final int BOUNDARY_PROBE_BYTES = 64 << 10;
+
+    interface RowMapper<T> {
+        T map(RowFields row);
+    }
+
+    static final class Row implements RowFields {
+        private final ByteBuffer buffer;
+        private final int[] starts;
+        private final int[] ends;
+        private int fieldCount;
+        private byte[] scratch = new byte[64];
+
+        private Row(ByteBuffer buffer, int maxFields) {
+            this.buffer = buffer;
+            this.starts = new int[maxFields];
+            this.ends = new int[maxFields];
+        }
+
+        int fieldCount() {
+            return fieldCount;
+        }
+
+        @Override
+        public boolean has(int field) {
+            return field < fieldCount;
+        }
+
+        @Override
+        public String text(int field) {
+            int start = starts[field];
+            int length = ends[field] - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (scratch[i] < 0) {
+                    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+                }
+            }
+            return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        // Plain decimals with up to 15 significant digits are exact as
+        // mantissa / 10^scale; anything else goes through Double.parseDouble.
+        @Override
+        public double number(int field) {
+            int position = starts[field];
+            int end = ends[field];
+            boolean negative = false;
+            if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+            long mantissa = 0;
+            int significantDigits = 0;
+            int scale = -1;
+            boolean sawDigit = false;
+            for (; position < end; position++) {
+                byte b = buffer.get(position);
+                if (b >= '0' && b <= '9') {
+                    sawDigit = true;
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                    if (scale >= 0) {
+                        scale++;
+                    }
+                } else if (b == '.' && scale < 0) {
+                    scale = 0;
+                } else {
+                    return Double.parseDouble(text(field));
+                }
+            }
+            if (!sawDigit || significantDigits > 15 || scale >= POWERS_OF_TEN.length) {
+                return Double.parseDouble(text(field));
+            }
+            double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+            return negative ? -value : value;
+        }
+
+        // Returns false for blank lines.
+        private boolean split(int lineStart, int lineEnd) {
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            fieldCount = 0;
+            int fieldStart = lineStart;
+            for (int position = lineStart; position <= lineEnd; position++) {
+                if (position == lineEnd || buffer.get(position) == ',') {
+                    if (fieldCount == starts.length) {
+                        fieldCount++;
+                        return true;
+                    }
+                    int start = fieldStart;
+                    int end = position;
+                    while (start < end && isBlank(buffer.get(start))) {
+                        start++;
+                    }
+                    while (end > start && isBlank(buffer.get(end - 1))) {
+                        end--;
+                    }
+                    starts[fieldCount] = start;
+                    ends[fieldCount] = end;
+                    fieldCount++;
+                    fieldStart = position + 1;
+                }
+            }
+            return fieldCount > 1 || ends[0] > starts[0];
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t';
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private CsvParser() {
+    }
+
+    // Tokenizes a single line the same way as a file, e.g. a row stored in
+    // the change journal. Returns null if it does not have fieldCount fields.
+    static <T> T parseLine(String line, int fieldCount, RowMapper<T> mapper) {
+        return parseLine(line, fieldCount, fieldCount, mapper);
+    }
+
+    // As above, but rows may leave off trailing fields down to minFields;
+    // the mapper sees the missing ones through RowFields.has.
+    static <T> T parseLine(String line, int minFields, int fieldCount, RowMapper<T> mapper) {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        Row row = new Row(buffer, fieldCount);
+        if (!row.split(0, buffer.limit()) || row.fieldCount() < minFields || row.fieldCount() > fieldCount) {
+            return null;
+        }
+        return mapper.map(row);
+    }
+
+    // Rows without exactly fieldCount fields, or whose mapper throws a
+    // NumberFormatException or returns null, are skipped and counted.
+    static <T> long parse(Path file, int fieldCount, RowMapper<T> mapper, Consumer<List<T>> consumer)
+            throws IOException {
+        return parse(file, fieldCount, fieldCount, mapper, consumer);
+    }
+
+    static <T> long parse(Path file, int minFields, int fieldCount, RowMapper<T> mapper,
+                          Consumer<List<T>> consumer) throws IOException {
+        return parse(file, minFields, fieldCount, mapper, Runtime.getRuntime().availableProcessors(), consumer);
+    }
+
+    static <T> long parse(Path file, int fieldCount, RowMapper<T> mapper, int parallelism,
+                          Consumer<List<T>> consumer) throws IOException {
+        return parse(file, fieldCount, fieldCount, mapper, parallelism, consumer);
+    }
+
+    static <T> long parse(Path file, int minFields, int fieldCount, RowMapper<T> mapper, int parallelism,
+                          Consumer<List<T>> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> chunks = splitIntoChunks(channel, parallelism);
+            List<CompletableFuture<ChunkResult<T>>> pending = new ArrayList<>();
+            for (long[] chunk : chunks) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+                pending.add(chunks.size() == 1
+                        ? CompletableFuture.completedFuture(parseChunk(buffer, minFields, fieldCount, mapper))
+                        : CompletableFuture.supplyAsync(() -> parseChunk(buffer, minFields, fieldCount, mapper)));
+            }
+            long skipped = 0;
+            for (CompletableFuture<ChunkResult<T>> future : pending) {
+                ChunkResult<T> result = future.join();
+                skipped += result.skipped;
+                consumer.accept(result.rows);
+            }
+            return skipped;
+        }
+    }
+
+    private static List<long[]> splitIntoChunks(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, size / Math.max(1, parallelism)));
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize, size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE_BYTES);
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static final class ChunkResult<T> {
+        final List<T> rows;
+        final long skipped;
+
+        ChunkResult(List<T> rows, long skipped) {
+            this.rows = rows;
+            this.skipped = skipped;
+        }
+    }
+
+    private static <T> ChunkResult<T> parseChunk(ByteBuffer buffer, int minFields, int fieldCount,
+                                                 RowMapper<T> mapper) {
+        Row row = new Row(buffer, fieldCount);
+        List<T> rows = new ArrayList<>();
+        long skipped = 0;
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (row.split(lineStart, lineEnd)) {
+                T mapped = null;
+                if (row.fieldCount() >= minFields && row.fieldCount() <= fieldCount) {
+                    try {
+                        mapped = mapper.map(row);
+                    } catch (NumberFormatException e) {
+                        mapped = null;
+                    }
+                }
+                if (mapped != null) {
+                    rows.add(mapped);
+                } else {
+                    skipped++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new ChunkResult<>(rows, skipped);
+    }
+}
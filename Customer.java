@@ -3,12 +3,20 @@ class Customer {
     private final String name;
     private final String email;
     private final String phone;
+    // Epoch milliseconds; 0 for customers added before customers carried a
+    // time.
+    private final long joinedAt;
 
     public Customer(String id, String name, String email, String phone) {
+        this(id, name, email, phone, 0);
+    }
+
+    public Customer(String id, String name, String email, String phone, long joinedAt) {
         this.id = id;
         this.name = name;
         this.email = email;
         this.phone = phone;
+        this.joinedAt = joinedAt;
     }
 
     public String getId() {
@@ -26,4 +34,8 @@ class Customer {
     public String getPhone() {
         return phone;
     }
+
+    public long getJoinedAt() {
+        return joinedAt;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,442 @@
+import java.util.*;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Finds customers stored more than once, e.g. with different spacing in the
+// name, a different case in the email or a differently formatted phone.
+//
+// Names, emails and phones are normalized first. Instead of comparing every
+// pair, customers are grouped into blocks that share a key (phone digits,
+// email or name), and only customers in the same block
+// are compared. Small blocks compare every pair; large ones, such as a
+// common name, are sorted and each customer is compared with its next few
+// neighbours, so the work grows with the number of customers rather than
+// its square. Blocks are scored in parallel and matching pairs are joined
+// into groups, each with one customer to keep.
+class CustomerDedupe {
+    static final double DEFAULT_MIN_SCORE = 0.85;
+
+    // Neighbours each customer is compared with inside a large block.
+    private static final int WINDOW = 8;
+    private static final int BLOCKS_PER_TASK = 4096;
+
+    // Customers to fold into the one that is kept, which is the one with
+    // the most sales. score is the weakest link that joined the group.
+    static final class Merge {
+        final Customer keep;
+        final List<Customer> duplicates;
+        final double score;
+
+        private Merge(Customer keep, List<Customer> duplicates, double score) {
+            this.keep = keep;
+            this.duplicates = duplicates;
+            this.score = score;
+        }
+    }
+
+    private CustomerDedupe() {
+    }
+
+    // Lower case, punctuation dropped and words sorted: "Doe,  John" and
+    // "john doe" give the same key.
+    static String nameKey(String name) {
+        if (name == null) {
+            return "";
+        }
+        String[] words = name.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        Arrays.sort(words);
+        StringBuilder key = new StringBuilder(name.length());
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                if (key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(word);
+            }
+        }
+        return key.toString();
+    }
+
+    // Lower case without a "+tag" in the local part.
+    static String emailKey(String email) {
+        if (email == null) {
+            return "";
+        }
+        String key = email.trim().toLowerCase(Locale.ROOT);
+        int at = key.indexOf('@');
+        int plus = key.indexOf('+');
+        if (plus > 0 && plus < at) {
+            key = key.substring(0, plus) + key.substring(at);
+        }
+        return key;
+    }
+
+    // Digits only, without a leading 1 country code; empty if too short to
+    // tell people apart.
+    static String phoneKey(String phone) {
+        if (phone == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() == 11 && digits.charAt(0) == '1') {
+            digits.deleteCharAt(0);
+        }
+        return digits.length() < 7 ? "" : digits.toString();
+    }
+
+    // 0..1. The name carries most of the weight, and with the default
+    // minimum it takes a near-identical name and the same email to match:
+    // a shared email or phone alone (a family, an office line) is not
+    // enough, and neither is a common name.
+    static double score(Customer a, Customer b) {
+        return score(nameKey(a.getName()), emailKey(a.getEmail()), phoneKey(a.getPhone()),
+                nameKey(b.getName()), emailKey(b.getEmail()), phoneKey(b.getPhone()), 0);
+    }
+
+    // Returns 0 without comparing the names when the contacts alone rule
+    // out reaching minScore.
+    private static double score(String nameA, String emailA, String phoneA,
+                                String nameB, String emailB, String phoneB, double minScore) {
+        double contact = (!emailA.isEmpty() && emailA.equals(emailB) ? 0.2 : 0)
+                + (!phoneA.isEmpty() && phoneA.equals(phoneB) ? 0.1 : 0);
+        if (0.7 + contact < minScore) {
+            return 0;
+        }
+        return 0.7 * nameSimilarity(nameA, nameB) + contact;
+    }
+
+    // Every word of the shorter name must closely match some word of the
+    // other; the weakest one decides. "john a doe" and "doe john" score 1,
+    // "jane doe" and "john doe" about 0.7.
+    static double nameSimilarity(String a, String b) {
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        String[] wordsA = a.split(" ");
+        String[] wordsB = b.split(" ");
+        String[] shorter = wordsA.length <= wordsB.length ? wordsA : wordsB;
+        String[] longer = shorter == wordsA ? wordsB : wordsA;
+        double weakest = 1;
+        for (String word : shorter) {
+            double best = 0;
+            for (String other : longer) {
+                best = Math.max(best, jaroWinkler(word, other));
+            }
+            weakest = Math.min(weakest, best);
+        }
+        return weakest;
+    }
+
+    // Stored customers that look like the given one, best match first.
+    static List<Customer> similar(Customer customer, Collection<Customer> candidates, double minScore) {
+        Map<Customer, Double> scores = new HashMap<>();
+        for (Customer candidate : candidates) {
+            if (!candidate.getId().equals(customer.getId())) {
+                double score = score(customer, candidate);
+                if (score >= minScore) {
+                    scores.put(candidate, score);
+                }
+            }
+        }
+        List<Customer> similar = new ArrayList<>(scores.keySet());
+        similar.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        return similar;
+    }
+
+    // Runs on any thread against a copy of the customers. salesOf gives a
+    // customer's number of sales, to pick the one to keep.
+    static List<Merge> find(List<Customer> customers, ToIntFunction<String> salesOf, double minScore) {
+        int count = customers.size();
+        String[] names = new String[count];
+        String[] emails = new String[count];
+        String[] phones = new String[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            Customer customer = customers.get(i);
+            names[i] = nameKey(customer.getName());
+            emails[i] = emailKey(customer.getEmail());
+            phones[i] = phoneKey(customer.getPhone());
+        });
+
+        int indexBits = 64 - Long.numberOfLeadingZeros(Math.max(1, count - 1));
+        long indexMask = (1L << indexBits) - 1;
+        long[] keys = blockKeys(names, emails, phones, indexMask);
+        int[] blocks = blocks(keys, indexMask);
+
+        int blockCount = blocks.length / 2;
+        int tasks = (blockCount + BLOCKS_PER_TASK - 1) / BLOCKS_PER_TASK;
+        List<long[]> pairs = IntStream.range(0, tasks).parallel().mapToObj(task -> {
+            PairList matches = new PairList();
+            int last = Math.min(blockCount, (task + 1) * BLOCKS_PER_TASK);
+            for (int block = task * BLOCKS_PER_TASK; block < last; block++) {
+                int start = blocks[2 * block];
+                int[] members = new int[blocks[2 * block + 1] - start];
+                for (int m = 0; m < members.length; m++) {
+                    members[m] = (int) (keys[start + m] & indexMask);
+                }
+                compareBlock(members, names, emails, phones, minScore, matches);
+            }
+            return matches.toArray();
+        }).collect(Collectors.toList());
+
+        return groups(customers, pairs, salesOf);
+    }
+
+    // One entry per key: the key's hash in the high bits and the customer's
+    // index in the low ones, so sorting puts each block together.
+    private static long[] blockKeys(String[] names, String[] emails, String[] phones, long indexMask) {
+        int count = names.length;
+        long[] keys = new long[count * 3];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            String[] values = {phones[i], emails[i], names[i]};
+            for (int kind = 0; kind < values.length; kind++) {
+                if (!values[kind].isEmpty()) {
+                    keys[size++] = (hash(values[kind], kind) & ~indexMask) | i;
+                }
+            }
+        }
+        keys = Arrays.copyOf(keys, size);
+        Arrays.parallelSort(keys);
+        return keys;
+    }
+
+    // Start and end offsets of every block with two or more customers.
+    private static int[] blocks(long[] keys, long indexMask) {
+        int[] blocks = new int[16];
+        int size = 0;
+        int start = 0;
+        for (int i = 1; i <= keys.length; i++) {
+            if (i == keys.length || (keys[i] & ~indexMask) != (keys[start] & ~indexMask)) {
+                if (i - start > 1) {
+                    if (size + 2 > blocks.length) {
+                        blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                    }
+                    blocks[size++] = start;
+                    blocks[size++] = i;
+                }
+                start = i;
+            }
+        }
+        return Arrays.copyOf(blocks, size);
+    }
+
+    private static void compareBlock(int[] members, String[] names, String[] emails, String[] phones,
+                                     double minScore, PairList matches) {
+        if (members.length > WINDOW + 1) {
+            Integer[] sorted = new Integer[members.length];
+            for (int m = 0; m < members.length; m++) {
+                sorted[m] = members[m];
+            }
+            Arrays.sort(sorted, Comparator.<Integer, String>comparing(i -> names[i])
+                    .thenComparing(i -> emails[i]).thenComparing(i -> phones[i]));
+            for (int m = 0; m < members.length; m++) {
+                members[m] = sorted[m];
+            }
+        }
+        for (int m = 0; m < members.length; m++) {
+            int a = members[m];
+            for (int n = m + 1; n < members.length && n <= m + WINDOW; n++) {
+                int b = members[n];
+                if (a == b) {
+                    continue;
+                }
+                double score = score(names[a], emails[a], phones[a], names[b], emails[b], phones[b], minScore);
+                if (score >= minScore) {
+                    matches.add(Math.min(a, b), Math.max(a, b), score);
+                }
+            }
+        }
+    }
+
+    private static List<Merge> groups(List<Customer> customers, List<long[]> pairs, ToIntFunction<String> salesOf) {
+        int[] parent = new int[customers.size()];
+        Arrays.setAll(parent, i -> i);
+        Map<Integer, Double> weakest = new HashMap<>();
+        List<int[]> links = new ArrayList<>();
+        for (long[] chunk : pairs) {
+            for (int p = 0; p < chunk.length; p += 2) {
+                int a = (int) (chunk[p] >>> 32);
+                int b = (int) chunk[p];
+                links.add(new int[]{a, b, (int) chunk[p + 1]});
+                parent[find(parent, a)] = find(parent, b);
+            }
+        }
+        Map<Integer, List<Integer>> members = new TreeMap<>();
+        for (int[] link : links) {
+            int root = find(parent, link[0]);
+            weakest.merge(root, link[2] / 1e6, Math::min);
+            for (int i = 0; i < 2; i++) {
+                List<Integer> group = members.computeIfAbsent(root, key -> new ArrayList<>());
+                if (!group.contains(link[i])) {
+                    group.add(link[i]);
+                }
+            }
+        }
+        List<Merge> merges = new ArrayList<>();
+        members.forEach((root, group) -> {
+            group.sort(Comparator.naturalOrder());
+            Customer keep = customers.get(group.get(0));
+            int keepSales = salesOf.applyAsInt(keep.getId());
+            for (int index : group.subList(1, group.size())) {
+                int sales = salesOf.applyAsInt(customers.get(index).getId());
+                if (sales > keepSales) {
+                    keep = customers.get(index);
+                    keepSales = sales;
+                }
+            }
+            List<Customer> duplicates = new ArrayList<>();
+            for (int index : group) {
+                if (customers.get(index) != keep) {
+                    duplicates.add(customers.get(index));
+                }
+            }
+            merges.add(new Merge(keep, duplicates, weakest.get(root)));
+        });
+        merges.sort((a, b) -> Double.compare(b.score, a.score));
+        return merges;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // Moves the duplicates' sales to the kept customer and deletes the
+    // duplicates, as one change under the store's write lock. Returns the
+    // number of sales moved.
+    //
+    // The duplicates' sales are looked up before the lock is taken. Under
+    // it each one is re-read by ID, and only a duplicate whose sales
+    // changed meanwhile is looked up again.
+    static int merge(Merge merge, Repository<Customer> customers, Repository<Sale> sales,
+                     Repository.Index<Sale> salesByCustomer) {
+        String keepId = merge.keep.getId();
+        Map<String, List<Sale>> found = new HashMap<>();
+        for (Customer duplicate : merge.duplicates) {
+            found.put(duplicate.getId(), salesByCustomer.find(duplicate.getId()));
+        }
+        return customers.write(() -> {
+            if (!customers.containsId(keepId)) {
+                throw new IllegalArgumentException("Customer " + keepId + " no longer exists");
+            }
+            int moved = 0;
+            for (Customer duplicate : merge.duplicates) {
+                List<Sale> current = current(duplicate.getId(), found.get(duplicate.getId()), sales, salesByCustomer);
+                for (Sale sale : current != null ? current : salesByCustomer.find(duplicate.getId())) {
+                    sales.update(sale.getSaleId(), new Sale(sale.getSaleId(), sale.getCarId(), keepId,
+                            sale.getTotalPrice(), sale.getSoldAt()));
+                    moved++;
+                }
+                customers.removeById(duplicate.getId());
+            }
+            return moved;
+        });
+    }
+
+    // The customer's sales as they are now, or null if the earlier lookup
+    // no longer covers them: the count differs or one has moved away.
+    private static List<Sale> current(String customerId, List<Sale> found, Repository<Sale> sales,
+                                      Repository.Index<Sale> salesByCustomer) {
+        if (salesByCustomer.count(customerId) != found.size()) {
+            return null;
+        }
+        List<Sale> current = new ArrayList<>(found.size());
+        for (Sale sale : found) {
+            Sale now = sales.findById(sale.getSaleId());
+            if (now == null || !customerId.equals(now.getCustomerId())) {
+                return null;
+            }
+            current.add(now);
+        }
+        return current;
+    }
+
+    // 64-bit FNV-1a, seeded by the kind of key so an email never shares a
+    // block with an identical-looking name.
+    private static long hash(String value, int kind) {
+        long hash = 0xcbf29ce484222325L ^ kind;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    static double jaroWinkler(String a, String b) {
+        if (a.equals(b)) {
+            return 1;
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int range = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        boolean[] matchedA = new boolean[a.length()];
+        boolean[] matchedB = new boolean[b.length()];
+        int matches = 0;
+        for (int i = 0; i < a.length(); i++) {
+            int from = Math.max(0, i - range);
+            int to = Math.min(b.length(), i + range + 1);
+            for (int j = from; j < to; j++) {
+                if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+                    matchedA[i] = true;
+                    matchedB[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (matchedA[i]) {
+                while (!matchedB[j]) {
+                    j++;
+                }
+                if (a.charAt(i) != b.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double m = matches;
+        double jaro = (m / a.length() + m / b.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(a.length(), b.length())) && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+
+    // Matching pairs as (a << 32 | b, score in millionths).
+    private static final class PairList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(int a, int b, double score) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = (long) a << 32 | b;
+            values[size++] = Math.round(score * 1e6);
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+class CustomerTableModel extends RepositoryTableModel<Customer> {
+
+    CustomerTableModel(Repository<Customer> customers, ChangeFeed<Customer> changes) {
+        super(customers, changes, "ID", "Name", "Email", "Phone", "Joined");
+    }
+
+    @Override
+    Object valueAt(Customer customer, int column) {
+        switch (column) {
+            case 0: return customer.getId();
+            case 1: return customer.getName();
+            case 2: return customer.getEmail();
+            case 3: return customer.getPhone();
+            default: return formatTime(customer.getJoinedAt());
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+}
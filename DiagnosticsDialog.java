@@ -0,0 +1,38 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+// Live view of Metrics.report(), opened with Ctrl+Shift+D. The report is
+// rebuilt once a second while the window is open.
+class DiagnosticsDialog {
+    private static final int REFRESH_MILLIS = 1000;
+
+    private DiagnosticsDialog() {
+    }
+
+    static void show(Component parent) {
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), "Diagnostics",
+                Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        JTextArea text = new JTextArea(Metrics.report());
+        text.setEditable(false);
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        dialog.setContentPane(new JScrollPane(text));
+        Timer refresh = new Timer(REFRESH_MILLIS, e -> {
+            int caret = text.getCaretPosition();
+            text.setText(Metrics.report());
+            text.setCaretPosition(Math.min(caret, text.getDocument().getLength()));
+        });
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refresh.stop();
+            }
+        });
+        refresh.start();
+        dialog.setSize(900, 600);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setVisible(true);
+    }
+}
@@ -0,0 +1,126 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+// Shows CustomerDedupe's merge suggestions. Merge Selected folds each
+// selected group into the customer it keeps, moving the duplicates' sales
+// across, and drops the group from the list.
+class DuplicatesDialog {
+    private static final String[] COLUMNS = {"Keep ID", "Name", "Email", "Phone", "Duplicates", "Score"};
+
+    private final List<CustomerDedupe.Merge> merges;
+    private final AbstractTableModel model = new AbstractTableModel() {
+        @Override
+        public int getRowCount() {
+            return merges.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 5 ? Double.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            CustomerDedupe.Merge merge = merges.get(row);
+            switch (column) {
+                case 0: return merge.keep.getId();
+                case 1: return merge.keep.getName();
+                case 2: return merge.keep.getEmail();
+                case 3: return merge.keep.getPhone();
+                case 4: return describe(merge.duplicates);
+                default: return Math.round(merge.score * 1000) / 1000.0;
+            }
+        }
+    };
+
+    private DuplicatesDialog(List<CustomerDedupe.Merge> merges) {
+        this.merges = new ArrayList<>(merges);
+    }
+
+    // Called on the EDT.
+    static void show(Component parent, List<CustomerDedupe.Merge> merges, Repository<Customer> customers,
+                     Repository<Sale> sales, Repository.Index<Sale> salesByCustomer) {
+        if (merges.isEmpty()) {
+            JOptionPane.showMessageDialog(parent, "No likely duplicate customers found.");
+            return;
+        }
+        DuplicatesDialog view = new DuplicatesDialog(merges);
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), "Duplicate Customers",
+                Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        JTable table = new JTable(view.model);
+        table.setAutoCreateRowSorter(true);
+
+        JLabel titleLabel = new JLabel(merges.size() + " groups of likely duplicates", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JButton mergeButton = new JButton("Merge Selected");
+        mergeButton.addActionListener(e -> view.mergeSelected(table, customers, sales, salesByCustomer));
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dialog.dispose());
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(mergeButton);
+        buttonPanel.add(closeButton);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(titleLabel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        panel.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.setContentPane(panel);
+        dialog.setSize(900, 500);
+        dialog.setLocationRelativeTo(parent);
+        dialog.setVisible(true);
+    }
+
+    private void mergeSelected(JTable table, Repository<Customer> customers, Repository<Sale> sales,
+                               Repository.Index<Sale> salesByCustomer) {
+        int[] selected = table.getSelectedRows();
+        if (selected.length == 0) {
+            JOptionPane.showMessageDialog(table, "Please select the groups to merge.");
+            return;
+        }
+        List<CustomerDedupe.Merge> done = new ArrayList<>();
+        StringJoiner problems = new StringJoiner("\n");
+        int removed = 0;
+        int moved = 0;
+        for (int row : selected) {
+            CustomerDedupe.Merge merge = merges.get(table.convertRowIndexToModel(row));
+            try {
+                moved += CustomerDedupe.merge(merge, customers, sales, salesByCustomer);
+                removed += merge.duplicates.size();
+                done.add(merge);
+            } catch (IllegalArgumentException e) {
+                problems.add(merge.keep.getId() + ": " + e.getMessage());
+            }
+        }
+        merges.removeAll(done);
+        model.fireTableDataChanged();
+        String message = "Merged " + removed + " customers and moved " + moved + " sales.";
+        JOptionPane.showMessageDialog(table, done.size() == selected.length ? message
+                : message + "\nNot merged:\n" + problems);
+    }
+
+    private static String describe(List<Customer> duplicates) {
+        StringJoiner text = new StringJoiner("; ");
+        for (Customer duplicate : duplicates) {
+            text.add(duplicate.getId() + " (" + duplicate.getName() + ", " + duplicate.getEmail() + ", "
+                    + duplicate.getPhone() + ")");
+        }
+        return text.toString();
+    }
+}
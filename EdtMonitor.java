@@ -0,0 +1,90 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.concurrent.TimeUnit;
+
+// Times every event the EDT dispatches into the "ui.edt.event" timer and
+// reports events that run past Metrics.SLOW_NANOS. A watchdog thread looks
+// at the EDT while such an event is still running, so the report names the
+// code that was busy rather than just the event.
+//
+// A modal dialog dispatches events from inside the event that opened it;
+// that outer event is not counted, as it mostly measures the user.
+final class EdtMonitor extends EventQueue {
+    private static final long WATCH_MILLIS = 10;
+    private static final int STACK_FRAMES = 8;
+
+    // The innermost dispatch still running; start is 0 when there is none.
+    private volatile long dispatchStart;
+    private volatile AWTEvent current;
+    private volatile long reportedStart;
+    private volatile Thread edt;
+    private long dispatches;
+
+    private EdtMonitor() {
+    }
+
+    // Call on the EDT.
+    static void install() {
+        EdtMonitor monitor = new EdtMonitor();
+        monitor.edt = Thread.currentThread();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor);
+        Thread watchdog = new Thread(monitor::watch, "edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        long before = ++dispatches;
+        edt = Thread.currentThread();
+        current = event;
+        dispatchStart = start;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long end = System.nanoTime();
+            if (dispatches == before) {
+                Metrics.timer("ui.edt.event").record(end - start);
+                if (end - start > Metrics.SLOW_NANOS && reportedStart != start) {
+                    Metrics.stall("edt", describe(event), end - start);
+                }
+            }
+            // An outer event that opened a dialog is not watched further.
+            dispatchStart = 0;
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(WATCH_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = dispatchStart;
+            AWTEvent event = current;
+            long running = System.nanoTime() - start;
+            if (start != 0 && start != reportedStart && running > Metrics.SLOW_NANOS) {
+                reportedStart = start;
+                Metrics.stall("edt", describe(event) + ", busy in" + stack(edt), running);
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        Object source = event.getSource();
+        return event.getClass().getSimpleName() + " from "
+                + (source == null ? "nothing" : source.getClass().getSimpleName());
+    }
+
+    private static String stack(Thread thread) {
+        StringBuilder out = new StringBuilder();
+        StackTraceElement[] frames = thread.getStackTrace();
+        for (int i = 0; i < Math.min(STACK_FRAMES, frames.length); i++) {
+            out.append("\n    at ").append(frames[i]);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,172 @@
+import java.util.List;
+
+// Reads and writes one flat JSON object per line, keyed by a table's column
+// names: {"id":"1","make":"Toyota","model":"Camry","price":24000.0,...}.
+// Nested objects and arrays are not supported.
+class JsonLines {
+
+    private JsonLines() {
+    }
+
+    static <T> String toJson(StoreFormat<T> format, T row) {
+        StringBuilder json = new StringBuilder("{");
+        List<StoreFormat.Column<T>> columns = format.columns();
+        for (int i = 0; i < columns.size(); i++) {
+            StoreFormat.Column<T> column = columns.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            appendString(json, column.name);
+            json.append(':');
+            if (column.type == StoreFormat.NUMBER) {
+                json.append(column.format(row));
+            } else {
+                appendString(json, column.text.apply(row));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    // Returns the values in column order; unknown keys are ignored and
+    // missing ones are null. Throws IllegalArgumentException on bad JSON.
+    static String[] parse(StoreFormat<?> format, String line) {
+        String[] values = new String[format.fieldCount()];
+        Parser parser = new Parser(line);
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String key = parser.string();
+                parser.expect(':');
+                String value = parser.value();
+                int column = format.columnIndex(key);
+                if (column >= 0) {
+                    values[column] = value;
+                }
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.end();
+        return values;
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() {
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("unexpected trailing characters");
+            }
+        }
+
+        // Strings, numbers, true/false as their text; null as null.
+        String value() {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("unsupported value '" + literal + "'");
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("bad unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// The cards of a CardLayout, each built the first time it is shown, so the
+// window only waits for the card it opens on. prefetch() builds the rest in
+// the order they were added, one card per EDT event, so input and painting
+// are never held up for longer than one card takes.
+class LazyCards {
+    private final CardLayout layout = new CardLayout();
+    private final JPanel panel = new JPanel(layout);
+    private final Map<String, Supplier<? extends JComponent>> unbuilt = new LinkedHashMap<>();
+
+    JPanel panel() {
+        return panel;
+    }
+
+    void add(String name, Supplier<? extends JComponent> build) {
+        unbuilt.put(name, build);
+    }
+
+    // Called on the EDT.
+    void show(String name) {
+        build(name);
+        layout.show(panel, name);
+    }
+
+    void prefetch() {
+        if (!unbuilt.isEmpty()) {
+            SwingUtilities.invokeLater(() -> {
+                if (!unbuilt.isEmpty()) {
+                    build(unbuilt.keySet().iterator().next());
+                }
+                prefetch();
+            });
+        }
+    }
+
+    private void build(String name) {
+        Supplier<? extends JComponent> build = unbuilt.remove(name);
+        if (build != null) {
+            panel.add(Metrics.time("ui.build." + name.toLowerCase(), build), name);
+        }
+    }
+}
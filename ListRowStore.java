@@ -0,0 +1,154 @@
+import java.util.*;
+import java.util.function.Function;
+
+// One object per row in insertion order, with hash maps from the primary
+// key to the row's position and for the secondary indexes. Snapshots share
+// the rows array: rows before frozen are visible to one, so changing or
+// removing one of those copies the array first, while appends write past
+// them.
+class ListRowStore<T> implements RowStore<T> {
+
+    private static class HashIndex<T> implements Repository.Index<T> {
+        private final Function<T, String> keyOf;
+        private final Map<String, List<T>> entries = new HashMap<>();
+
+        private HashIndex(Function<T, String> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        @Override
+        public List<T> find(String key) {
+            List<T> rows = entries.get(key);
+            return rows == null ? Collections.emptyList() : Collections.unmodifiableList(rows);
+        }
+
+        @Override
+        public int count(String key) {
+            List<T> rows = entries.get(key);
+            return rows == null ? 0 : rows.size();
+        }
+
+        private void add(T row) {
+            entries.computeIfAbsent(keyOf.apply(row), key -> new ArrayList<>(2)).add(row);
+        }
+
+        private void remove(T row) {
+            String key = keyOf.apply(row);
+            List<T> rows = entries.get(key);
+            if (rows != null) {
+                rows.remove(row);
+                if (rows.isEmpty()) {
+                    entries.remove(key);
+                }
+            }
+        }
+    }
+
+    private final Function<T, String> idOf;
+    private Object[] rows = new Object[16];
+    private int size;
+    private int frozen;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final List<HashIndex<T>> indexes = new ArrayList<>();
+
+    ListRowStore(Function<T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int position) {
+        Objects.checkIndex(position, size);
+        return (T) rows[position];
+    }
+
+    @Override
+    public T findById(String id) {
+        int position = positionOf(id);
+        return position < 0 ? null : get(position);
+    }
+
+    @Override
+    public int positionOf(String id) {
+        Integer position = positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public Repository.Index<T> addIndex(Function<T, String> keyOf) {
+        HashIndex<T> index = new HashIndex<>(keyOf);
+        for (int position = 0; position < size; position++) {
+            index.add(get(position));
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    @Override
+    public void add(T row) {
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            frozen = 0;
+        }
+        positions.put(idOf.apply(row), size);
+        rows[size++] = row;
+        indexes.forEach(index -> index.add(row));
+    }
+
+    @Override
+    public T set(int position, T row) {
+        T previous = get(position);
+        thaw(position);
+        rows[position] = row;
+        positions.remove(idOf.apply(previous));
+        positions.put(idOf.apply(row), position);
+        for (HashIndex<T> index : indexes) {
+            index.remove(previous);
+            index.add(row);
+        }
+        return previous;
+    }
+
+    @Override
+    public T remove(int position) {
+        T removed = get(position);
+        thaw(position);
+        System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+        rows[--size] = null;
+        positions.remove(idOf.apply(removed));
+        // The rows after it have moved up by one.
+        for (int i = position; i < size; i++) {
+            positions.put(idOf.apply(get(i)), i);
+        }
+        indexes.forEach(index -> index.remove(removed));
+        return removed;
+    }
+
+    @Override
+    public List<T> snapshot() {
+        frozen = size;
+        return Collections.unmodifiableList(rowList());
+    }
+
+    @Override
+    public List<T> toList() {
+        return new ArrayList<>(rowList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> rowList() {
+        return (List<T>) Arrays.asList(rows).subList(0, size);
+    }
+
+    private void thaw(int position) {
+        if (position < frozen) {
+            rows = rows.clone();
+            frozen = 0;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Process-wide timers, counters and gauges, named like "load.cars" or
+// "ui.dashboard.refresh". Timed operations also emit a JFR event, so a
+// flight recording (-XX:StartFlightRecording) shows them on the timeline;
+// the event costs nothing while no recording is running. Failures that used
+// to go only to stderr are counted and the latest kept for the dump.
+// report() renders everything as text for the diagnostics window and the
+// API's /api/metrics.
+final class Metrics {
+    // Work on the EDT, or in a repository listener, that takes longer than
+    // this freezes the window noticeably.
+    static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int RECENT_FAILURES = 20;
+
+    private static final Map<String, Histogram> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<?>> gauges = new ConcurrentHashMap<>();
+    private static final Deque<String> failures = new ArrayDeque<>();
+
+    private Metrics() {
+    }
+
+    @Name("carstore.Operation")
+    @Label("Car Store Operation")
+    @Category("Car Store")
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+    }
+
+    @Name("carstore.Stall")
+    @Label("Car Store Stall")
+    @Description("EDT event or repository listener that ran longer than 50 ms")
+    @Category("Car Store")
+    static final class StallEvent extends Event {
+        @Label("What")
+        String what;
+
+        @Label("Milliseconds")
+        long millis;
+    }
+
+    // Log-linear buckets in the style of HdrHistogram: 32 per power of two,
+    // so any recorded value is reported within about 3%. Recording is one
+    // atomic increment and needs no lock.
+    static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts.incrementAndGet(bucket(value));
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        private static int bucket(long value) {
+            int exponent = 63 - Long.numberOfLeadingZeros(value | 1);
+            if (exponent < SUB_BITS) {
+                return (int) value;
+            }
+            long mantissa = value >>> (exponent - SUB_BITS);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) (mantissa - SUB_BUCKETS);
+        }
+
+        // The largest value that falls into the bucket.
+        private static long upperBound(int bucket) {
+            if (bucket < 2 * SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+            return ((mantissa + 1) << (exponent - SUB_BITS)) - 1;
+        }
+
+        Snapshot snapshot() {
+            long[] copy = new long[BUCKETS];
+            long count = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                copy[b] = counts.get(b);
+                count += copy[b];
+            }
+            return new Snapshot(copy, count, total.sum(), max.get());
+        }
+    }
+
+    static final class Snapshot {
+        private final long[] counts;
+        final long count;
+        final long totalNanos;
+        final long maxNanos;
+
+        private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        long percentile(double fraction) {
+            long rank = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(Histogram.upperBound(b), maxNanos);
+                }
+            }
+            return 0;
+        }
+
+        long meanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+    }
+
+    static Histogram timer(String name) {
+        return timers.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    static void count(String name) {
+        count(name, 1);
+    }
+
+    static void count(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    // Reported as value.toString() each time the metrics are dumped.
+    static void gauge(String name, Supplier<?> value) {
+        gauges.put(name, value);
+    }
+
+    static void time(String name, Runnable action) {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    static <T> T time(String name, Supplier<T> action) {
+        OperationEvent event = new OperationEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            timer(name).record(System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.commit();
+            }
+        }
+    }
+
+    // For work that is timed by hand, e.g. across threads.
+    static void record(String name, long startNanos) {
+        timer(name).record(System.nanoTime() - startNanos);
+    }
+
+    // Prints the message as before, and counts it under "failures.<name>".
+    static void failure(String name, String message) {
+        System.err.println(message);
+        count("failures." + name);
+        synchronized (failures) {
+            if (failures.size() == RECENT_FAILURES) {
+                failures.removeFirst();
+            }
+            failures.addLast(LocalTime.now().truncatedTo(ChronoUnit.SECONDS) + " " + message);
+        }
+    }
+
+    // Counts a stall under "stalls.<kind>" and reports what was running.
+    static void stall(String kind, String what, long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        count("stalls." + kind);
+        StallEvent event = new StallEvent();
+        if (event.shouldCommit()) {
+            event.what = what;
+            event.millis = millis;
+            event.commit();
+        }
+        System.err.println("Slow " + kind + " (" + millis + " ms): " + what);
+    }
+
+    static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-36s %9s %9s %9s %9s %9s %9s%n",
+                "timer", "count", "mean", "p50", "p90", "p99", "max"));
+        for (Map.Entry<String, Histogram> timer : new TreeMap<>(timers).entrySet()) {
+            Snapshot snapshot = timer.getValue().snapshot();
+            out.append(String.format("%-36s %9d %9s %9s %9s %9s %9s%n", timer.getKey(), snapshot.count,
+                    duration(snapshot.meanNanos()), duration(snapshot.percentile(0.5)),
+                    duration(snapshot.percentile(0.9)), duration(snapshot.percentile(0.99)),
+                    duration(snapshot.maxNanos)));
+        }
+        out.append(String.format("%n%-36s %9s%n", "counter", "value"));
+        new TreeMap<>(counters).forEach((name, value) ->
+                out.append(String.format("%-36s %9d%n", name, value.sum())));
+        if (!gauges.isEmpty()) {
+            out.append(String.format("%n%-36s %s%n", "gauge", "value"));
+            new TreeMap<>(gauges).forEach((name, value) ->
+                    out.append(String.format("%-36s %s%n", name, value.get())));
+        }
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                out.append(String.format("%nrecent failures%n"));
+                failures.forEach(failure -> out.append(failure).append('\n'));
+            }
+        }
+        return out.toString();
+    }
+
+    private static String duration(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return nanos / 1000 + "us";
+        }
+        if (nanos < 10_000_000_000L) {
+            return nanos / 1_000_000 + "ms";
+        }
+        return nanos / 1_000_000_000 + "s";
+    }
+}
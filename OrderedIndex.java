@@ -0,0 +1,314 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+// Rows of a repository in the order of one column, kept up to date from its
+// change callbacks. Entries are (key, row ID) pairs in a B+-tree whose nodes
+// also count the entries below them, so the row at a given rank and the
+// number of rows below a key are both found in O(log n). A table reading
+// its rows by rank is therefore sorted without sorting anything, and a
+// range filter is just a pair of ranks.
+//
+// The tree is read under the repository's read lock and changed by its
+// listener calls, which hold the write lock. Ties are ordered by ID. Nodes
+// that empty out are dropped, but partly empty ones are not merged.
+class OrderedIndex<T, K extends Comparable<K>> implements Repository.Listener<T> {
+    private static final int NODE_SIZE = 64;
+
+    private abstract static class Node {
+        int count;
+        int size;
+        final Object[] keys = new Object[NODE_SIZE + 1];
+        final String[] ids = new String[NODE_SIZE + 1];
+    }
+
+    private static final class Leaf extends Node {
+    }
+
+    // keys[i] and ids[i] are a lower bound for the entries under child i;
+    // the bound of child 0 is not used.
+    private static final class Inner extends Node {
+        final Node[] children = new Node[NODE_SIZE + 1];
+    }
+
+    private final Repository<T> repository;
+    private final Function<T, K> keyOf;
+    private Node root = new Leaf();
+
+    OrderedIndex(Repository<T> repository, Function<T, K> keyOf) {
+        this.repository = repository;
+        this.keyOf = keyOf;
+        repository.write(() -> {
+            for (int i = 0; i < repository.size(); i++) {
+                inserted(i, repository.get(i));
+            }
+            repository.addListener(this);
+            return null;
+        });
+    }
+
+    K keyOf(T row) {
+        return keyOf.apply(row);
+    }
+
+    // Orders rows the way the index does, for lists that did not come from it.
+    Comparator<T> comparator() {
+        return Comparator.comparing(keyOf).thenComparing(repository::idOf);
+    }
+
+    int size() {
+        return repository.read(() -> root.count);
+    }
+
+    // The rows with from <= key <= to in key order, or in reverse; a null
+    // bound is open. The list reads the index on every call, so it follows
+    // later changes rather than being a copy.
+    List<T> range(K from, K to, boolean descending) {
+        return new AbstractList<T>() {
+            @Override
+            public T get(int index) {
+                return repository.read(() -> {
+                    int first = from == null ? 0 : countBelow(root, from, false);
+                    int end = to == null ? root.count : countBelow(root, to, true);
+                    Objects.checkIndex(index, Math.max(0, end - first));
+                    return repository.findById(idAt(descending ? end - 1 - index : first + index));
+                });
+            }
+
+            @Override
+            public int size() {
+                return repository.read(() -> {
+                    int first = from == null ? 0 : countBelow(root, from, false);
+                    int end = to == null ? root.count : countBelow(root, to, true);
+                    return Math.max(0, end - first);
+                });
+            }
+        };
+    }
+
+    // Number of rows with from <= key <= to.
+    int count(K from, K to) {
+        return range(from, to, false).size();
+    }
+
+    @Override
+    public void inserted(int position, T row) {
+        insert(keyOf.apply(row), repository.idOf(row));
+    }
+
+    @Override
+    public void updated(int position, T previous, T row) {
+        K key = keyOf.apply(row);
+        String id = repository.idOf(row);
+        K previousKey = keyOf.apply(previous);
+        String previousId = repository.idOf(previous);
+        if (!key.equals(previousKey) || !id.equals(previousId)) {
+            remove(root, previousKey, previousId);
+            collapseRoot();
+            insert(key, id);
+        }
+    }
+
+    @Override
+    public void removed(int position, T row) {
+        remove(root, keyOf.apply(row), repository.idOf(row));
+        collapseRoot();
+    }
+
+    private void insert(K key, String id) {
+        Node sibling = insert(root, key, id);
+        if (sibling != null) {
+            Inner parent = new Inner();
+            parent.children[0] = root;
+            parent.children[1] = sibling;
+            parent.keys[1] = sibling.keys[0];
+            parent.ids[1] = sibling.ids[0];
+            parent.size = 2;
+            parent.count = root.count + sibling.count;
+            root = parent;
+        }
+    }
+
+    // Returns the new right half if the node had to split. Its first key
+    // and ID become the separator in the parent; for an inner node that is
+    // the bound of the child it starts with.
+    private Node insert(Node node, K key, String id) {
+        node.count++;
+        if (node instanceof Leaf) {
+            int slot = search(node, key, id);
+            shiftRight(node, slot);
+            node.keys[slot] = key;
+            node.ids[slot] = id;
+        } else {
+            Inner inner = (Inner) node;
+            int child = childFor(inner, key, id);
+            Node sibling = insert(inner.children[child], key, id);
+            if (sibling == null) {
+                return null;
+            }
+            shiftRight(inner, child + 1);
+            inner.children[child + 1] = sibling;
+            inner.keys[child + 1] = sibling.keys[0];
+            inner.ids[child + 1] = sibling.ids[0];
+        }
+        return node.size > NODE_SIZE ? split(node) : null;
+    }
+
+    private Node split(Node node) {
+        Node right = node instanceof Leaf ? new Leaf() : new Inner();
+        int half = node.size / 2;
+        right.size = node.size - half;
+        System.arraycopy(node.keys, half, right.keys, 0, right.size);
+        System.arraycopy(node.ids, half, right.ids, 0, right.size);
+        if (node instanceof Leaf) {
+            right.count = right.size;
+        } else {
+            Node[] children = ((Inner) node).children;
+            System.arraycopy(children, half, ((Inner) right).children, 0, right.size);
+            for (int i = 0; i < right.size; i++) {
+                right.count += ((Inner) right).children[i].count;
+            }
+            Arrays.fill(children, half, node.size, null);
+        }
+        Arrays.fill(node.keys, half, node.size, null);
+        Arrays.fill(node.ids, half, node.size, null);
+        node.count -= right.count;
+        node.size = half;
+        return right;
+    }
+
+    // Returns whether the entry was found.
+    private boolean remove(Node node, K key, String id) {
+        if (node instanceof Leaf) {
+            int slot = search(node, key, id);
+            if (slot >= node.size || compare(node, slot, key, id) != 0) {
+                return false;
+            }
+            shiftLeft(node, slot);
+            node.count--;
+            return true;
+        }
+        Inner inner = (Inner) node;
+        int child = childFor(inner, key, id);
+        if (!remove(inner.children[child], key, id)) {
+            return false;
+        }
+        node.count--;
+        if (inner.children[child].count == 0 && inner.size > 1) {
+            shiftLeft(inner, child);
+        }
+        return true;
+    }
+
+    private void collapseRoot() {
+        while (root instanceof Inner && root.size == 1) {
+            root = ((Inner) root).children[0];
+        }
+    }
+
+    private String idAt(int rank) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = 0;
+            while (rank >= inner.children[child].count) {
+                rank -= inner.children[child].count;
+                child++;
+            }
+            node = inner.children[child];
+        }
+        return node.ids[rank];
+    }
+
+    // Entries with a key below key, or at or below it if inclusive.
+    @SuppressWarnings("unchecked")
+    private int countBelow(Node node, K key, boolean inclusive) {
+        int below = 0;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = 0;
+            while (child + 1 < inner.size && before((K) inner.keys[child + 1], key, inclusive)) {
+                below += inner.children[child].count;
+                child++;
+            }
+            node = inner.children[child];
+        }
+        int low = 0;
+        int high = node.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (before((K) node.keys[middle], key, inclusive)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return below + low;
+    }
+
+    private static <K extends Comparable<K>> boolean before(K entry, K key, boolean inclusive) {
+        int order = entry.compareTo(key);
+        return inclusive ? order <= 0 : order < 0;
+    }
+
+    private int childFor(Inner inner, K key, String id) {
+        int low = 1;
+        int high = inner.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(inner, middle, key, id) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    // First slot whose entry is not below (key, id).
+    private int search(Node node, K key, String id) {
+        int low = 0;
+        int high = node.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(node, middle, key, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Node node, int slot, K key, String id) {
+        int order = ((K) node.keys[slot]).compareTo(key);
+        return order != 0 ? order : node.ids[slot].compareTo(id);
+    }
+
+    private static void shiftRight(Node node, int slot) {
+        System.arraycopy(node.keys, slot, node.keys, slot + 1, node.size - slot);
+        System.arraycopy(node.ids, slot, node.ids, slot + 1, node.size - slot);
+        if (node instanceof Inner) {
+            Node[] children = ((Inner) node).children;
+            System.arraycopy(children, slot, children, slot + 1, node.size - slot);
+        }
+        node.size++;
+    }
+
+    private static void shiftLeft(Node node, int slot) {
+        node.size--;
+        System.arraycopy(node.keys, slot + 1, node.keys, slot, node.size - slot);
+        System.arraycopy(node.ids, slot + 1, node.ids, slot, node.size - slot);
+        node.keys[node.size] = null;
+        node.ids[node.size] = null;
+        if (node instanceof Inner) {
+            Node[] children = ((Inner) node).children;
+            System.arraycopy(children, slot + 1, children, slot, node.size - slot);
+            children[node.size] = null;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import javax.swing.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Keeps one repository on disk: loads it from the binary snapshot or the CSV,
+// replays the change journal on top, journals every later change and
+// compacts the journal back into the CSV. Files are read and written on the
+// I/O thread and loaded rows are added on the EDT. Later changes come from
+// any thread that writes through the repository, the EDT or an ApiServer
+// handler, and are journaled by the listener under the repository's write
+// lock. Every such change must also pass the format's validation, since a
+// row the CSV cannot hold would be dropped on the next load.
+class PersistentTable<T> implements Repository.Listener<T>, Repository.Constraint<T> {
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private final StoreFormat<T> format;
+    private final Repository<T> rows;
+    private final ChangeJournal journal;
+    // Set on the EDT while loaded rows are added, so they are not journaled
+    // again, and read on whichever thread makes a change.
+    private volatile boolean loading;
+    private volatile CompletableFuture<Void> lastChange = CompletableFuture.completedFuture(null);
+
+    PersistentTable(StoreFormat<T> format, Repository<T> rows) {
+        this.format = format;
+        this.rows = rows;
+        this.journal = new ChangeJournal(format.csvFile());
+        rows.addListener(this);
+        rows.addConstraint(this);
+    }
+
+    // Runs on the I/O thread and hands rows to the EDT in batches, so the
+    // tables fill in while the rest of the file is still being read.
+    void load() {
+        Metrics.time("load." + format.name(), () -> {
+            if (!SnapshotFile.isCurrent(format) || !loadSnapshot()) {
+                loadCsv();
+            }
+            replayJournal();
+        });
+    }
+
+    private boolean loadSnapshot() {
+        try {
+            SnapshotFile.read(Paths.get(format.snapshotFile()), format, this::publish);
+            return true;
+        } catch (IOException e) {
+            Metrics.failure("load.snapshot", "Ignoring snapshot " + format.snapshotFile() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void loadCsv() {
+        try {
+            long skipped = format.parseCsv(Paths.get(format.csvFile()), this::publish);
+            if (skipped > 0) {
+                Metrics.failure("load.malformed", "Skipped " + skipped + " malformed rows in " + format.csvFile());
+            }
+        } catch (IOException e) {
+            Metrics.failure("load.csv", "Error reading " + format.name() + " from CSV: " + e.getMessage());
+        }
+    }
+
+    private void publish(List<T> chunk) {
+        for (int from = 0; from < chunk.size(); from += LOAD_BATCH_SIZE) {
+            List<T> batch = chunk.subList(from, Math.min(chunk.size(), from + LOAD_BATCH_SIZE));
+            SwingUtilities.invokeLater(() -> {
+                loading = true;
+                try {
+                    for (T row : batch) {
+                        try {
+                            rows.add(row);
+                        } catch (IllegalArgumentException e) {
+                            Metrics.failure("load.rejected", "Skipping row in " + format.csvFile() + ": " + e.getMessage());
+                        }
+                    }
+                } finally {
+                    loading = false;
+                }
+            });
+        }
+    }
+
+    // Reads the journal on the I/O thread and applies it on the EDT after the
+    // snapshot batches queued before it.
+    private void replayJournal() {
+        List<ChangeJournal.Entry> entries = new ArrayList<>();
+        try {
+            journal.replay(entries::add);
+        } catch (IOException e) {
+            Metrics.failure("load.journal", "Error replaying change journal: " + e.getMessage());
+        }
+        SwingUtilities.invokeLater(() -> {
+            loading = true;
+            try {
+                entries.forEach(this::apply);
+            } finally {
+                loading = false;
+            }
+            if (journal.hasPendingEntries()) {
+                compact();
+            }
+        });
+    }
+
+    private void apply(ChangeJournal.Entry entry) {
+        apply(format, rows, entry);
+    }
+
+    // Entries are applied by key rather than by position, so replaying a log
+    // that is already reflected in the snapshot leaves the rows unchanged.
+    static <T> void apply(StoreFormat<T> format, Repository<T> rows, ChangeJournal.Entry entry) {
+        String key = entry.key.trim();
+        if (entry.op == ChangeJournal.DELETE) {
+            rows.removeById(key);
+            return;
+        }
+        T row = format.parseLine(entry.row);
+        if (row == null) {
+            Metrics.failure("load.journal", "Skipping journal entry " + entry.sequence + ": malformed row");
+            return;
+        }
+        int position = rows.positionOf(key);
+        if (position < 0) {
+            position = rows.positionOf(rows.idOf(row));
+        }
+        try {
+            if (position >= 0) {
+                rows.set(position, row);
+            } else {
+                rows.add(row);
+            }
+        } catch (IllegalArgumentException e) {
+            Metrics.failure("load.journal", "Skipping journal entry " + entry.sequence + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void checkInsert(T row) {
+        checkStorable(row);
+    }
+
+    @Override
+    public void checkUpdate(T previous, T row) {
+        checkStorable(row);
+    }
+
+    private void checkStorable(T row) {
+        if (loading) {
+            return;
+        }
+        String problem = format.validate(row);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+    }
+
+    @Override
+    public void inserted(int position, T row) {
+        logChange(ChangeJournal.INSERT, rows.idOf(row), format.toCsv(row));
+    }
+
+    @Override
+    public void updated(int position, T previous, T row) {
+        logChange(ChangeJournal.UPDATE, rows.idOf(previous), format.toCsv(row));
+    }
+
+    @Override
+    public void removed(int position, T row) {
+        logChange(ChangeJournal.DELETE, rows.idOf(row), "");
+    }
+
+    private void logChange(char op, String key, String row) {
+        if (loading) {
+            return;
+        }
+        long start = System.nanoTime();
+        lastChange = journal.log(op, key, row).whenComplete((ignored, error) -> {
+            if (error == null) {
+                Metrics.record("save.journal." + format.name(), start);
+            }
+        });
+        if (journal.needsCompaction()) {
+            compact();
+        }
+    }
+
+    // Completes once every change logged so far is on disk.
+    CompletableFuture<Void> durable() {
+        return lastChange;
+    }
+
+    // The snapshot is taken together with the journal's last sequence
+    // number, and the log is sealed on the I/O thread once it holds exactly
+    // the changes up to that number, so the sealed log is always covered by
+    // the snapshot. Changes made meanwhile are held back for the next log.
+    void compact() {
+        if (!journal.scheduleCompaction()) {
+            return;
+        }
+        long[] covered = new long[1];
+        List<T> snapshot = rows.read(() -> {
+            covered[0] = journal.coverCompaction();
+            return rows.snapshot();
+        });
+        BackgroundTasks.io().execute(() -> {
+            long start = System.nanoTime();
+            try {
+                journal.beginCompaction(covered[0]);
+                writeCsv(Paths.get(format.csvFile()), format, snapshot);
+                journal.finishCompaction();
+                Metrics.record("save.compact." + format.name(), start);
+            } catch (IOException e) {
+                journal.abandonCompaction();
+                Metrics.failure("save.compact", "Error compacting " + format.csvFile() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Called on the EDT; the file is written on the I/O thread.
+    CompletableFuture<Void> writeSnapshot() {
+        List<T> snapshot = rows.snapshot();
+        return BackgroundTasks.io(() -> {
+            long start = System.nanoTime();
+            try {
+                SnapshotFile.write(Paths.get(format.snapshotFile()), format, snapshot);
+                Metrics.record("save.snapshot." + format.name(), start);
+            } catch (IOException e) {
+                Metrics.failure("save.snapshot", "Error writing snapshot " + format.snapshotFile() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    static <T> void writeCsv(Path target, StoreFormat<T> format, List<T> rows) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (T row : rows) {
+                writer.write(format.toCsv(row));
+                writer.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
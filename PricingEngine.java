@@ -0,0 +1,239 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+// Prices car configurations from the option table in options.csv. A
+// configuration is a car ID plus one option index per category; its price is
+// the car's list price plus each chosen option's surcharge, where a rule for
+// the car's make and model beats a rule for its make, which beats the
+// default. Prices are cached per car and option vector; each car's cache
+// lives in its CarPricing entry, which is made on the car's first quote and
+// dropped when the car is edited or removed, so a stale price can never be
+// served. Pricing may run on any thread.
+class PricingEngine implements Repository.Listener<Car> {
+    static final String OPTIONS_FILE = "options.csv";
+
+    // Option indexes are packed 8 bits per category into the cache key, so a
+    // car's cache holds at most one entry per possible configuration.
+    private static final int MAX_PACKED_CATEGORIES = 7;
+    private static final int MAX_PACKED_OPTIONS = 256;
+    // Beyond this many priced cars an arbitrary entry makes room, so the
+    // engine never holds a copy of every car.
+    private static final int MAX_PRICED_CARS = 100_000;
+
+    static final class Configuration {
+        final String carId;
+        final int[] options;
+
+        Configuration(String carId, int... options) {
+            this.carId = carId;
+            this.options = options;
+        }
+    }
+
+    private final List<String> categories = new ArrayList<>();
+    private final List<List<String>> options = new ArrayList<>();
+    private final List<double[]> surcharges = new ArrayList<>();
+    // "category\noption\nmake" or "category\noption\nmake\nmodel" -> surcharge
+    private final Map<String, Double> rules = new HashMap<>();
+    private final ConcurrentHashMap<String, CarPricing> pricing = new ConcurrentHashMap<>();
+    private final Repository<Car> cars;
+
+    PricingEngine(Repository<Car> cars, List<String> optionLines) {
+        this.cars = cars;
+        optionLines.forEach(this::addOptionLine);
+        cars.addListener(this);
+    }
+
+    // Falls back to no options at all if the file cannot be read, so the
+    // panel still quotes list prices.
+    static List<String> readOptions(Path file) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            Metrics.failure("load.options", "Error reading options from " + file + ": " + e.getMessage());
+        }
+        return lines;
+    }
+
+    private void addOptionLine(String line) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return;
+        }
+        String[] data = line.split(",");
+        if (data.length < 3 || data.length > 5) {
+            Metrics.failure("load.options", "Skipping malformed option line: " + line);
+            return;
+        }
+        String category = data[0].trim();
+        String option = data[1].trim();
+        double surcharge;
+        try {
+            surcharge = Double.parseDouble(data[2].trim());
+        } catch (NumberFormatException e) {
+            Metrics.failure("load.options", "Skipping malformed option line: " + line);
+            return;
+        }
+        if (data.length > 3) {
+            String target = data.length == 4 ? data[3].trim() : data[3].trim() + "\n" + data[4].trim();
+            rules.put(category + "\n" + option + "\n" + target, surcharge);
+            return;
+        }
+        int c = categories.indexOf(category);
+        if (c < 0) {
+            c = categories.size();
+            categories.add(category);
+            options.add(new ArrayList<>());
+            surcharges.add(new double[0]);
+        }
+        options.get(c).add(option);
+        double[] values = Arrays.copyOf(surcharges.get(c), options.get(c).size());
+        values[values.length - 1] = surcharge;
+        surcharges.set(c, values);
+    }
+
+    List<String> getCategories() {
+        return Collections.unmodifiableList(categories);
+    }
+
+    List<String> getOptions(int category) {
+        return Collections.unmodifiableList(options.get(category));
+    }
+
+    // NaN if there is no car with this ID.
+    double price(String carId, int... chosen) {
+        CarPricing car = pricing.get(carId);
+        if (car == null) {
+            car = cars.read(() -> addPricing(carId));
+        }
+        return car == null ? Double.NaN : car.price(chosen);
+    }
+
+    // Runs under the repository's read lock, so the car cannot be edited
+    // between reading it and publishing its entry.
+    private CarPricing addPricing(String carId) {
+        Car car = cars.findById(carId);
+        if (car == null) {
+            return null;
+        }
+        if (pricing.size() >= MAX_PRICED_CARS) {
+            Iterator<String> any = pricing.keySet().iterator();
+            if (any.hasNext()) {
+                pricing.remove(any.next());
+            }
+        }
+        CarPricing added = new CarPricing(car);
+        CarPricing raced = pricing.putIfAbsent(carId, added);
+        return raced == null ? added : raced;
+    }
+
+    // Prices every configuration in one call, spread over all cores.
+    double[] price(List<Configuration> configurations) {
+        double[] prices = new double[configurations.size()];
+        IntStream.range(0, prices.length).parallel().forEach(i -> {
+            Configuration configuration = configurations.get(i);
+            prices[i] = price(configuration.carId, configuration.options);
+        });
+        return prices;
+    }
+
+    @Override
+    public void inserted(int position, Car car) {
+    }
+
+    @Override
+    public void updated(int position, Car previous, Car car) {
+        pricing.remove(previous.getId());
+    }
+
+    @Override
+    public void removed(int position, Car car) {
+        pricing.remove(car.getId());
+    }
+
+    private final class CarPricing {
+        private final Car car;
+        // Resolved on first use; a race only computes the same table twice.
+        private volatile double[][] resolved;
+        private final Map<Long, Double> cache = new ConcurrentHashMap<>();
+
+        CarPricing(Car car) {
+            this.car = car;
+        }
+
+        double price(int[] chosen) {
+            if (chosen.length != categories.size()) {
+                throw new IllegalArgumentException("Expected " + categories.size() + " options, got " + chosen.length);
+            }
+            for (int c = 0; c < chosen.length; c++) {
+                if (chosen[c] < 0 || chosen[c] >= options.get(c).size()) {
+                    throw new IllegalArgumentException("No option " + chosen[c] + " for " + categories.get(c));
+                }
+            }
+            long key = pack(chosen);
+            if (key >= 0) {
+                Double cached = cache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            double[][] table = resolved;
+            if (table == null) {
+                table = resolve();
+                resolved = table;
+            }
+            double total = car.getPrice();
+            for (int c = 0; c < chosen.length; c++) {
+                total += table[c][chosen[c]];
+            }
+            if (key >= 0) {
+                cache.put(key, total);
+            }
+            return total;
+        }
+
+        private double[][] resolve() {
+            String make = car.getMake();
+            String model = make + "\n" + car.getModel();
+            double[][] table = new double[categories.size()][];
+            for (int c = 0; c < table.length; c++) {
+                table[c] = surcharges.get(c).clone();
+                for (int o = 0; o < table[c].length; o++) {
+                    String option = categories.get(c) + "\n" + options.get(c).get(o) + "\n";
+                    Double rule = rules.get(option + model);
+                    if (rule == null) {
+                        rule = rules.get(option + make);
+                    }
+                    if (rule != null) {
+                        table[c][o] = rule;
+                    }
+                }
+            }
+            return table;
+        }
+    }
+
+    // -1 for vectors that do not fit the key; those are priced uncached.
+    private static long pack(int[] chosen) {
+        if (chosen.length > MAX_PACKED_CATEGORIES) {
+            return -1;
+        }
+        long key = 0;
+        for (int option : chosen) {
+            if (option < 0 || option >= MAX_PACKED_OPTIONS) {
+                return -1;
+            }
+            key = key << 8 | option;
+        }
+        return key;
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Keeps sales pointing at cars and customers that exist. Once enforcing, a
+// sale can only be added or changed if its car and customer are stored, and
+// a car or customer cannot be deleted or renamed while sales refer to it.
+// Existence checks are primary-key lookups, and reference checks read the
+// per-key counts the sales indexes keep, so no check walks the tables.
+//
+// Rows loaded at startup are not rejected, since dropping them would lose
+// data; instead findOrphans lists the sales that break the rules.
+class ReferentialIntegrity {
+    private final Repository<Car> cars;
+    private final Repository<Customer> customers;
+    private volatile boolean enforcing;
+
+    ReferentialIntegrity(Repository<Car> cars, Repository<Customer> customers, Repository<Sale> sales,
+                         Repository.Index<Sale> salesByCar, Repository.Index<Sale> salesByCustomer) {
+        this.cars = cars;
+        this.customers = customers;
+        sales.addConstraint(new Repository.Constraint<Sale>() {
+            public void checkInsert(Sale sale) {
+                checkReferences(sale);
+            }
+
+            public void checkUpdate(Sale previous, Sale sale) {
+                checkReferences(sale);
+            }
+        });
+        cars.addConstraint(new Repository.Constraint<Car>() {
+            public void checkUpdate(Car previous, Car car) {
+                if (!previous.getId().equals(car.getId())) {
+                    checkUnreferenced("Car", previous.getId(), salesByCar);
+                }
+            }
+
+            public void checkRemove(Car car) {
+                checkUnreferenced("Car", car.getId(), salesByCar);
+            }
+        });
+        customers.addConstraint(new Repository.Constraint<Customer>() {
+            public void checkUpdate(Customer previous, Customer customer) {
+                if (!previous.getId().equals(customer.getId())) {
+                    checkUnreferenced("Customer", previous.getId(), salesByCustomer);
+                }
+            }
+
+            public void checkRemove(Customer customer) {
+                checkUnreferenced("Customer", customer.getId(), salesByCustomer);
+            }
+        });
+    }
+
+    void startEnforcing() {
+        enforcing = true;
+    }
+
+    private void checkReferences(Sale sale) {
+        if (!enforcing) {
+            return;
+        }
+        if (!cars.containsId(sale.getCarId())) {
+            throw new IllegalArgumentException("No car with ID " + sale.getCarId());
+        }
+        if (!customers.containsId(sale.getCustomerId())) {
+            throw new IllegalArgumentException("No customer with ID " + sale.getCustomerId());
+        }
+    }
+
+    private void checkUnreferenced(String kind, String id, Repository.Index<Sale> salesById) {
+        if (!enforcing) {
+            return;
+        }
+        int count = salesById.count(id);
+        if (count > 0) {
+            throw new IllegalArgumentException(kind + " " + id + " is referenced by " + count
+                    + (count == 1 ? " sale" : " sales"));
+        }
+    }
+
+    // Describes every sale whose car or customer is missing, in row order.
+    // Runs on any thread against copies of the data, checking chunks of rows
+    // in parallel.
+    static List<String> findOrphans(SaleColumnStore.Snapshot sales, Set<String> carIds, Set<String> customerIds) {
+        int chunkRows = 1 << 16;
+        int chunks = (sales.size() + chunkRows - 1) / chunkRows;
+        return IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            List<String> orphans = new ArrayList<>();
+            int end = Math.min(sales.size(), (chunk + 1) * chunkRows);
+            for (int row = chunk * chunkRows; row < end; row++) {
+                String problem = missingReferences(sales.carId(row), sales.customerId(row), carIds, customerIds);
+                if (problem != null) {
+                    orphans.add(sales.saleId(row) + "\t" + problem);
+                }
+            }
+            return orphans;
+        }).flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    // Null if both IDs are in the sets.
+    static String missingReferences(String carId, String customerId, Set<String> carIds, Set<String> customerIds) {
+        boolean carExists = carIds.contains(carId);
+        boolean customerExists = customerIds.contains(customerId);
+        if (carExists && customerExists) {
+            return null;
+        }
+        if (!carExists && !customerExists) {
+            return "no car with ID " + carId + ", no customer with ID " + customerId;
+        }
+        return carExists ? "no customer with ID " + customerId : "no car with ID " + carId;
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of one report: a title, column names and rows of cell values.
+class Report {
+    private final String title;
+    private final String[] columnNames;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    Report(String title, String... columnNames) {
+        this.title = title;
+        this.columnNames = columnNames;
+    }
+
+    void addRow(Object... values) {
+        rows.add(values);
+    }
+
+    String getTitle() {
+        return title;
+    }
+
+    String[] getColumnNames() {
+        return columnNames;
+    }
+
+    List<Object[]> getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,91 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// Runs one report on the query pool and shows it in its own window: a
+// progress bar with Cancel while it runs, then the result table. Closing
+// the window cancels a report that is still running.
+class ReportDialog {
+    private final JDialog dialog;
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final ReportEngine engine;
+    private int shownPercent = -1;
+
+    private ReportDialog(Component parent, String title, ReportEngine engine) {
+        this.engine = engine;
+        this.dialog = new JDialog(SwingUtilities.getWindowAncestor(parent), title, Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                engine.cancel();
+            }
+        });
+
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 10));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        progressPanel.add(new JLabel("Computing " + title + "..."), BorderLayout.NORTH);
+        progressBar.setStringPainted(true);
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> dialog.dispose());
+        progressPanel.add(cancelButton, BorderLayout.SOUTH);
+        dialog.setContentPane(progressPanel);
+        dialog.pack();
+        dialog.setLocationRelativeTo(parent);
+    }
+
+    // Called on the EDT; the engine must already hold its copy of the data.
+    static void show(Component parent, String title, ReportEngine engine, Function<ReportEngine, Report> report) {
+        ReportDialog view = new ReportDialog(parent, title, engine);
+        engine.onProgress(view::progressed);
+        view.dialog.setVisible(true);
+        String timer = "query.report." + title.toLowerCase(Locale.ROOT).replace(' ', '-');
+        BackgroundTasks.query(() -> Metrics.time(timer, () -> report.apply(engine))).whenComplete((result, error) ->
+                SwingUtilities.invokeLater(() -> view.finished(result, error)));
+    }
+
+    // Progress arrives from worker threads; only changes reach the EDT.
+    private void progressed(int percent) {
+        SwingUtilities.invokeLater(() -> {
+            if (percent > shownPercent) {
+                shownPercent = percent;
+                progressBar.setValue(percent);
+            }
+        });
+    }
+
+    private void finished(Report report, Throwable error) {
+        if (!dialog.isDisplayable()) {
+            return;
+        }
+        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            dialog.dispose();
+            return;
+        }
+        if (cause != null) {
+            dialog.dispose();
+            JOptionPane.showMessageDialog(dialog.getOwner(), "Could not compute " + dialog.getTitle() + ": " + cause,
+                    "Report Failed", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JTable table = new JTable(new ReportTableModel(report));
+        table.setAutoCreateRowSorter(true);
+        JPanel resultPanel = new JPanel(new BorderLayout());
+        JLabel titleLabel = new JLabel(report.getTitle() + " (" + report.getRows().size() + " rows)", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        titleLabel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        resultPanel.add(titleLabel, BorderLayout.NORTH);
+        resultPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.setContentPane(resultPanel);
+        dialog.setSize(800, 500);
+        dialog.setLocationRelativeTo(dialog.getOwner());
+        dialog.validate();
+    }
+}
@@ -0,0 +1,273 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Computes the Reports panel's reports from copies of the store's data
+// taken on the EDT. Each report makes one pass over the sales, split into
+// chunks that run on the fork-join pool; every finished chunk advances the
+// progress and cancellation is checked before each chunk starts. Reports
+// over time ranges read the rollups instead of the sales.
+class ReportEngine {
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final int TOP_CUSTOMERS = 100;
+
+    private final List<Car> cars;
+    private final List<Customer> customers;
+    private final SaleColumnStore.Snapshot sales;
+    private final SalesRollups rollups;
+    private volatile boolean cancelled;
+    private volatile IntConsumer progress = percent -> { };
+
+    ReportEngine(List<Car> cars, List<Customer> customers, SaleColumnStore.Snapshot sales, SalesRollups rollups) {
+        this.cars = cars;
+        this.customers = customers;
+        this.sales = sales;
+        this.rollups = rollups;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    // Called from worker threads with 0..100.
+    void onProgress(IntConsumer progress) {
+        this.progress = progress;
+    }
+
+    // Revenue by make and model, including models that have not sold yet.
+    Report carReport() {
+        Map<String, double[]> byCar = totalsByCar();
+        Map<String, double[]> byModel = new TreeMap<>();
+        Map<String, Car> carsById = carsById();
+        for (Car car : cars) {
+            double[] model = byModel.computeIfAbsent(car.getMake() + "\n" + car.getModel(), key -> new double[3]);
+            model[0]++;
+        }
+        byCar.forEach((carId, totals) -> {
+            Car car = carsById.get(carId);
+            String key = car == null ? StoreAggregates.UNKNOWN_MAKE + "\n" : car.getMake() + "\n" + car.getModel();
+            double[] model = byModel.computeIfAbsent(key, k -> new double[3]);
+            model[1] += totals[0];
+            model[2] += totals[1];
+        });
+        Report report = new Report("Revenue by Make and Model", "Make", "Model", "Listed", "Units Sold", "Revenue");
+        byModel.forEach((key, totals) -> {
+            String[] makeAndModel = key.split("\n", 2);
+            report.addRow(makeAndModel[0], makeAndModel[1], (int) totals[0], (int) totals[1], totals[2]);
+        });
+        return report;
+    }
+
+    Report customerReport() {
+        Map<String, double[]> byCustomer = scanSales(HashMap::new, (totals, row) -> {
+            double[] customer = totals.computeIfAbsent(sales.customerId(row), key -> new double[2]);
+            customer[0]++;
+            customer[1] += sales.price(row);
+        }, ReportEngine::mergeTotals);
+        Map<String, Customer> customersById = new HashMap<>();
+        customers.forEach(customer -> customersById.put(customer.getId(), customer));
+        List<Map.Entry<String, double[]>> ranked = new ArrayList<>(byCustomer.entrySet());
+        ranked.sort((a, b) -> Double.compare(b.getValue()[1], a.getValue()[1]));
+        Report report = new Report("Top " + TOP_CUSTOMERS + " Customers by Spend",
+                "Rank", "Customer ID", "Name", "Email", "Purchases", "Total Spent");
+        for (int i = 0; i < Math.min(TOP_CUSTOMERS, ranked.size()); i++) {
+            Map.Entry<String, double[]> entry = ranked.get(i);
+            Customer customer = customersById.get(entry.getKey());
+            report.addRow(i + 1, entry.getKey(), customer == null ? "(unknown)" : customer.getName(),
+                    customer == null ? "" : customer.getEmail(), (int) entry.getValue()[0], entry.getValue()[1]);
+        }
+        return report;
+    }
+
+    // How far sale prices landed from the sold car's current list price.
+    Report salesReport() {
+        String[] bands = {"More than 20% below list", "10-20% below list", "Up to 10% below list", "At list price",
+                "Up to 10% above list", "10-20% above list", "More than 20% above list", "Car not in inventory"};
+        Map<String, Car> carsById = carsById();
+        double[][] totals = scanSales(() -> new double[bands.length][3], (partial, row) -> {
+            Car car = carsById.get(sales.carId(row));
+            double[] band = partial[car == null ? bands.length - 1 : priceBand(sales.price(row), car.getPrice())];
+            band[0]++;
+            band[1] += sales.price(row);
+            band[2] += car == null ? 0 : car.getPrice();
+        }, (a, b) -> {
+            for (int i = 0; i < a.length; i++) {
+                for (int j = 0; j < a[i].length; j++) {
+                    a[i][j] += b[i][j];
+                }
+            }
+            return a;
+        });
+        Report report = new Report("Sale Price vs. List Price", "Sale Price", "Sales", "Share of Sales (%)",
+                "Avg. List Price", "Avg. Sale Price");
+        for (int i = 0; i < bands.length; i++) {
+            double count = totals[i][0];
+            if (count > 0) {
+                report.addRow(bands[i], (int) count, percent(count, sales.size()),
+                        i == bands.length - 1 ? null : totals[i][2] / count, totals[i][1] / count);
+            }
+        }
+        return report;
+    }
+
+    private static int priceBand(double salePrice, double listPrice) {
+        if (salePrice == listPrice || listPrice == 0) {
+            return 3;
+        }
+        double difference = (salePrice - listPrice) / listPrice;
+        if (difference < 0) {
+            return difference < -0.2 ? 0 : difference < -0.1 ? 1 : 2;
+        }
+        return difference > 0.2 ? 6 : difference > 0.1 ? 5 : 4;
+    }
+
+    // What buyers paid on top of the list price, by the car's feature.
+    Report customizationReport() {
+        Map<String, Car> carsById = carsById();
+        Map<String, double[]> byFeature = scanSales(HashMap::new, (totals, row) -> {
+            Car car = carsById.get(sales.carId(row));
+            if (car != null) {
+                double[] feature = totals.computeIfAbsent(car.getFeature(), key -> new double[3]);
+                feature[0]++;
+                feature[1] += car.getPrice();
+                feature[2] += sales.price(row);
+            }
+        }, ReportEngine::mergeTotals);
+        Report report = new Report("Premium over List Price by Feature", "Feature", "Units Sold",
+                "Avg. List Price", "Avg. Sale Price", "Avg. Premium");
+        new TreeMap<>(byFeature).forEach((feature, totals) -> report.addRow(feature, (int) totals[0],
+                totals[1] / totals[0], totals[2] / totals[0], (totals[2] - totals[1]) / totals[0]));
+        return report;
+    }
+
+    Report financialReport() {
+        Map<String, double[]> byCar = totalsByCar();
+        Map<String, Car> carsById = carsById();
+        Map<String, double[]> byMake = new TreeMap<>();
+        byCar.forEach((carId, totals) -> {
+            Car car = carsById.get(carId);
+            double[] make = byMake.computeIfAbsent(car == null ? StoreAggregates.UNKNOWN_MAKE : car.getMake(),
+                    key -> new double[2]);
+            make[0] += totals[0];
+            make[1] += totals[1];
+        });
+        double revenue = byMake.values().stream().mapToDouble(totals -> totals[1]).sum();
+        Report report = new Report("Revenue by Make", "Make", "Units Sold", "Revenue", "Share of Revenue (%)",
+                "Avg. Sale Price");
+        byMake.forEach((make, totals) -> report.addRow(make, (int) totals[0], totals[1],
+                percent(totals[1], revenue), totals[1] / totals[0]));
+        report.addRow("Total", sales.size(), revenue, revenue == 0 ? 0.0 : 100.0,
+                sales.size() == 0 ? 0.0 : revenue / sales.size());
+        return report;
+    }
+
+    // One row per month since the first sale, listing or new customer, with
+    // a revenue column for every make sold in that time.
+    Report monthlyReport() {
+        long now = System.currentTimeMillis();
+        long first = rollups.firstMonth();
+        SortedMap<Long, SalesRollups.Totals> months = first == 0 ? new TreeMap<>()
+                : rollups.series(SalesRollups.MONTH, first, now);
+        Set<String> makes = new TreeSet<>();
+        months.values().forEach(month -> makes.addAll(month.revenueByMake.keySet()));
+        List<String> columns = new ArrayList<>(Arrays.asList("Month", "Listings", "New Customers", "Units Sold", "Revenue"));
+        makes.forEach(make -> columns.add(make + " Revenue"));
+        Report report = new Report("Sales by Month and Make", columns.toArray(new String[0]));
+        ZoneId zone = ZoneId.systemDefault();
+        months.forEach((start, month) -> {
+            List<Object> row = new ArrayList<>(Arrays.asList(YearMonth.from(Instant.ofEpochMilli(start).atZone(zone)),
+                    month.listings, month.newCustomers, month.sales, month.revenue));
+            makes.forEach(make -> row.add(month.revenueByMake.getOrDefault(make, 0.0)));
+            report.addRow(row.toArray());
+        });
+        progress.accept(100);
+        return report;
+    }
+
+    Report recentReport(int days) {
+        long now = System.currentTimeMillis();
+        SalesRollups.Totals recent = rollups.total(now - Duration.ofDays(days).toMillis(), now);
+        Report report = new Report("Last " + days + " Days by Make", "Make", "Units Sold", "Revenue",
+                "Share of Revenue (%)", "Avg. Sale Price");
+        recent.revenueByMake.forEach((make, revenue) -> {
+            long units = recent.salesByMake.get(make);
+            report.addRow(make, units, revenue, percent(revenue, recent.revenue), revenue / units);
+        });
+        report.addRow("Total", recent.sales, recent.revenue, recent.revenue == 0 ? 0.0 : 100.0,
+                recent.sales == 0 ? 0.0 : recent.revenue / recent.sales);
+        progress.accept(100);
+        return report;
+    }
+
+    // Cars without a single sale, most expensive first.
+    Report inventoryReport() {
+        Set<String> sold = totalsByCar().keySet();
+        Report report = new Report("Unsold Inventory", "ID", "Make", "Model", "List Price", "Feature");
+        cars.stream()
+                .filter(car -> !sold.contains(car.getId()))
+                .sorted(Comparator.comparingDouble(Car::getPrice).reversed())
+                .forEach(car -> report.addRow(car.getId(), car.getMake(), car.getModel(), car.getPrice(),
+                        car.getFeature()));
+        return report;
+    }
+
+    // carId -> {units sold, revenue}
+    private Map<String, double[]> totalsByCar() {
+        return scanSales(HashMap::new, (totals, row) -> {
+            double[] car = totals.computeIfAbsent(sales.carId(row), key -> new double[2]);
+            car[0]++;
+            car[1] += sales.price(row);
+        }, ReportEngine::mergeTotals);
+    }
+
+    private Map<String, Car> carsById() {
+        Map<String, Car> carsById = new HashMap<>();
+        cars.forEach(car -> carsById.put(car.getId(), car));
+        return carsById;
+    }
+
+    private <A> A scanSales(Supplier<A> partial, ObjIntConsumer<A> accumulator, BinaryOperator<A> merge) {
+        int chunks = (sales.size() + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        AtomicInteger done = new AtomicInteger();
+        progress.accept(0);
+        A result = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            A totals = partial.get();
+            int end = Math.min(sales.size(), (chunk + 1) * CHUNK_ROWS);
+            for (int row = chunk * CHUNK_ROWS; row < end; row++) {
+                accumulator.accept(totals, row);
+            }
+            progress.accept(done.incrementAndGet() * 100 / chunks);
+            return totals;
+        }).reduce(merge).orElseGet(partial);
+        progress.accept(100);
+        return result;
+    }
+
+    private static Map<String, double[]> mergeTotals(Map<String, double[]> a, Map<String, double[]> b) {
+        Map<String, double[]> into = a.size() >= b.size() ? a : b;
+        Map<String, double[]> from = into == a ? b : a;
+        from.forEach((key, totals) -> into.merge(key, totals, (x, y) -> {
+            for (int i = 0; i < x.length; i++) {
+                x[i] += y[i];
+            }
+            return x;
+        }));
+        return into;
+    }
+
+    private static double percent(double part, double whole) {
+        return whole == 0 ? 0.0 : Math.round(part * 1000 / whole) / 10.0;
+    }
+}
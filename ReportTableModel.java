@@ -0,0 +1,40 @@
+import javax.swing.table.AbstractTableModel;
+
+class ReportTableModel extends AbstractTableModel {
+    private final Report report;
+
+    ReportTableModel(Report report) {
+        this.report = report;
+    }
+
+    @Override
+    public int getRowCount() {
+        return report.getRows().size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return report.getColumnNames().length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return report.getColumnNames()[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return report.getRows().get(rowIndex)[columnIndex];
+    }
+
+    // Lets numeric columns render right-aligned and sort as numbers.
+    @Override
+    public Class<?> getColumnClass(int column) {
+        for (Object[] row : report.getRows()) {
+            if (row[column] != null) {
+                return row[column].getClass();
+            }
+        }
+        return Object.class;
+    }
+}
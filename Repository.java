@@ -0,0 +1,286 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Ordered rows plus an index on the primary key and any number of secondary
+// indexes, kept in a RowStore. Rows keep their insertion order so the tables
+// can keep addressing them by position.
+//
+// Safe to use from any thread: reads share a read/write lock and changes
+// take it exclusively, running their checks, the store update and the
+// listeners as one step. Repositories whose constraints look at each other
+// must share one lock, or a check could pass against a row that another
+// thread is removing. Every row carries a version stamp that changes on each
+// write, so an edit can be applied only if nobody changed the row since it
+// was read (compareAndSet).
+class Repository<T> {
+
+    interface Index<T> {
+        List<T> find(String key);
+
+        int count(String key);
+    }
+
+    // Runs before a change is made and vetoes it by throwing
+    // IllegalArgumentException.
+    interface Constraint<T> {
+        default void checkInsert(T row) {
+        }
+
+        default void checkUpdate(T previous, T row) {
+        }
+
+        default void checkRemove(T row) {
+        }
+    }
+
+    // Called with the write lock held, on the thread that made the change;
+    // listeners that touch Swing must hand the work to the EDT.
+    interface Listener<T> {
+        void inserted(int position, T row);
+
+        void updated(int position, T previous, T row);
+
+        void removed(int position, T row);
+    }
+
+    // A row together with the version it had when it was read.
+    static final class Versioned<T> {
+        final T row;
+        final long version;
+
+        Versioned(T row, long version) {
+            this.row = row;
+            this.version = version;
+        }
+    }
+
+    private final Function<T, String> idOf;
+    private final RowStore<T> store;
+    private final ReadWriteLock lock;
+    private final List<Constraint<T>> constraints = new ArrayList<>();
+    private final List<Listener<T>> listeners = new ArrayList<>();
+    // Parallel to the store's positions. Stamps come from one counter, so a
+    // row that is deleted and added again never gets an old version back.
+    private long[] versions = new long[16];
+    private long lastVersion;
+
+    Repository(Function<T, String> idOf) {
+        this(idOf, new ListRowStore<>(idOf));
+    }
+
+    Repository(Function<T, String> idOf, RowStore<T> store) {
+        this(idOf, store, new ReentrantReadWriteLock());
+    }
+
+    Repository(Function<T, String> idOf, RowStore<T> store, ReadWriteLock lock) {
+        this.idOf = idOf;
+        this.store = store;
+        this.lock = lock;
+    }
+
+    // Lookups copy their results, so callers never see a list that another
+    // thread is changing.
+    Index<T> addIndex(Function<T, String> keyOf) {
+        Index<T> index = write(() -> store.addIndex(keyOf));
+        return new Index<T>() {
+            @Override
+            public List<T> find(String key) {
+                return read(() -> new ArrayList<>(index.find(key)));
+            }
+
+            @Override
+            public int count(String key) {
+                return read(() -> index.count(key));
+            }
+        };
+    }
+
+    void addConstraint(Constraint<T> constraint) {
+        write(() -> constraints.add(constraint));
+    }
+
+    void addListener(Listener<T> listener) {
+        write(() -> listeners.add(listener));
+    }
+
+    void removeListener(Listener<T> listener) {
+        write(() -> listeners.remove(listener));
+    }
+
+    String idOf(T row) {
+        return idOf.apply(row);
+    }
+
+    int size() {
+        return read(store::size);
+    }
+
+    T get(int position) {
+        return read(() -> store.get(position));
+    }
+
+    T findById(String id) {
+        return read(() -> store.findById(id));
+    }
+
+    // null if there is no row with this ID.
+    Versioned<T> findVersioned(String id) {
+        return read(() -> {
+            int position = store.positionOf(id);
+            return position < 0 ? null : new Versioned<>(store.get(position), versions[position]);
+        });
+    }
+
+    boolean containsId(String id) {
+        return read(() -> store.containsId(id));
+    }
+
+    // Changes whenever any row is added, changed or removed.
+    long lastVersion() {
+        return read(() -> lastVersion);
+    }
+
+    int positionOf(String id) {
+        return read(() -> store.positionOf(id));
+    }
+
+    // Works on a snapshot, so the stream may be consumed while others write.
+    Stream<T> stream() {
+        return snapshot().stream();
+    }
+
+    // The rows at this moment, unchanging, readable from any thread without
+    // taking the lock. The list and column stores hand out their arrays
+    // rather than a copy; a writer copies an array before changing a row a
+    // snapshot can see, and the old array goes once no snapshot holds it.
+    List<T> snapshot() {
+        return read(store::snapshot);
+    }
+
+    List<T> toList() {
+        return read(store::toList);
+    }
+
+    // Runs an action that needs the rows to hold still, such as copying a
+    // store's columns.
+    <R> R read(Supplier<R> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Runs several changes as one: readers see all of them or none.
+    <R> R write(Supplier<R> action) {
+        lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void add(T row) {
+        write(() -> {
+            String id = idOf.apply(row);
+            if (store.containsId(id)) {
+                throw new IllegalArgumentException("Duplicate ID: " + id);
+            }
+            constraints.forEach(constraint -> constraint.checkInsert(row));
+            store.add(row);
+            int position = store.size() - 1;
+            if (position == versions.length) {
+                versions = Arrays.copyOf(versions, versions.length * 2);
+            }
+            versions[position] = ++lastVersion;
+            T added = store.get(position);
+            notifyListeners(listener -> listener.inserted(position, added));
+            return null;
+        });
+    }
+
+    T set(int position, T row) {
+        return write(() -> {
+            T current = store.get(position);
+            String oldId = idOf.apply(current);
+            String newId = idOf.apply(row);
+            if (!oldId.equals(newId) && store.containsId(newId)) {
+                throw new IllegalArgumentException("Duplicate ID: " + newId);
+            }
+            constraints.forEach(constraint -> constraint.checkUpdate(current, row));
+            T previous = store.set(position, row);
+            versions[position] = ++lastVersion;
+            T updated = store.get(position);
+            notifyListeners(listener -> listener.updated(position, previous, updated));
+            return previous;
+        });
+    }
+
+    T update(String id, T row) {
+        return write(() -> set(store.positionOf(id), row));
+    }
+
+    // Replaces the row only if it still has the version the caller read;
+    // false if it was changed or removed in the meantime.
+    boolean compareAndSet(String id, long expectedVersion, T row) {
+        return write(() -> {
+            int position = store.positionOf(id);
+            if (position < 0 || versions[position] != expectedVersion) {
+                return false;
+            }
+            set(position, row);
+            return true;
+        });
+    }
+
+    // Also false if the row is gone.
+    boolean compareAndRemove(String id, long expectedVersion) {
+        return write(() -> {
+            int position = store.positionOf(id);
+            if (position < 0 || versions[position] != expectedVersion) {
+                return false;
+            }
+            remove(position);
+            return true;
+        });
+    }
+
+    T remove(int position) {
+        return write(() -> {
+            T current = store.get(position);
+            constraints.forEach(constraint -> constraint.checkRemove(current));
+            T removed = store.remove(position);
+            System.arraycopy(versions, position + 1, versions, position, store.size() - position);
+            ++lastVersion;
+            notifyListeners(listener -> listener.removed(position, removed));
+            return removed;
+        });
+    }
+
+    // Listeners run under the write lock, so a slow one holds up every
+    // reader and writer; those are reported as stalls.
+    private void notifyListeners(Consumer<Listener<T>> call) {
+        for (Listener<T> listener : listeners) {
+            long start = System.nanoTime();
+            call.accept(listener);
+            long took = System.nanoTime() - start;
+            if (took > Metrics.SLOW_NANOS) {
+                Metrics.stall("listener", listener.getClass().getName(), took);
+            }
+        }
+    }
+
+    T removeById(String id) {
+        return write(() -> {
+            int position = store.positionOf(id);
+            return position < 0 ? null : remove(position);
+        });
+    }
+}
@@ -0,0 +1,266 @@
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Table model that reads cells straight from a repository. JTable only asks
+// for the rows it paints, so nothing is copied up front, and changes arrive
+// from a ChangeFeed at most once a frame. A small batch becomes one table
+// event per changed row, so the selection follows its row; a large one, or
+// one the feed only counted, refreshes the table at once. A view (e.g.
+// search results) can replace the repository order until it is cleared
+// again.
+//
+// Sorting and range filters read rows by rank from an OrderedIndex, which
+// follows the repository by itself, so nothing is sorted and every change
+// refreshes the table. Only search results, and a filter on one column
+// sorted by another, are copied and sorted.
+abstract class RepositoryTableModel<T> extends AbstractTableModel {
+    // Past this many changes one refresh is cheaper than an event per row.
+    private static final int MAX_ROW_EVENTS = 100;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    // Rows with from <= key <= to in one index; a null bound is open.
+    private final class Filter<K extends Comparable<K>> {
+        final OrderedIndex<T, K> index;
+        final K from;
+        final K to;
+
+        Filter(OrderedIndex<T, K> index, K from, K to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean accepts(T row) {
+            K key = index.keyOf(row);
+            return (from == null || key.compareTo(from) >= 0) && (to == null || key.compareTo(to) <= 0);
+        }
+
+        List<T> rows(boolean descending) {
+            return index.range(from, to, descending);
+        }
+    }
+
+    private final Repository<T> repository;
+    private final String[] columnNames;
+    private List<T> view;
+    // Whether the view follows the repository by itself.
+    private boolean live;
+    private List<T> searchResults;
+    private OrderedIndex<T, ?> sortIndex;
+    private boolean descending;
+    private Filter<?> filter;
+    // Rows the table knew of at the last event.
+    private int shownRows;
+
+    RepositoryTableModel(Repository<T> repository, ChangeFeed<T> changes, String... columnNames) {
+        this.repository = repository;
+        this.columnNames = columnNames;
+        shownRows = getRowCount();
+        changes.subscribe(this::changed);
+    }
+
+    abstract Object valueAt(T row, int column);
+
+    // Blank for rows stored before they carried a time.
+    static String formatTime(long millis) {
+        return millis == 0 ? "" : TIME_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    T getRow(int rowIndex) {
+        return view == null ? repository.get(rowIndex) : view.get(rowIndex);
+    }
+
+    // Shows only these rows, still sorted and filtered, until called with
+    // null.
+    void setView(List<T> rows) {
+        searchResults = rows == null ? null : new ArrayList<>(rows);
+        refreshView();
+    }
+
+    // Sorts by an index, or shows the repository order again if it is null.
+    void sortBy(OrderedIndex<T, ?> index, boolean descending) {
+        sortIndex = index;
+        this.descending = index != null && descending;
+        refreshView();
+    }
+
+    // Shows only rows with from <= key <= to; with both bounds null the
+    // filter is cleared.
+    <K extends Comparable<K>> void filterBy(OrderedIndex<T, K> index, K from, K to) {
+        filter = from == null && to == null ? null : new Filter<>(index, from, to);
+        refreshView();
+    }
+
+    boolean hasView() {
+        return view != null;
+    }
+
+    private void refreshView() {
+        live = false;
+        if (searchResults != null) {
+            view = new ArrayList<>();
+            for (T row : searchResults) {
+                if (filter == null || filter.accepts(row)) {
+                    view.add(row);
+                }
+            }
+            sortView();
+        } else if (filter != null && (sortIndex == null || sortIndex == filter.index)) {
+            view = filter.rows(descending);
+            live = true;
+        } else if (filter != null) {
+            view = repository.read(() -> new ArrayList<>(filter.rows(false)));
+            sortView();
+        } else if (sortIndex != null) {
+            view = sortIndex.range(null, null, descending);
+            live = true;
+        } else {
+            view = null;
+        }
+        fireTableDataChanged();
+    }
+
+    private void sortView() {
+        if (sortIndex != null) {
+            Comparator<T> order = sortIndex.comparator();
+            view.sort(descending ? order.reversed() : order);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return view == null ? repository.size() : view.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    // A row removed by another thread may still be painted until its
+    // refresh arrives; it shows as blank.
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        T row;
+        try {
+            row = getRow(rowIndex);
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+        return valueAt(row, columnIndex);
+    }
+
+    // Repository order only ever grows at the end, so a batch of inserts
+    // adds the rows the table has not been told about yet. Other changes in
+    // repository order are replayed row by row at the positions they were
+    // made at, as long as the table's row count agrees with them. A sorted
+    // or filtered index view does not know where a row was, so its row
+    // count is brought up to date and every row repainted, which keeps the
+    // selection where it was. While a copied view is shown, new rows wait
+    // for whoever owns the view to refresh it; changed and removed rows are
+    // patched in place.
+    private void changed(ChangeFeed.Batch<T> batch) {
+        int rows = getRowCount();
+        if (view == null && batch.onlyInserts()) {
+            if (rows > shownRows) {
+                fireTableRowsInserted(shownRows, rows - 1);
+            }
+        } else if (view == null && batch.complete && batch.changes.size() <= MAX_ROW_EVENTS
+                && shownRows + batch.inserted - batch.removed == rows) {
+            fireRowEvents(batch.changes);
+        } else if ((view == null || live) && batch.complete) {
+            if (rows > shownRows) {
+                fireTableRowsInserted(shownRows, rows - 1);
+            } else if (rows < shownRows) {
+                fireTableRowsDeleted(rows, shownRows - 1);
+            }
+            if (rows > 0) {
+                fireTableRowsUpdated(0, rows - 1);
+            }
+        } else if (view == null || live) {
+            fireTableDataChanged();
+        } else if (!batch.complete) {
+            refreshView();
+        } else {
+            patchView(batch.changes);
+        }
+    }
+
+    private void fireRowEvents(List<ChangeFeed.Change<T>> changes) {
+        for (ChangeFeed.Change<T> change : changes) {
+            int position = change.position;
+            if (change.kind == ChangeFeed.INSERTED) {
+                fireTableRowsInserted(position, position);
+            } else if (change.kind == ChangeFeed.UPDATED) {
+                fireTableRowsUpdated(position, position);
+            } else {
+                fireTableRowsDeleted(position, position);
+            }
+        }
+    }
+
+    @Override
+    public void fireTableChanged(TableModelEvent e) {
+        shownRows = getRowCount();
+        super.fireTableChanged(e);
+    }
+
+    // Replaces changed rows and drops removed ones in one pass. Rows are
+    // matched by ID, as the view may hold a different copy of the row, and
+    // followed through ID changes within the batch.
+    private void patchView(List<ChangeFeed.Change<T>> changes) {
+        Map<String, T> replacements = new HashMap<>();
+        Map<String, String> viewIds = new HashMap<>();
+        for (ChangeFeed.Change<T> change : changes) {
+            if (change.kind == ChangeFeed.INSERTED) {
+                continue;
+            }
+            String id = repository.idOf(change.previous);
+            String viewId = viewIds.getOrDefault(id, id);
+            viewIds.remove(id);
+            replacements.put(viewId, change.row);
+            if (change.row != null) {
+                viewIds.put(repository.idOf(change.row), viewId);
+            }
+        }
+        if (replacements.isEmpty()) {
+            return;
+        }
+        List<Integer> removed = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < view.size(); i++) {
+            T row = view.get(i);
+            String id = repository.idOf(row);
+            if (replacements.containsKey(id)) {
+                row = replacements.get(id);
+            }
+            if (row == null) {
+                removed.add(i);
+            } else {
+                view.set(kept++, row);
+            }
+        }
+        view.subList(kept, view.size()).clear();
+        // Last first, so each position is still where the table has it.
+        for (int i = removed.size() - 1; i >= 0; i--) {
+            fireTableRowsDeleted(removed.get(i), removed.get(i));
+        }
+        if (kept > 0) {
+            fireTableRowsUpdated(0, kept - 1);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Bounded least-recently-used cache of rows by ID. An entry is dropped when
+// the cache is full and it is the one used longest ago, or when it has not
+// been read for the idle time. Counts hits, misses, evictions and
+// expirations. Safe to use from any thread.
+class RowCache<T> {
+
+    static final class Stats {
+        final long hits;
+        final long misses;
+        final long evictions;
+        final long expirations;
+        final int size;
+
+        Stats(long hits, long misses, long evictions, long expirations, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.size = size;
+        }
+
+        double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d cached, %,d hits, %,d misses (%.1f%% hits), %,d evicted, %,d expired",
+                    size, hits, misses, 100 * hitRate(), evictions, expirations);
+        }
+    }
+
+    private static final class Entry<T> {
+        final T row;
+        long lastRead;
+
+        Entry(T row, long lastRead) {
+            this.row = row;
+            this.lastRead = lastRead;
+        }
+    }
+
+    private final int maxRows;
+    private final long idleNanos;
+    // Access order: the first entry is always the one read longest ago.
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    RowCache(int maxRows, long idleTime, TimeUnit unit) {
+        if (maxRows <= 0) {
+            throw new IllegalArgumentException("maxRows must be positive");
+        }
+        this.maxRows = maxRows;
+        this.idleNanos = unit.toNanos(idleTime);
+    }
+
+    // null on a miss.
+    synchronized T get(String id) {
+        long now = System.nanoTime();
+        expire(now);
+        Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.lastRead = now;
+        return entry.row;
+    }
+
+    synchronized void put(String id, T row) {
+        long now = System.nanoTime();
+        expire(now);
+        entries.put(id, new Entry<>(row, now));
+        if (entries.size() > maxRows) {
+            Iterator<Entry<T>> eldest = entries.values().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void invalidate(String id) {
+        entries.remove(id);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, expirations, entries.size());
+    }
+
+    // Entries are in read order, so only the stale ones at the front need
+    // looking at.
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Entry<T>>> oldest = entries.entrySet().iterator();
+        while (oldest.hasNext() && now - oldest.next().getValue().lastRead > idleNanos) {
+            oldest.remove();
+            expirations++;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+// One row of a stored table, read by column position. Implemented by both
+// the CSV tokenizer and the binary snapshot reader so each entity needs a
+// single mapper.
+interface RowFields {
+    String text(int field);
+
+    double number(int field);
+
+    // False when the field is missing, e.g. a column added after the file
+    // was written.
+    default boolean has(int field) {
+        return true;
+    }
+}
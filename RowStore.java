@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Storage behind a Repository: the ordered rows, the primary key and the
+// secondary indexes. The repository checks for duplicate IDs and notifies
+// listeners; a store only has to keep itself consistent.
+interface RowStore<T> {
+    int size();
+
+    T get(int position);
+
+    // null / -1 if there is no row with this ID.
+    T findById(String id);
+
+    int positionOf(String id);
+
+    default boolean containsId(String id) {
+        return findById(id) != null;
+    }
+
+    Repository.Index<T> addIndex(Function<T, String> keyOf);
+
+    void add(T row);
+
+    T set(int position, T row);
+
+    T remove(int position);
+
+    default Stream<T> stream() {
+        return IntStream.range(0, size()).mapToObj(this::get);
+    }
+
+    // The rows as they are now, for another thread to read without the
+    // repository's lock while writers carry on. Stores that cannot share
+    // their rows with a snapshot copy them.
+    default List<T> snapshot() {
+        return Collections.unmodifiableList(toList());
+    }
+
+    default List<T> toList() {
+        List<T> rows = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            rows.add(get(i));
+        }
+        return rows;
+    }
+}
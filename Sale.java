@@ -1,14 +1,23 @@
+import java.util.Objects;
+
 class Sale {
     private final String saleId;
     private final String carId;
     private final String customerId;
     private final double totalPrice;
+    // Epoch milliseconds; 0 for sales recorded before sales carried a time.
+    private final long soldAt;
 
     public Sale(String saleId, String carId, String customerId, double totalPrice) {
+        this(saleId, carId, customerId, totalPrice, 0);
+    }
+
+    public Sale(String saleId, String carId, String customerId, double totalPrice, long soldAt) {
         this.saleId = saleId;
         this.carId = carId;
         this.customerId = customerId;
         this.totalPrice = totalPrice;
+        this.soldAt = soldAt;
     }
 
     public String getSaleId() {
@@ -26,4 +35,29 @@ class Sale {
     public double getTotalPrice() {
         return totalPrice;
     }
-}
\ No newline at end of file
+
+    public long getSoldAt() {
+        return soldAt;
+    }
+
+    // Sales can be views rebuilt from a column store, so two Sales for the
+    // same row must compare equal.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Sale)) {
+            return false;
+        }
+        Sale other = (Sale) o;
+        return Objects.equals(saleId, other.saleId) && Objects.equals(carId, other.carId)
+                && Objects.equals(customerId, other.customerId)
+                && Double.compare(totalPrice, other.totalPrice) == 0 && soldAt == other.soldAt;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(saleId, carId, customerId, totalPrice, soldAt);
+    }
+}
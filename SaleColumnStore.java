@@ -0,0 +1,613 @@
+import java.util.*;
+import java.util.function.Function;
+
+// Sales kept column by column instead of one object per row: IDs are
+// encoded as numbers, prices and sale times sit in primitive arrays, and
+// the Sale handed out by
+// get() is a short-lived view built from the columns. Positions are column
+// indexes, so removing a row shifts the columns down, as ArrayList.remove
+// would.
+//
+// Each column is a list of chunks of CHUNK rows. A snapshot takes the
+// lists of chunks, not the rows; a writer about to change a row a snapshot
+// can see copies that chunk first, so taking a snapshot costs nothing and
+// the changes after it cost one chunk each. Appends write past every
+// snapshot and copy nothing. The ID dictionaries only grow, so a snapshot
+// shares their arrays too.
+class SaleColumnStore implements RowStore<Sale> {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int SLOT = CHUNK - 1;
+
+    private final IdCodec saleIdCodec = new IdCodec(IdCodec.MAX_LONG_DECIMAL);
+    private final IdCodec carIdCodec = new IdCodec(Integer.MAX_VALUE);
+    private final IdCodec customerIdCodec = new IdCodec(Integer.MAX_VALUE);
+    private final List<ColumnIndex> indexes = new ArrayList<>();
+
+    private long[][] saleIds = new long[0][];
+    private int[][] carIds = new int[0][];
+    private int[][] customerIds = new int[0][];
+    private double[][] prices = new double[0][];
+    private long[][] soldAt = new long[0][];
+    private int size;
+    // Chunks that a snapshot also holds, and the size of the latest
+    // snapshot: rows below it must not be written in a shared chunk.
+    private boolean[] shared = new boolean[0];
+    private int frozen;
+
+    // While sale IDs arrive in increasing order, which is how the store
+    // numbers them, the saleIds column doubles as the primary key index and
+    // is binary searched. The first out-of-order ID switches to a hash map.
+    private PositionMap byId;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Sale get(int position) {
+        Objects.checkIndex(position, size);
+        int chunk = position >>> CHUNK_BITS;
+        int slot = position & SLOT;
+        return new Sale(saleIdCodec.decode(saleIds[chunk][slot]), carIdCodec.decode(carIds[chunk][slot]),
+                customerIdCodec.decode(customerIds[chunk][slot]), prices[chunk][slot], soldAt[chunk][slot]);
+    }
+
+    @Override
+    public Sale findById(String id) {
+        int position = positionOf(id);
+        return position < 0 ? null : get(position);
+    }
+
+    @Override
+    public boolean containsId(String id) {
+        return positionOf(id) >= 0;
+    }
+
+    @Override
+    public int positionOf(String id) {
+        long key = saleIdCodec.encode(id, false);
+        return key == IdCodec.UNKNOWN ? -1 : positionOf(key);
+    }
+
+    // key is an encoded sale ID.
+    private int positionOf(long key) {
+        if (byId != null) {
+            return byId.get(key);
+        }
+        // The chunk whose first ID is the last one not above key.
+        int low = 0;
+        int high = (size + SLOT) >>> CHUNK_BITS;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (saleIds[middle][0] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == 0) {
+            return -1;
+        }
+        int chunk = low - 1;
+        int slot = Arrays.binarySearch(saleIds[chunk], 0, Math.min(CHUNK, size - (chunk << CHUNK_BITS)), key);
+        return slot < 0 ? -1 : (chunk << CHUNK_BITS) + slot;
+    }
+
+    @Override
+    public Repository.Index<Sale> addIndex(Function<Sale, String> keyOf) {
+        ColumnIndex index = new ColumnIndex(keyOf);
+        for (int position = 0; position < size; position++) {
+            index.add(saleId(position), get(position));
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    @Override
+    public void add(Sale row) {
+        if ((size & SLOT) == 0 && size >>> CHUNK_BITS == saleIds.length) {
+            int chunks = saleIds.length + 1;
+            saleIds = Arrays.copyOf(saleIds, chunks);
+            carIds = Arrays.copyOf(carIds, chunks);
+            customerIds = Arrays.copyOf(customerIds, chunks);
+            prices = Arrays.copyOf(prices, chunks);
+            soldAt = Arrays.copyOf(soldAt, chunks);
+            shared = Arrays.copyOf(shared, chunks);
+            saleIds[chunks - 1] = new long[CHUNK];
+            carIds[chunks - 1] = new int[CHUNK];
+            customerIds[chunks - 1] = new int[CHUNK];
+            prices[chunks - 1] = new double[CHUNK];
+            soldAt[chunks - 1] = new long[CHUNK];
+        }
+        thaw(size);
+        write(size++, row);
+        long id = saleId(size - 1);
+        for (ColumnIndex index : indexes) {
+            index.add(id, row);
+        }
+    }
+
+    @Override
+    public Sale set(int position, Sale row) {
+        Sale previous = get(position);
+        long previousId = saleId(position);
+        thaw(position);
+        if (byId != null) {
+            byId.remove(previousId);
+        }
+        write(position, row);
+        long id = saleId(position);
+        for (ColumnIndex index : indexes) {
+            index.remove(previousId, previous);
+            index.add(id, row);
+        }
+        return previous;
+    }
+
+    @Override
+    public Sale remove(int position) {
+        Sale removed = get(position);
+        long id = saleId(position);
+        for (int chunk = position >>> CHUNK_BITS; chunk << CHUNK_BITS < size; chunk++) {
+            thaw(Math.max(position, chunk << CHUNK_BITS));
+        }
+        shiftDown(saleIds, position);
+        shiftDown(carIds, position);
+        shiftDown(customerIds, position);
+        shiftDown(prices, position);
+        shiftDown(soldAt, position);
+        for (ColumnIndex index : indexes) {
+            index.remove(id, removed);
+        }
+        size--;
+        if (byId != null) {
+            byId.remove(id);
+            byId.shiftDown(position);
+        }
+        return removed;
+    }
+
+    // Moves rows after position one place down. columns is one column's
+    // chunks (a long[][], int[][] or double[][]).
+    private void shiftDown(Object[] columns, int position) {
+        int last = (size - 1) >>> CHUNK_BITS;
+        int slot = position & SLOT;
+        for (int chunk = position >>> CHUNK_BITS; chunk <= last; chunk++) {
+            int end = chunk == last ? (size - 1) & SLOT : SLOT;
+            System.arraycopy(columns[chunk], slot + 1, columns[chunk], slot, end - slot);
+            if (chunk < last) {
+                System.arraycopy(columns[chunk + 1], 0, columns[chunk], SLOT, 1);
+            }
+            slot = 0;
+        }
+    }
+
+    private void write(int position, Sale row) {
+        long id = saleIdCodec.encode(row.getSaleId(), true);
+        int chunk = position >>> CHUNK_BITS;
+        int slot = position & SLOT;
+        saleIds[chunk][slot] = id;
+        carIds[chunk][slot] = carIdCodec.encodeInt(row.getCarId());
+        customerIds[chunk][slot] = customerIdCodec.encodeInt(row.getCustomerId());
+        prices[chunk][slot] = row.getTotalPrice();
+        soldAt[chunk][slot] = row.getSoldAt();
+        if (byId == null && !inOrder(position, id)) {
+            byId = new PositionMap();
+            for (int i = 0; i < size; i++) {
+                byId.put(saleId(i), i);
+            }
+        } else if (byId != null) {
+            byId.put(id, position);
+        }
+    }
+
+    private boolean inOrder(int position, long id) {
+        return id >= 0 && (position == 0 || saleId(position - 1) < id)
+                && (position == size - 1 || id < saleId(position + 1));
+    }
+
+    private long saleId(int position) {
+        return saleIds[position >>> CHUNK_BITS][position & SLOT];
+    }
+
+    // Copies the chunk holding position if a snapshot can see that row.
+    private void thaw(int position) {
+        int chunk = position >>> CHUNK_BITS;
+        if (position < frozen && shared[chunk]) {
+            saleIds[chunk] = saleIds[chunk].clone();
+            carIds[chunk] = carIds[chunk].clone();
+            customerIds[chunk] = customerIds[chunk].clone();
+            prices[chunk] = prices[chunk].clone();
+            soldAt[chunk] = soldAt[chunk].clone();
+            shared[chunk] = false;
+        }
+    }
+
+    // The columns as they are now, for report, export and integrity check
+    // threads to read while the store keeps changing. Only the lists of
+    // chunks are copied.
+    @Override
+    public Snapshot snapshot() {
+        frozen = size;
+        Arrays.fill(shared, true);
+        return new Snapshot(size, saleIds.clone(), carIds.clone(), customerIds.clone(), prices.clone(),
+                soldAt.clone(), saleIdCodec.values, carIdCodec.values, customerIdCodec.values);
+    }
+
+    static final class Snapshot extends AbstractList<Sale> {
+        private final int size;
+        private final long[][] saleIds;
+        private final int[][] carIds;
+        private final int[][] customerIds;
+        private final double[][] prices;
+        private final long[][] soldAt;
+        private final String[] saleIdValues;
+        private final String[] carIdValues;
+        private final String[] customerIdValues;
+
+        private Snapshot(int size, long[][] saleIds, int[][] carIds, int[][] customerIds, double[][] prices,
+                         long[][] soldAt, String[] saleIdValues, String[] carIdValues,
+                         String[] customerIdValues) {
+            this.size = size;
+            this.saleIds = saleIds;
+            this.carIds = carIds;
+            this.customerIds = customerIds;
+            this.prices = prices;
+            this.soldAt = soldAt;
+            this.saleIdValues = saleIdValues;
+            this.carIdValues = carIdValues;
+            this.customerIdValues = customerIdValues;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Sale get(int row) {
+            Objects.checkIndex(row, size);
+            return new Sale(saleId(row), carId(row), customerId(row), price(row), soldAt(row));
+        }
+
+        String saleId(int row) {
+            return IdCodec.decode(saleIds[row >>> CHUNK_BITS][row & SLOT], saleIdValues);
+        }
+
+        String carId(int row) {
+            return IdCodec.decode(carIds[row >>> CHUNK_BITS][row & SLOT], carIdValues);
+        }
+
+        String customerId(int row) {
+            return IdCodec.decode(customerIds[row >>> CHUNK_BITS][row & SLOT], customerIdValues);
+        }
+
+        double price(int row) {
+            return prices[row >>> CHUNK_BITS][row & SLOT];
+        }
+
+        long soldAt(int row) {
+            return soldAt[row >>> CHUNK_BITS][row & SLOT];
+        }
+
+        double totalPrice() {
+            return SaleColumnStore.totalPrice(prices, size);
+        }
+
+        // One pass over the customer column; the other columns are not read.
+        Map<String, Integer> countByCustomer() {
+            Map<String, Integer> counts = new HashMap<>();
+            for (int row = 0; row < size; row++) {
+                counts.merge(customerId(row), 1, Integer::sum);
+            }
+            return counts;
+        }
+    }
+
+    // The running sum is split over four accumulators so consecutive adds
+    // do not wait on each other.
+    private static double totalPrice(double[][] prices, int size) {
+        double a = 0, b = 0, c = 0, d = 0;
+        for (int chunk = 0; chunk << CHUNK_BITS < size; chunk++) {
+            double[] column = prices[chunk];
+            int rows = Math.min(CHUNK, size - (chunk << CHUNK_BITS));
+            int i = 0;
+            for (; i + 3 < rows; i += 4) {
+                a += column[i];
+                b += column[i + 1];
+                c += column[i + 2];
+                d += column[i + 3];
+            }
+            for (; i < rows; i++) {
+                a += column[i];
+            }
+        }
+        return (a + b) + (c + d);
+    }
+
+    // Column scans for reports.
+    double totalPrice() {
+        return totalPrice(prices, size);
+    }
+
+    Map<String, Double> totalPriceByCar() {
+        return totalPriceBy(carIds, carIdCodec);
+    }
+
+    Map<String, Double> totalPriceByCustomer() {
+        return totalPriceBy(customerIds, customerIdCodec);
+    }
+
+    // Dense IDs are summed into an array indexed by ID; sparse or textual
+    // ones fall back to a hash map.
+    private Map<String, Double> totalPriceBy(int[][] codes, IdCodec codec) {
+        Map<String, Double> totals = new HashMap<>();
+        if (size == 0) {
+            return totals;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            int code = codes[i >>> CHUNK_BITS][i & SLOT];
+            min = Math.min(min, code);
+            max = Math.max(max, code);
+        }
+        if ((long) max - min < 4L * size + 1024) {
+            double[] sums = new double[max - min + 1];
+            boolean[] seen = new boolean[sums.length];
+            for (int i = 0; i < size; i++) {
+                int offset = codes[i >>> CHUNK_BITS][i & SLOT] - min;
+                sums[offset] += prices[i >>> CHUNK_BITS][i & SLOT];
+                seen[offset] = true;
+            }
+            for (int offset = 0; offset < sums.length; offset++) {
+                if (seen[offset]) {
+                    totals.put(codec.decode(min + offset), sums[offset]);
+                }
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                totals.merge(codec.decode(codes[i >>> CHUNK_BITS][i & SLOT]), prices[i >>> CHUNK_BITS][i & SLOT],
+                        Double::sum);
+            }
+        }
+        return totals;
+    }
+
+    // Decimal IDs that Long.toString gives back unchanged are stored as their
+    // value; anything else gets a dictionary code, stored as -(code + 1).
+    // The dictionary only grows, which is fine for IDs that are rarely
+    // deleted. A full array is replaced rather than written past its end,
+    // so an array handed to a snapshot never changes below the codes the
+    // snapshot holds.
+    private static final class IdCodec {
+        static final long MAX_LONG_DECIMAL = 999_999_999_999_999_999L;
+        static final long UNKNOWN = Long.MIN_VALUE;
+
+        private final long maxDecimal;
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[16];
+        private int count;
+
+        IdCodec(long maxDecimal) {
+            this.maxDecimal = maxDecimal;
+        }
+
+        // Returns UNKNOWN for a new textual ID unless create is set.
+        long encode(String id, boolean create) {
+            long value = parseDecimal(id);
+            if (value >= 0 && value <= maxDecimal) {
+                return value;
+            }
+            Integer code = codes.get(id);
+            if (code == null) {
+                if (!create) {
+                    return UNKNOWN;
+                }
+                if (count == values.length) {
+                    values = Arrays.copyOf(values, count * 2);
+                }
+                code = count++;
+                codes.put(id, code);
+                values[code] = id;
+            }
+            return -(code + 1L);
+        }
+
+        int encodeInt(String id) {
+            return (int) encode(id, true);
+        }
+
+        String decode(long id) {
+            return decode(id, values);
+        }
+
+        static String decode(long id, String[] values) {
+            return id >= 0 ? Long.toString(id) : values[(int) (-id - 1)];
+        }
+
+        // No sign, no leading zeros, at most 18 digits; -1 for anything else.
+        private static long parseDecimal(String id) {
+            if (id == null || id.isEmpty() || id.length() > 18 || (id.charAt(0) == '0' && id.length() > 1)) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = 0; i < id.length(); i++) {
+                char c = id.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+    }
+
+    // Encoded sale ID -> position, open addressing with linear probing.
+    private static final class PositionMap {
+        private long[] keys = emptyKeys(16);
+        private int[] positions = new int[16];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); keys[slot] != IdCodec.UNKNOWN; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return positions[slot];
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, int position) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != IdCodec.UNKNOWN && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == IdCodec.UNKNOWN) {
+                size++;
+            }
+            keys[slot] = key;
+            positions[slot] = position;
+        }
+
+        // Backward-shift deletion keeps every probe chain unbroken without
+        // tombstones.
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int hole = slot(key, mask);
+            while (keys[hole] != key) {
+                if (keys[hole] == IdCodec.UNKNOWN) {
+                    return;
+                }
+                hole = (hole + 1) & mask;
+            }
+            for (int next = (hole + 1) & mask; keys[next] != IdCodec.UNKNOWN; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    positions[hole] = positions[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = IdCodec.UNKNOWN;
+            size--;
+        }
+
+        void shiftDown(int removedPosition) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != IdCodec.UNKNOWN && positions[slot] > removedPosition) {
+                    positions[slot]--;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldPositions = positions;
+            keys = emptyKeys(oldKeys.length * 2);
+            positions = new int[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != IdCodec.UNKNOWN) {
+                    put(oldKeys[slot], oldPositions[slot]);
+                }
+            }
+        }
+
+        private static long[] emptyKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, IdCodec.UNKNOWN);
+            return keys;
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+
+    // Secondary index: the encoded IDs of the sales under each key, so a
+    // lookup costs the number of matching sales rather than a pass over the
+    // table. IDs are kept rather than positions, which every remove would
+    // shift.
+    private final class ColumnIndex implements Repository.Index<Sale> {
+        private final Function<Sale, String> keyOf;
+        private final Map<String, SaleIds> ids = new HashMap<>();
+
+        ColumnIndex(Function<Sale, String> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        // In table order, like a scan would give them.
+        @Override
+        public List<Sale> find(String key) {
+            SaleIds matches = ids.get(key);
+            if (matches == null) {
+                return Collections.emptyList();
+            }
+            int[] positions = new int[matches.size];
+            for (int i = 0; i < matches.size; i++) {
+                positions[i] = positionOf(matches.values[i]);
+            }
+            Arrays.sort(positions);
+            return new AbstractList<Sale>() {
+                @Override
+                public Sale get(int index) {
+                    return SaleColumnStore.this.get(positions[index]);
+                }
+
+                @Override
+                public int size() {
+                    return positions.length;
+                }
+            };
+        }
+
+        @Override
+        public int count(String key) {
+            SaleIds matches = ids.get(key);
+            return matches == null ? 0 : matches.size;
+        }
+
+        private void add(long id, Sale row) {
+            ids.computeIfAbsent(keyOf.apply(row), key -> new SaleIds()).add(id);
+        }
+
+        private void remove(long id, Sale row) {
+            String key = keyOf.apply(row);
+            SaleIds matches = ids.get(key);
+            if (matches != null && matches.remove(id) && matches.size == 0) {
+                ids.remove(key);
+            }
+        }
+    }
+
+    private static final class SaleIds {
+        long[] values = new long[2];
+        int size;
+
+        void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+
+        boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == id) {
+                    values[i] = values[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+class SaleTableModel extends RepositoryTableModel<Sale> {
+
+    SaleTableModel(Repository<Sale> sales, ChangeFeed<Sale> changes) {
+        super(sales, changes, "Sale ID", "Car ID", "Customer ID", "Total Price", "Sold At");
+    }
+
+    @Override
+    Object valueAt(Sale sale, int column) {
+        switch (column) {
+            case 0: return sale.getSaleId();
+            case 1: return sale.getCarId();
+            case 2: return sale.getCustomerId();
+            case 3: return sale.getTotalPrice();
+            default: return formatTime(sale.getSoldAt());
+        }
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 3 ? Double.class : String.class;
+    }
+}
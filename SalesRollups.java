@@ -0,0 +1,383 @@
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+// Sales, car listings and new customers added up per minute, hour, day and
+// month of their event time, kept up to date from repository change
+// callbacks like StoreAggregates. A query over a time range adds up the
+// coarsest buckets that fit inside it and finer ones at its edges, so
+// "revenue over the last 30 days by make" reads a few dozen buckets however
+// many sales there are.
+//
+// Bucket boundaries follow the system time zone. Minute buckets are only
+// kept for the last week; queries that reach further back are widened to
+// whole hours there. Rows without a time (0, from files written before rows
+// carried one) are not counted.
+class SalesRollups {
+    static final int MINUTE = 0;
+    static final int HOUR = 1;
+    static final int DAY = 2;
+    static final int MONTH = 3;
+
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final long MINUTE_RETENTION_MILLIS = Duration.ofDays(7).toMillis();
+
+    // Totals over a time range; the by-make maps are sorted by make.
+    static final class Totals {
+        final long sales;
+        final long listings;
+        final long newCustomers;
+        final double revenue;
+        final Map<String, Long> salesByMake = new TreeMap<>();
+        final Map<String, Double> revenueByMake = new TreeMap<>();
+
+        private Totals(long sales, long listings, long newCustomers, long revenueCents, long[] salesByMake,
+                       long[] centsByMake, List<String> makes) {
+            this.sales = sales;
+            this.listings = listings;
+            this.newCustomers = newCustomers;
+            this.revenue = revenueCents / 100.0;
+            for (int make = 0; make < salesByMake.length; make++) {
+                if (salesByMake[make] != 0) {
+                    this.salesByMake.put(makes.get(make), salesByMake[make]);
+                    this.revenueByMake.put(makes.get(make), centsByMake[make] / 100.0);
+                }
+            }
+        }
+    }
+
+    private static final class Bucket {
+        long sales;
+        long listings;
+        long newCustomers;
+        long revenueCents;
+        long[] salesByMake = new long[0];
+        long[] centsByMake = new long[0];
+    }
+
+    // The buckets of one grain. Events mostly arrive in time order, so the
+    // last bucket looked up is remembered along with its range and the zone
+    // arithmetic only runs when an event falls outside it.
+    private final class Level {
+        private final int grain;
+        private final TreeMap<Long, Bucket> buckets = new TreeMap<>();
+        private long cachedStart = 1;
+        private long cachedEnd = 0;
+        private Bucket cachedBucket;
+
+        Level(int grain) {
+            this.grain = grain;
+        }
+
+        Bucket bucket(long time) {
+            if (time < cachedStart || time >= cachedEnd) {
+                locate(time);
+            }
+            if (cachedBucket == null) {
+                cachedBucket = buckets.computeIfAbsent(cachedStart, start -> new Bucket());
+            }
+            return cachedBucket;
+        }
+
+        long startOf(long time) {
+            if (time < cachedStart || time >= cachedEnd) {
+                locate(time);
+            }
+            return cachedStart;
+        }
+
+        long endOf(long time) {
+            if (time < cachedStart || time >= cachedEnd) {
+                locate(time);
+            }
+            return cachedEnd;
+        }
+
+        private void locate(long time) {
+            cachedBucket = null;
+            if (grain == MINUTE) {
+                cachedStart = Math.floorDiv(time, MINUTE_MILLIS) * MINUTE_MILLIS;
+                cachedEnd = cachedStart + MINUTE_MILLIS;
+                return;
+            }
+            ZonedDateTime at = Instant.ofEpochMilli(time).atZone(zone);
+            ZonedDateTime start;
+            ZonedDateTime end;
+            if (grain == HOUR) {
+                start = at.truncatedTo(ChronoUnit.HOURS);
+                end = start.plusHours(1);
+            } else if (grain == DAY) {
+                start = at.toLocalDate().atStartOfDay(zone);
+                end = at.toLocalDate().plusDays(1).atStartOfDay(zone);
+            } else {
+                LocalDate first = at.toLocalDate().withDayOfMonth(1);
+                start = first.atStartOfDay(zone);
+                end = first.plusMonths(1).atStartOfDay(zone);
+            }
+            cachedStart = start.toInstant().toEpochMilli();
+            cachedEnd = end.toInstant().toEpochMilli();
+        }
+    }
+
+    private final Repository<Car> cars;
+    private final Repository.Index<Sale> salesByCar;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Level[] levels = {new Level(MINUTE), new Level(HOUR), new Level(DAY), new Level(MONTH)};
+    private final Map<String, Integer> makeCodes = new HashMap<>();
+    private final List<String> makes = new ArrayList<>();
+    // Start of the oldest minute bucket, always on an hour boundary, and
+    // the time at which it moves on.
+    private long minuteHorizon = Long.MIN_VALUE;
+    private long nextHorizon = Long.MIN_VALUE;
+
+    SalesRollups(Repository<Car> cars, Repository<Customer> customers, Repository<Sale> sales,
+                 Repository.Index<Sale> salesByCar) {
+        this.cars = cars;
+        this.salesByCar = salesByCar;
+        cars.addListener(new Repository.Listener<Car>() {
+            public void inserted(int position, Car car) {
+                synchronized (SalesRollups.this) {
+                    carInserted(car);
+                }
+            }
+
+            public void updated(int position, Car previous, Car car) {
+                synchronized (SalesRollups.this) {
+                    if (previous.getId().equals(car.getId()) && previous.getMake().equals(car.getMake())) {
+                        addListing(previous, -1);
+                        addListing(car, 1);
+                    } else {
+                        carRemoved(previous);
+                        carInserted(car);
+                    }
+                }
+            }
+
+            public void removed(int position, Car car) {
+                synchronized (SalesRollups.this) {
+                    carRemoved(car);
+                }
+            }
+        });
+        customers.addListener(new Repository.Listener<Customer>() {
+            public void inserted(int position, Customer customer) {
+                synchronized (SalesRollups.this) {
+                    addCustomer(customer, 1);
+                }
+            }
+
+            public void updated(int position, Customer previous, Customer customer) {
+                synchronized (SalesRollups.this) {
+                    addCustomer(previous, -1);
+                    addCustomer(customer, 1);
+                }
+            }
+
+            public void removed(int position, Customer customer) {
+                synchronized (SalesRollups.this) {
+                    addCustomer(customer, -1);
+                }
+            }
+        });
+        sales.addListener(new Repository.Listener<Sale>() {
+            public void inserted(int position, Sale sale) {
+                synchronized (SalesRollups.this) {
+                    addSale(sale, makeOf(sale), 1);
+                }
+            }
+
+            public void updated(int position, Sale previous, Sale sale) {
+                synchronized (SalesRollups.this) {
+                    addSale(previous, makeOf(previous), -1);
+                    addSale(sale, makeOf(sale), 1);
+                }
+            }
+
+            public void removed(int position, Sale sale) {
+                synchronized (SalesRollups.this) {
+                    addSale(sale, makeOf(sale), -1);
+                }
+            }
+        });
+    }
+
+    // Start of the minute, hour, day or month that time falls in.
+    synchronized long startOf(int grain, long time) {
+        return levels[grain].startOf(time);
+    }
+
+    // Everything with from <= time < to, rounded out to whole buckets.
+    synchronized Totals total(long from, long to) {
+        long[] sums = new long[4];
+        long[] salesByMake = new long[makes.size()];
+        long[] centsByMake = new long[makes.size()];
+        long end = roundUp(to);
+        for (long position = roundDown(from); position < end; ) {
+            Level level = widestFitting(position, end);
+            Bucket bucket = level.buckets.get(position);
+            if (bucket != null) {
+                addTo(bucket, sums, salesByMake, centsByMake);
+            }
+            position = level.endOf(position);
+        }
+        return new Totals(sums[0], sums[1], sums[2], sums[3], salesByMake, centsByMake, makes);
+    }
+
+    Map<String, Double> revenueByMake(long from, long to) {
+        return total(from, to).revenueByMake;
+    }
+
+    // One entry per bucket of the grain from the one containing from up to
+    // to, keyed by the bucket's start; empty buckets are included. Minute
+    // series only cover the last week.
+    synchronized SortedMap<Long, Totals> series(int grain, long from, long to) {
+        Level level = levels[grain];
+        SortedMap<Long, Totals> series = new TreeMap<>();
+        long position = level.startOf(grain == MINUTE ? Math.max(from, minuteHorizon) : from);
+        while (position < to) {
+            long[] sums = new long[4];
+            long[] salesByMake = new long[makes.size()];
+            long[] centsByMake = new long[makes.size()];
+            Bucket bucket = level.buckets.get(position);
+            if (bucket != null) {
+                addTo(bucket, sums, salesByMake, centsByMake);
+            }
+            series.put(position, new Totals(sums[0], sums[1], sums[2], sums[3], salesByMake, centsByMake, makes));
+            position = level.endOf(position);
+        }
+        return series;
+    }
+
+    // Start of the first month with a sale, listing or new customer, or 0 if
+    // there is none.
+    synchronized long firstMonth() {
+        for (Map.Entry<Long, Bucket> month : levels[MONTH].buckets.entrySet()) {
+            Bucket bucket = month.getValue();
+            if (bucket.sales != 0 || bucket.listings != 0 || bucket.newCustomers != 0) {
+                return month.getKey();
+            }
+        }
+        return 0;
+    }
+
+    private Level widestFitting(long position, long end) {
+        for (int grain = MONTH; grain > MINUTE; grain--) {
+            Level level = levels[grain];
+            if (level.startOf(position) == position && level.endOf(position) <= end) {
+                return level;
+            }
+        }
+        return levels[MINUTE];
+    }
+
+    private long roundDown(long time) {
+        return time < minuteHorizon ? levels[HOUR].startOf(time) : levels[MINUTE].startOf(time);
+    }
+
+    private long roundUp(long time) {
+        Level level = time <= minuteHorizon ? levels[HOUR] : levels[MINUTE];
+        long start = level.startOf(time);
+        return start == time ? time : level.endOf(time);
+    }
+
+    private static void addTo(Bucket bucket, long[] sums, long[] salesByMake, long[] centsByMake) {
+        sums[0] += bucket.sales;
+        sums[1] += bucket.listings;
+        sums[2] += bucket.newCustomers;
+        sums[3] += bucket.revenueCents;
+        for (int make = 0; make < bucket.salesByMake.length; make++) {
+            salesByMake[make] += bucket.salesByMake[make];
+            centsByMake[make] += bucket.centsByMake[make];
+        }
+    }
+
+    private void carInserted(Car car) {
+        addListing(car, 1);
+        // Sales already pointing at this ID were booked under "Unknown".
+        int make = makeCode(car.getMake());
+        int unknown = makeCode(StoreAggregates.UNKNOWN_MAKE);
+        for (Sale sale : salesByCar.find(car.getId())) {
+            addSale(sale, unknown, -1);
+            addSale(sale, make, 1);
+        }
+    }
+
+    private void carRemoved(Car car) {
+        addListing(car, -1);
+        int make = makeCode(car.getMake());
+        int unknown = makeCode(StoreAggregates.UNKNOWN_MAKE);
+        for (Sale sale : salesByCar.find(car.getId())) {
+            addSale(sale, make, -1);
+            addSale(sale, unknown, 1);
+        }
+    }
+
+    private void addListing(Car car, int sign) {
+        long time = car.getListedAt();
+        if (time <= 0) {
+            return;
+        }
+        for (int grain = firstGrain(time); grain <= MONTH; grain++) {
+            levels[grain].bucket(time).listings += sign;
+        }
+    }
+
+    private void addCustomer(Customer customer, int sign) {
+        long time = customer.getJoinedAt();
+        if (time <= 0) {
+            return;
+        }
+        for (int grain = firstGrain(time); grain <= MONTH; grain++) {
+            levels[grain].bucket(time).newCustomers += sign;
+        }
+    }
+
+    private void addSale(Sale sale, int make, int sign) {
+        long time = sale.getSoldAt();
+        if (time <= 0) {
+            return;
+        }
+        long cents = sign * Math.round(sale.getTotalPrice() * 100);
+        for (int grain = firstGrain(time); grain <= MONTH; grain++) {
+            Bucket bucket = levels[grain].bucket(time);
+            bucket.sales += sign;
+            bucket.revenueCents += cents;
+            if (bucket.salesByMake.length <= make) {
+                bucket.salesByMake = Arrays.copyOf(bucket.salesByMake, makes.size());
+                bucket.centsByMake = Arrays.copyOf(bucket.centsByMake, makes.size());
+            }
+            bucket.salesByMake[make] += sign;
+            bucket.centsByMake[make] += cents;
+        }
+    }
+
+    // Events older than the minute horizon skip the minute buckets. The
+    // horizon moves forward an hour at a time, dropping the buckets it
+    // passes.
+    private int firstGrain(long time) {
+        long oldest = System.currentTimeMillis() - MINUTE_RETENTION_MILLIS;
+        if (oldest >= nextHorizon) {
+            ZonedDateTime hour = Instant.ofEpochMilli(oldest).atZone(zone).truncatedTo(ChronoUnit.HOURS);
+            minuteHorizon = hour.toInstant().toEpochMilli();
+            nextHorizon = hour.plusHours(1).toInstant().toEpochMilli();
+            levels[MINUTE].buckets.headMap(minuteHorizon).clear();
+            levels[MINUTE].cachedEnd = levels[MINUTE].cachedStart;
+        }
+        return time < minuteHorizon ? HOUR : MINUTE;
+    }
+
+    private int makeOf(Sale sale) {
+        Car car = cars.findById(sale.getCarId());
+        return makeCode(car == null ? StoreAggregates.UNKNOWN_MAKE : car.getMake());
+    }
+
+    private int makeCode(String make) {
+        Integer code = makeCodes.get(make);
+        if (code == null) {
+            code = makes.size();
+            makeCodes.put(make, code);
+            makes.add(make);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Inverted index for the Search fields. Every indexed row gets an ordinal;
+// each lower-cased trigram of its fields maps to a sorted list of ordinals,
+// and each whole word goes into a sorted token map for one- and two-letter
+// prefix queries. Searches run off the EDT, so access is guarded by a
+// read/write lock while repository callbacks keep the index current.
+// Rows are remembered by ID and fetched from the repository for the
+// results, since a store may hand out a fresh copy of a row on every read.
+// Their text is not kept: the few candidates that need checking are checked
+// against the row itself, which also keeps the index small next to a table
+// that lives on disk.
+class SearchIndex<T> implements Repository.Listener<T> {
+    private static final int GRAM = 3;
+
+    private final Repository<T> repository;
+    private final List<Function<T, String>> fields;
+    private final List<String> documents = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final Map<Long, IntList> grams = new HashMap<>();
+    private final TreeMap<String, IntList> tokens = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int removedDocuments;
+
+    @SafeVarargs
+    SearchIndex(Repository<T> repository, Function<T, String>... fields) {
+        this.repository = repository;
+        this.fields = Arrays.asList(fields);
+        for (int i = 0; i < repository.size(); i++) {
+            index(repository.get(i));
+        }
+        repository.addListener(this);
+    }
+
+    // Rows matching every whitespace-separated term, in the order they were
+    // indexed. Terms of three or more characters match anywhere inside a
+    // field; shorter terms match the start of a word.
+    List<T> search(String query) {
+        String[] terms = query.trim().toLowerCase(Locale.ROOT).split("\\s+");
+        List<String> ids = searchIds(terms);
+        // Outside our lock: a writer holds the repository's lock while it
+        // waits for ours.
+        return repository.read(() -> {
+            List<T> results = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                T row = repository.findById(id);
+                if (row != null && containsLongTerms(row, terms)) {
+                    results.add(row);
+                }
+            }
+            return results;
+        });
+    }
+
+    private List<String> searchIds(String[] terms) {
+        lock.readLock().lock();
+        try {
+            IntList candidates = null;
+            for (String term : terms) {
+                IntList matches = term.length() >= GRAM ? gramCandidates(term) : prefixCandidates(term);
+                candidates = candidates == null ? matches : intersect(candidates, matches);
+                if (candidates.size == 0) {
+                    break;
+                }
+            }
+            List<String> results = new ArrayList<>();
+            if (candidates == null) {
+                return results;
+            }
+            for (int i = 0; i < candidates.size; i++) {
+                int ordinal = candidates.values[i];
+                String id = documents.get(ordinal);
+                if (id != null) {
+                    results.add(id);
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void inserted(int position, T row) {
+        lock.writeLock().lock();
+        try {
+            index(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updated(int position, T previous, T row) {
+        lock.writeLock().lock();
+        try {
+            unindex(previous);
+            index(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(int position, T row) {
+        lock.writeLock().lock();
+        try {
+            unindex(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(T row) {
+        String id = repository.idOf(row);
+        int ordinal = documents.size();
+        for (String text : text(row).split("\n")) {
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                grams.computeIfAbsent(gramKey(text, i), key -> new IntList()).addUnique(ordinal);
+            }
+            for (String token : text.split("[^\\p{L}\\p{N}]+")) {
+                if (!token.isEmpty()) {
+                    tokens.computeIfAbsent(token, key -> new IntList()).addUnique(ordinal);
+                }
+            }
+        }
+        documents.add(id);
+        ordinals.put(id, ordinal);
+    }
+
+    // Removed rows only leave a hole; postings are rebuilt once holes make up
+    // half of the ordinals.
+    private void unindex(T row) {
+        Integer ordinal = ordinals.remove(repository.idOf(row));
+        if (ordinal == null) {
+            return;
+        }
+        documents.set(ordinal, null);
+        if (++removedDocuments > documents.size() / 2) {
+            rebuild();
+        }
+    }
+
+    // Runs in a repository callback, so the rows can be read back.
+    private void rebuild() {
+        List<String> liveIds = new ArrayList<>(ordinals.size());
+        for (String id : documents) {
+            if (id != null) {
+                liveIds.add(id);
+            }
+        }
+        documents.clear();
+        ordinals.clear();
+        grams.clear();
+        tokens.clear();
+        removedDocuments = 0;
+        for (String id : liveIds) {
+            T row = repository.findById(id);
+            if (row != null) {
+                index(row);
+            }
+        }
+    }
+
+    // Intersects the rarest trigrams first so the candidate list shrinks
+    // before the long postings of common trigrams are probed.
+    private IntList gramCandidates(String term) {
+        List<IntList> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            IntList postings = grams.get(gramKey(term, i));
+            if (postings == null) {
+                return new IntList();
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        IntList result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.size > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private IntList prefixCandidates(String prefix) {
+        BitSet union = new BitSet(documents.size());
+        for (IntList postings : tokens.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            for (int i = 0; i < postings.size; i++) {
+                union.set(postings.values[i]);
+            }
+        }
+        IntList result = new IntList();
+        for (int ordinal = union.nextSetBit(0); ordinal >= 0; ordinal = union.nextSetBit(ordinal + 1)) {
+            result.add(ordinal);
+        }
+        return result;
+    }
+
+    // Token and single-trigram hits are exact; only terms longer than one
+    // trigram can be false positives and need checking against the row.
+    private boolean containsLongTerms(T row, String[] terms) {
+        String text = null;
+        for (String term : terms) {
+            if (term.length() > GRAM) {
+                if (text == null) {
+                    text = text(row);
+                }
+                if (!text.contains(term)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // The row's normalized fields, one per line.
+    private String text(T row) {
+        StringBuilder joined = new StringBuilder();
+        for (Function<T, String> field : fields) {
+            joined.append(normalize(field.apply(row))).append('\n');
+        }
+        return joined.toString();
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long gramKey(String text, int offset) {
+        return ((long) text.charAt(offset) << 32) | ((long) text.charAt(offset + 1) << 16) | text.charAt(offset + 2);
+    }
+
+    private static IntList intersect(IntList smaller, IntList larger) {
+        if (smaller.size > larger.size) {
+            IntList swap = smaller;
+            smaller = larger;
+            larger = swap;
+        }
+        IntList result = new IntList();
+        int from = 0;
+        for (int i = 0; i < smaller.size; i++) {
+            int found = Arrays.binarySearch(larger.values, from, larger.size, smaller.values[i]);
+            if (found >= 0) {
+                result.add(smaller.values[i]);
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return result;
+    }
+
+    // Ordinals are handed out in increasing order, so postings built by
+    // appending stay sorted without extra work.
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addUnique(int value) {
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+    }
+}
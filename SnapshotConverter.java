@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Converts the store's tables in the working directory between CSV and the
+// binary snapshot format:
+//
+//   java SnapshotConverter to-snapshot [cars|customers|sales]...
+//   java SnapshotConverter to-csv [cars|customers|sales]...
+//
+// With no table names all three are converted. Pending journal entries are
+// not applied; the app replays them on its next start either way.
+public class SnapshotConverter {
+    private static final List<StoreFormat<?>> FORMATS =
+            Arrays.asList(StoreFormat.CARS, StoreFormat.CUSTOMERS, StoreFormat.SALES);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("to-snapshot") || args[0].equals("to-csv"))) {
+            System.err.println("Usage: java SnapshotConverter to-snapshot|to-csv [cars|customers|sales]...");
+            System.exit(2);
+        }
+        List<String> tables = Arrays.asList(args).subList(1, args.length);
+        for (StoreFormat<?> format : FORMATS) {
+            if (tables.isEmpty() || tables.contains(format.name())) {
+                long start = System.nanoTime();
+                long rows = args[0].equals("to-snapshot") ? toSnapshot(format) : toCsv(format);
+                System.out.printf("%s: %d rows in %d ms%n", format.name(), rows, (System.nanoTime() - start) / 1_000_000);
+            }
+        }
+    }
+
+    static <T> long toSnapshot(StoreFormat<T> format) throws IOException {
+        List<T> rows = new ArrayList<>();
+        long skipped = format.parseCsv(Paths.get(format.csvFile()), rows::addAll);
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " malformed rows in " + format.csvFile());
+        }
+        SnapshotFile.write(Paths.get(format.snapshotFile()), format, rows);
+        return rows.size();
+    }
+
+    static <T> long toCsv(StoreFormat<T> format) throws IOException {
+        List<T> rows = new ArrayList<>();
+        Path snapshot = Paths.get(format.snapshotFile());
+        SnapshotFile.read(snapshot, format, rows::addAll);
+        PersistentTable.writeCsv(Paths.get(format.csvFile()), format, rows);
+        // Keep the snapshot usable: it holds exactly what the CSV now does.
+        snapshot.toFile().setLastModified(System.currentTimeMillis());
+        return rows.size();
+    }
+}
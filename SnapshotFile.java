@@ -0,0 +1,375 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Versioned, columnar binary copy of one table, written next to its CSV.
+//
+//   "CSSN" version
+//   block*      rowCount, then one segment per column:
+//               NUMBER      rowCount doubles
+//               DICTIONARY  rowCount int codes
+//               TEXT        rowCount + 1 int offsets, then the UTF-8 bytes
+//   dictionaries  per DICTIONARY column: count, then length-prefixed values
+//   directory   columns (type, name), row and block counts, and per block
+//               its offset, length, row count and CRC32; then the
+//               dictionary section's offset, length and CRC32
+//   footer      directory offset, directory length, directory CRC32, "CSSN"
+//
+// Every block and the directory are checksummed and verified before any row
+// is handed out, so a damaged snapshot is rejected as a whole.
+class SnapshotFile {
+    static final int MAGIC = 0x4353534E;
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1 << 16;
+    private static final int FOOTER_BYTES = 8 + 4 + 4 + 4;
+
+    private SnapshotFile() {
+    }
+
+    // A snapshot is only used when it is at least as new as the CSV, since
+    // either file may have been written last.
+    static boolean isCurrent(StoreFormat<?> format) {
+        Path snapshot = Paths.get(format.snapshotFile());
+        Path csv = Paths.get(format.csvFile());
+        try {
+            return Files.exists(snapshot) && (!Files.exists(csv)
+                    || Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(csv)) >= 0);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static <T> void write(Path target, StoreFormat<T> format, List<T> rows) throws IOException {
+        List<StoreFormat.Column<T>> columns = format.columns();
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        for (int c = 0; c < columns.size(); c++) {
+            dictionaries.add(new LinkedHashMap<>());
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 20);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long position = flush(channel, bytes, 0);
+
+            List<long[]> blocks = new ArrayList<>();
+            for (int from = 0; from < rows.size(); from += BLOCK_ROWS) {
+                List<T> block = rows.subList(from, Math.min(rows.size(), from + BLOCK_ROWS));
+                writeBlock(out, columns, dictionaries, block);
+                long crc = crc(bytes.toByteArray(), bytes.size());
+                int length = bytes.size();
+                blocks.add(new long[]{position, length, block.size(), crc});
+                position = flush(channel, bytes, position);
+            }
+
+            for (int c = 0; c < columns.size(); c++) {
+                if (columns.get(c).type == StoreFormat.DICTIONARY) {
+                    out.writeInt(dictionaries.get(c).size());
+                    for (String value : dictionaries.get(c).keySet()) {
+                        writeString(out, value);
+                    }
+                }
+            }
+            long dictionaryOffset = position;
+            int dictionaryLength = bytes.size();
+            long dictionaryCrc = crc(bytes.toByteArray(), dictionaryLength);
+            position = flush(channel, bytes, position);
+
+            out.writeInt(columns.size());
+            for (StoreFormat.Column<T> column : columns) {
+                out.writeByte(column.type);
+                out.writeUTF(column.name);
+            }
+            out.writeLong(rows.size());
+            out.writeInt(BLOCK_ROWS);
+            out.writeInt(blocks.size());
+            for (long[] block : blocks) {
+                out.writeLong(block[0]);
+                out.writeInt((int) block[1]);
+                out.writeInt((int) block[2]);
+                out.writeLong(block[3]);
+            }
+            out.writeLong(dictionaryOffset);
+            out.writeInt(dictionaryLength);
+            out.writeLong(dictionaryCrc);
+            long directoryOffset = position;
+            int directoryLength = bytes.size();
+            int directoryCrc = (int) crc(bytes.toByteArray(), directoryLength);
+            out.writeLong(directoryOffset);
+            out.writeInt(directoryLength);
+            out.writeInt(directoryCrc);
+            out.writeInt(MAGIC);
+            flush(channel, bytes, position);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static <T> void writeBlock(DataOutputStream out, List<StoreFormat.Column<T>> columns,
+                                       List<Map<String, Integer>> dictionaries, List<T> block) throws IOException {
+        out.writeInt(block.size());
+        for (int c = 0; c < columns.size(); c++) {
+            StoreFormat.Column<T> column = columns.get(c);
+            if (column.type == StoreFormat.NUMBER) {
+                for (T row : block) {
+                    out.writeDouble(column.number.applyAsDouble(row));
+                }
+            } else if (column.type == StoreFormat.DICTIONARY) {
+                Map<String, Integer> dictionary = dictionaries.get(c);
+                for (T row : block) {
+                    out.writeInt(dictionary.computeIfAbsent(column.text.apply(row), value -> dictionary.size()));
+                }
+            } else {
+                List<byte[]> values = new ArrayList<>(block.size());
+                int offset = 0;
+                out.writeInt(0);
+                for (T row : block) {
+                    byte[] value = column.text.apply(row).getBytes(StandardCharsets.UTF_8);
+                    values.add(value);
+                    offset += value.length;
+                    out.writeInt(offset);
+                }
+                for (byte[] value : values) {
+                    out.write(value);
+                }
+            }
+        }
+    }
+
+    // Decodes blocks in parallel and passes them to the consumer in order.
+    // Returns the number of rows read.
+    static <T> long read(Path file, StoreFormat<T> format, Consumer<List<T>> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Directory directory = readDirectory(channel, format);
+            String[][] dictionaries = readDictionaries(channel, directory);
+            List<ByteBuffer> blocks = new ArrayList<>();
+            for (int b = 0; b < directory.blockCount; b++) {
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY,
+                        directory.blockOffsets[b], directory.blockLengths[b]);
+                if (crc(block) != directory.blockCrcs[b]) {
+                    throw new IOException("Checksum mismatch in block " + b + " of " + file);
+                }
+                blocks.add(block);
+            }
+            // Only a few blocks are decoded ahead of the consumer, so a reader
+            // that streams rows out never holds more than that in memory.
+            int window = Runtime.getRuntime().availableProcessors() + 1;
+            Deque<CompletableFuture<List<T>>> pending = new ArrayDeque<>();
+            for (ByteBuffer block : blocks) {
+                if (pending.size() == window) {
+                    consumer.accept(pending.removeFirst().join());
+                }
+                pending.addLast(CompletableFuture.supplyAsync(
+                        () -> decodeBlock(block, directory.types, dictionaries, format.mapper())));
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(pending.removeFirst().join());
+            }
+            return directory.rowCount;
+        }
+    }
+
+    private static final class Directory {
+        byte[] types;
+        long rowCount;
+        int blockCount;
+        long[] blockOffsets;
+        int[] blockLengths;
+        int[] blockRows;
+        long[] blockCrcs;
+        long dictionaryOffset;
+        int dictionaryLength;
+        long dictionaryCrc;
+    }
+
+    private static Directory readDirectory(FileChannel channel, StoreFormat<?> format) throws IOException {
+        long size = channel.size();
+        if (size < 8 + FOOTER_BYTES) {
+            throw new IOException("Snapshot too short");
+        }
+        ByteBuffer header = readFully(channel, 0, 8);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        ByteBuffer footer = readFully(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+        long directoryOffset = footer.getLong();
+        int directoryLength = footer.getInt();
+        int directoryCrc = footer.getInt();
+        if (footer.getInt() != MAGIC || directoryOffset + directoryLength > size - FOOTER_BYTES) {
+            throw new IOException("Truncated snapshot");
+        }
+        ByteBuffer in = readFully(channel, directoryOffset, directoryLength);
+        if ((int) crc(in) != directoryCrc) {
+            throw new IOException("Checksum mismatch in snapshot directory");
+        }
+        List<StoreFormat.Column<?>> expected = new ArrayList<>(format.columns());
+        int columnCount = in.getInt();
+        if (columnCount != expected.size()) {
+            throw new IOException("Snapshot has " + columnCount + " columns, expected " + expected.size());
+        }
+        Directory directory = new Directory();
+        directory.types = new byte[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            directory.types[c] = in.get();
+            String name = readModifiedUtf8(in);
+            if (directory.types[c] != expected.get(c).type || !name.equals(expected.get(c).name)) {
+                throw new IOException("Snapshot column " + name + " does not match " + format.name());
+            }
+        }
+        directory.rowCount = in.getLong();
+        in.getInt();
+        directory.blockCount = in.getInt();
+        directory.blockOffsets = new long[directory.blockCount];
+        directory.blockLengths = new int[directory.blockCount];
+        directory.blockRows = new int[directory.blockCount];
+        directory.blockCrcs = new long[directory.blockCount];
+        for (int b = 0; b < directory.blockCount; b++) {
+            directory.blockOffsets[b] = in.getLong();
+            directory.blockLengths[b] = in.getInt();
+            directory.blockRows[b] = in.getInt();
+            directory.blockCrcs[b] = in.getLong();
+        }
+        directory.dictionaryOffset = in.getLong();
+        directory.dictionaryLength = in.getInt();
+        directory.dictionaryCrc = in.getLong();
+        return directory;
+    }
+
+    private static String[][] readDictionaries(FileChannel channel, Directory directory) throws IOException {
+        ByteBuffer in = readFully(channel, directory.dictionaryOffset, directory.dictionaryLength);
+        if (crc(in) != directory.dictionaryCrc) {
+            throw new IOException("Checksum mismatch in snapshot dictionaries");
+        }
+        String[][] dictionaries = new String[directory.types.length][];
+        for (int c = 0; c < directory.types.length; c++) {
+            if (directory.types[c] == StoreFormat.DICTIONARY) {
+                String[] values = new String[in.getInt()];
+                for (int i = 0; i < values.length; i++) {
+                    byte[] value = new byte[in.getInt()];
+                    in.get(value);
+                    values[i] = new String(value, StandardCharsets.UTF_8);
+                }
+                dictionaries[c] = values;
+            }
+        }
+        return dictionaries;
+    }
+
+    private static <T> List<T> decodeBlock(ByteBuffer block, byte[] types, String[][] dictionaries,
+                                           CsvParser.RowMapper<T> mapper) {
+        BlockRow row = new BlockRow(block, types, dictionaries);
+        List<T> rows = new ArrayList<>(row.rowCount);
+        for (int r = 0; r < row.rowCount; r++) {
+            row.row = r;
+            rows.add(mapper.map(row));
+        }
+        return rows;
+    }
+
+    // Column segment offsets are found once per block; rows are then read
+    // by index without any per-row parsing.
+    private static final class BlockRow implements RowFields {
+        private final ByteBuffer block;
+        private final byte[] types;
+        private final String[][] dictionaries;
+        private final int[] segments;
+        private final int rowCount;
+        private int row;
+
+        BlockRow(ByteBuffer block, byte[] types, String[][] dictionaries) {
+            this.block = block;
+            this.types = types;
+            this.dictionaries = dictionaries;
+            this.rowCount = block.getInt(0);
+            this.segments = new int[types.length];
+            int position = 4;
+            for (int c = 0; c < types.length; c++) {
+                segments[c] = position;
+                if (types[c] == StoreFormat.NUMBER) {
+                    position += rowCount * 8;
+                } else if (types[c] == StoreFormat.DICTIONARY) {
+                    position += rowCount * 4;
+                } else {
+                    position += (rowCount + 1) * 4 + block.getInt(position + rowCount * 4);
+                }
+            }
+        }
+
+        @Override
+        public String text(int field) {
+            int segment = segments[field];
+            if (types[field] == StoreFormat.DICTIONARY) {
+                return dictionaries[field][block.getInt(segment + row * 4)];
+            }
+            int start = block.getInt(segment + row * 4);
+            int end = block.getInt(segment + (row + 1) * 4);
+            byte[] value = new byte[end - start];
+            block.get(segment + (rowCount + 1) * 4 + start, value);
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public double number(int field) {
+            return block.getDouble(segments[field] + row * 8);
+        }
+    }
+
+    private static long flush(FileChannel channel, ByteArrayOutputStream bytes, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray(), 0, bytes.size());
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        bytes.reset();
+        return position;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readModifiedUtf8(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    private static long crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,89 @@
+// Dashboard figures kept up to date from repository change callbacks, so
+// reading them never walks the data. Revenue is held in cents to avoid
+// drift from repeated floating point additions and subtractions; revenue
+// by make comes from SalesRollups. Callbacks may come from any thread, so
+// the figures are guarded by this object.
+class StoreAggregates {
+    static final String UNKNOWN_MAKE = "Unknown";
+
+    private int carCount;
+    private int customerCount;
+    private int saleCount;
+    private long revenueCents;
+
+    StoreAggregates(Repository<Car> cars, Repository<Customer> customers, Repository<Sale> sales) {
+        cars.addListener(new Repository.Listener<Car>() {
+            public void inserted(int position, Car car) {
+                synchronized (StoreAggregates.this) {
+                    carCount++;
+                }
+            }
+
+            public void updated(int position, Car previous, Car car) {
+            }
+
+            public void removed(int position, Car car) {
+                synchronized (StoreAggregates.this) {
+                    carCount--;
+                }
+            }
+        });
+        customers.addListener(new Repository.Listener<Customer>() {
+            public void inserted(int position, Customer customer) {
+                synchronized (StoreAggregates.this) {
+                    customerCount++;
+                }
+            }
+
+            public void updated(int position, Customer previous, Customer customer) {
+            }
+
+            public void removed(int position, Customer customer) {
+                synchronized (StoreAggregates.this) {
+                    customerCount--;
+                }
+            }
+        });
+        sales.addListener(new Repository.Listener<Sale>() {
+            public void inserted(int position, Sale sale) {
+                synchronized (StoreAggregates.this) {
+                    saleCount++;
+                    revenueCents += toCents(sale.getTotalPrice());
+                }
+            }
+
+            public void updated(int position, Sale previous, Sale sale) {
+                synchronized (StoreAggregates.this) {
+                    revenueCents += toCents(sale.getTotalPrice()) - toCents(previous.getTotalPrice());
+                }
+            }
+
+            public void removed(int position, Sale sale) {
+                synchronized (StoreAggregates.this) {
+                    saleCount--;
+                    revenueCents -= toCents(sale.getTotalPrice());
+                }
+            }
+        });
+    }
+
+    synchronized int getCarCount() {
+        return carCount;
+    }
+
+    synchronized int getCustomerCount() {
+        return customerCount;
+    }
+
+    synchronized int getSaleCount() {
+        return saleCount;
+    }
+
+    synchronized double getRevenue() {
+        return revenueCents / 100.0;
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,546 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Headless bulk import and export, run as CarStoreApp with arguments:
+//
+//   import <cars|customers|sales> <file.csv|file.jsonl> [--batch N]
+//   export <cars|customers|sales> <file.csv|file.jsonl|-> [column=value | column>=n ...]
+//
+// An import streams the input through reader -> parsers -> committer
+// threads connected by bounded queues, so a slow disk holds the reader back
+// instead of filling the heap. Parsers validate rows in parallel, including
+// that imported sales refer to stored cars and customers; the committer
+// puts batches back in file order, drops IDs that are already stored or
+// appeared earlier in the file, and appends the rest to a copy of the
+// table's CSV that replaces the original when the import finishes.
+// Rejected lines are written to <input>.rejects with the reason. Exports
+// stream the stored rows through the filters to the output.
+//
+// Both commands work on the files directly, so the GUI must not be running.
+class StoreCli {
+    private static final int DEFAULT_BATCH_SIZE = 10_000;
+    private static final Pattern FILTER = Pattern.compile("(\\w+)\\s*(<=|>=|!=|=|<|>)\\s*(.*)");
+
+    private StoreCli() {
+    }
+
+    static int run(String[] args) {
+        try {
+            if (args.length >= 3 && args[0].equals("import")) {
+                int batchSize = DEFAULT_BATCH_SIZE;
+                if (args.length == 5 && args[3].equals("--batch")) {
+                    batchSize = Integer.parseInt(args[4]);
+                } else if (args.length != 3) {
+                    return usage();
+                }
+                if (batchSize <= 0) {
+                    return usage();
+                }
+                return importRows(format(args[1]), Paths.get(args[2]), batchSize);
+            }
+            if (args.length >= 3 && args[0].equals("export")) {
+                return exportRows(format(args[1]), args[2], Arrays.asList(args).subList(3, args.length));
+            }
+            return usage();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return usage();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int usage() {
+        System.err.println("Usage: CarStoreApp import <cars|customers|sales> <file.csv|file.jsonl> [--batch N]");
+        System.err.println("       CarStoreApp export <cars|customers|sales> <file.csv|file.jsonl|-> [column=value | column>=n ...]");
+        System.err.println("       CarStoreApp serve [port]     (HTTP API only)");
+        System.err.println("       CarStoreApp --api [port]     (GUI and HTTP API)");
+        return 2;
+    }
+
+    private static StoreFormat<?> format(String table) {
+        switch (table) {
+            case "cars": return StoreFormat.CARS;
+            case "customers": return StoreFormat.CUSTOMERS;
+            case "sales": return StoreFormat.SALES;
+            default: throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private static boolean isJson(String file) {
+        return file.endsWith(".jsonl") || file.endsWith(".json");
+    }
+
+    // Folds a pending change journal into the CSV the way the app does at
+    // startup, so the rows can then be streamed from the files alone. The
+    // table is only loaded into memory when there are journal entries.
+    private static <T> void settleJournal(StoreFormat<T> format) throws IOException {
+        ChangeJournal journal = new ChangeJournal(format.csvFile());
+        List<ChangeJournal.Entry> entries = new ArrayList<>();
+        journal.replay(entries::add);
+        if (entries.isEmpty()) {
+            journal.beginCompaction();
+            journal.finishCompaction();
+            return;
+        }
+        Repository<T> rows = new Repository<>(format::idOf);
+        forEachStored(format, row -> {
+            if (!rows.containsId(rows.idOf(row))) {
+                rows.add(row);
+            }
+        });
+        entries.forEach(entry -> PersistentTable.apply(format, rows, entry));
+        PersistentTable.writeCsv(Paths.get(format.csvFile()), format, rows.snapshot());
+        Files.deleteIfExists(Paths.get(format.snapshotFile()));
+        journal.beginCompaction();
+        journal.finishCompaction();
+        System.err.println("Applied " + entries.size() + " journal entries to " + format.csvFile());
+    }
+
+    // Streams the stored rows from the snapshot if it is current, otherwise
+    // from the CSV one line at a time. Does not include journal entries.
+    private static <T> void forEachStored(StoreFormat<T> format, RowSink<T> sink) throws IOException {
+        if (SnapshotFile.isCurrent(format)) {
+            try {
+                IOException[] failure = new IOException[1];
+                SnapshotFile.read(Paths.get(format.snapshotFile()), format, rows -> {
+                    for (T row : rows) {
+                        if (failure[0] == null) {
+                            try {
+                                sink.accept(row);
+                            } catch (IOException e) {
+                                failure[0] = e;
+                            }
+                        }
+                    }
+                });
+                if (failure[0] != null) {
+                    throw new UncheckedIOException(failure[0]);
+                }
+                return;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (IOException e) {
+                System.err.println("Ignoring snapshot " + format.snapshotFile() + ": " + e.getMessage());
+            }
+        }
+        Path csv = Paths.get(format.csvFile());
+        if (!Files.exists(csv)) {
+            return;
+        }
+        long skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                T row = line.isEmpty() ? null : format.parseLine(line);
+                if (row != null) {
+                    sink.accept(row);
+                } else if (!line.isEmpty()) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " malformed rows in " + format.csvFile());
+        }
+    }
+
+    private interface RowSink<T> {
+        void accept(T row) throws IOException;
+    }
+
+    private static final class Batch {
+        final long sequence;
+        final long firstLine;
+        final List<String> lines;
+
+        Batch(long sequence, long firstLine, List<String> lines) {
+            this.sequence = sequence;
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    private static final class ParsedBatch<T> {
+        final long sequence;
+        final List<T> rows = new ArrayList<>();
+        final List<String> rejects = new ArrayList<>();
+        final List<Long> rowLines = new ArrayList<>();
+        long malformed;
+        long invalid;
+
+        ParsedBatch(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Batch END_OF_INPUT = new Batch(-1, -1, Collections.emptyList());
+
+    private static <T> int importRows(StoreFormat<T> format, Path input, int batchSize) throws IOException {
+        if (!Files.isRegularFile(input)) {
+            throw new FileNotFoundException(input + " does not exist");
+        }
+        long started = System.nanoTime();
+        settleJournal(format);
+
+        Path target = Paths.get(format.csvFile());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Path rejectsFile = input.resolveSibling(input.getFileName() + ".rejects");
+        Set<String> ids = new HashSet<>();
+        Importer<T> importer;
+        try (BufferedWriter out = Files.newBufferedWriter(temp);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile)) {
+            forEachStored(format, row -> {
+                if (ids.add(format.idOf(row))) {
+                    out.write(format.toCsv(row));
+                    out.newLine();
+                }
+            });
+            importer = new Importer<>(format, isJson(input.toString()), referenceCheck(format), ids, out, rejects);
+            importer.run(input, batchSize);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(Paths.get(format.snapshotFile()));
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long rejected = importer.malformed + importer.invalid + importer.duplicates;
+        System.out.printf("Imported %,d of %,d rows into %s in %.1f s (%,.0f rows/s)%n",
+                importer.accepted, importer.read, target, seconds, importer.read / Math.max(seconds, 1e-9));
+        if (rejected > 0) {
+            System.out.printf("Rejected %,d rows (%,d malformed, %,d invalid, %,d duplicate IDs), see %s%n",
+                    rejected, importer.malformed, importer.invalid, importer.duplicates, rejectsFile);
+        } else {
+            Files.deleteIfExists(rejectsFile);
+        }
+        return 0;
+    }
+
+    // Sales must refer to stored cars and customers, the same rule the app
+    // enforces; the ID sets are only read, so parser threads share them.
+    private static <T> Function<T, String> referenceCheck(StoreFormat<T> format) throws IOException {
+        if (format != StoreFormat.SALES) {
+            return row -> null;
+        }
+        Set<String> carIds = storedIds(StoreFormat.CARS);
+        Set<String> customerIds = storedIds(StoreFormat.CUSTOMERS);
+        return row -> {
+            Sale sale = (Sale) row;
+            return ReferentialIntegrity.missingReferences(sale.getCarId(), sale.getCustomerId(), carIds, customerIds);
+        };
+    }
+
+    private static <T> Set<String> storedIds(StoreFormat<T> format) throws IOException {
+        settleJournal(format);
+        Set<String> ids = new HashSet<>();
+        forEachStored(format, row -> ids.add(format.idOf(row)));
+        return ids;
+    }
+
+    private static final class Importer<T> {
+        private final StoreFormat<T> format;
+        private final boolean json;
+        private final Function<T, String> references;
+        private final Set<String> ids;
+        private final BufferedWriter out;
+        private final BufferedWriter rejects;
+        private final int parsers = Runtime.getRuntime().availableProcessors();
+        // Each queue holds a couple of batches per parser: enough to keep
+        // every thread busy, little enough that memory stays flat.
+        private final BlockingQueue<Batch> toParse = new ArrayBlockingQueue<>(2 * parsers);
+        private final BlockingQueue<ParsedBatch<T>> toCommit = new ArrayBlockingQueue<>(2 * parsers);
+        private volatile Throwable failure;
+        private final String header;
+        long read;
+        long accepted;
+        long malformed;
+        long invalid;
+        long duplicates;
+
+        Importer(StoreFormat<T> format, boolean json, Function<T, String> references, Set<String> ids,
+                 BufferedWriter out, BufferedWriter rejects) {
+            this.format = format;
+            this.json = json;
+            this.references = references;
+            this.ids = ids;
+            this.out = out;
+            this.rejects = rejects;
+            StringJoiner names = new StringJoiner(",");
+            format.columns().forEach(column -> names.add(column.name));
+            this.header = names.toString();
+        }
+
+        void run(Path input, int batchSize) throws IOException {
+            ExecutorService threads = Executors.newFixedThreadPool(parsers + 1);
+            try {
+                for (int i = 0; i < parsers; i++) {
+                    threads.execute(this::parse);
+                }
+                Future<?> committer = threads.submit(this::commit);
+                readBatches(input, batchSize);
+                for (int i = 0; i < parsers; i++) {
+                    put(toParse, END_OF_INPUT);
+                }
+                committer.get();
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Import interrupted");
+                }
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+            } finally {
+                threads.shutdownNow();
+            }
+            if (failure != null) {
+                Throwable cause = failure;
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Import failed: " + cause, cause);
+            }
+        }
+
+        private void readBatches(Path input, int batchSize) throws IOException, InterruptedException {
+            try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                long sequence = 0;
+                long lineNumber = 0;
+                long firstLine = 1;
+                List<String> lines = new ArrayList<>(batchSize);
+                String line;
+                while ((line = reader.readLine()) != null && failure == null) {
+                    lineNumber++;
+                    if (lineNumber == 1 && !json && line.replace(" ", "").equals(header)) {
+                        firstLine = 2;
+                        continue;
+                    }
+                    lines.add(line);
+                    if (lines.size() == batchSize) {
+                        put(toParse, new Batch(sequence++, firstLine, lines));
+                        firstLine = lineNumber + 1;
+                        lines = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!lines.isEmpty()) {
+                    put(toParse, new Batch(sequence, firstLine, lines));
+                }
+            }
+        }
+
+        private void parse() {
+            try {
+                while (true) {
+                    Batch batch = toParse.take();
+                    ParsedBatch<T> parsed = new ParsedBatch<>(batch.sequence);
+                    if (batch != END_OF_INPUT) {
+                        for (int i = 0; i < batch.lines.size(); i++) {
+                            parseLine(batch.lines.get(i), batch.firstLine + i, parsed);
+                        }
+                    }
+                    put(toCommit, parsed);
+                    if (batch == END_OF_INPUT) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void parseLine(String line, long lineNumber, ParsedBatch<T> parsed) {
+            if (line.trim().isEmpty()) {
+                return;
+            }
+            T row;
+            try {
+                row = json ? format.fromValues(JsonLines.parse(format, line)) : format.parseLine(line);
+            } catch (IllegalArgumentException e) {
+                parsed.malformed++;
+                parsed.rejects.add(lineNumber + "\t" + e.getMessage() + "\t" + line);
+                return;
+            }
+            if (row == null) {
+                parsed.malformed++;
+                parsed.rejects.add(lineNumber + "\texpected " + fieldRange() + " fields\t" + line);
+                return;
+            }
+            String problem = format.validate(row);
+            if (problem == null) {
+                problem = references.apply(row);
+            }
+            if (problem != null) {
+                parsed.invalid++;
+                parsed.rejects.add(lineNumber + "\t" + problem + "\t" + line);
+                return;
+            }
+            parsed.rows.add(row);
+            parsed.rowLines.add(lineNumber);
+        }
+
+        private String fieldRange() {
+            int required = format.requiredFieldCount();
+            return required == format.fieldCount() ? String.valueOf(required) : required + " to " + format.fieldCount();
+        }
+
+        // Batches arrive in whatever order the parsers finish; they are
+        // written in file order so "first occurrence wins" is deterministic.
+        private void commit() {
+            Map<Long, ParsedBatch<T>> waiting = new HashMap<>();
+            long next = 0;
+            int finishedParsers = 0;
+            try {
+                while (finishedParsers < parsers) {
+                    ParsedBatch<T> parsed = toCommit.poll(100, TimeUnit.MILLISECONDS);
+                    if (parsed == null) {
+                        if (failure != null) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (parsed.sequence < 0) {
+                        finishedParsers++;
+                        continue;
+                    }
+                    waiting.put(parsed.sequence, parsed);
+                    for (ParsedBatch<T> ready; (ready = waiting.remove(next)) != null; next++) {
+                        write(ready);
+                    }
+                }
+                out.flush();
+                rejects.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void write(ParsedBatch<T> parsed) throws IOException {
+            for (String reject : parsed.rejects) {
+                rejects.write(reject);
+                rejects.newLine();
+            }
+            for (int i = 0; i < parsed.rows.size(); i++) {
+                T row = parsed.rows.get(i);
+                if (!ids.add(format.idOf(row))) {
+                    duplicates++;
+                    rejects.write(parsed.rowLines.get(i) + "\tduplicate ID " + format.idOf(row) + "\t" + format.toCsv(row));
+                    rejects.newLine();
+                    continue;
+                }
+                out.write(format.toCsv(row));
+                out.newLine();
+                accepted++;
+            }
+            read += parsed.rows.size() + parsed.malformed + parsed.invalid;
+            malformed += parsed.malformed;
+            invalid += parsed.invalid;
+            out.flush();
+        }
+
+        private void fail(Throwable error) {
+            if (failure == null) {
+                failure = error;
+            }
+        }
+
+        // Blocks while the queue is full, but gives up once another stage
+        // has failed so no thread waits forever on a dead consumer.
+        private <E> void put(BlockingQueue<E> queue, E item) throws InterruptedException {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (failure != null) {
+                    throw new InterruptedException("Import failed");
+                }
+            }
+        }
+    }
+
+    private static <T> int exportRows(StoreFormat<T> format, String output, List<String> filters) throws IOException {
+        Predicate<T> matches = row -> true;
+        for (String expression : filters) {
+            matches = matches.and(filter(format, expression));
+        }
+        boolean json = isJson(output);
+        long started = System.nanoTime();
+        settleJournal(format);
+
+        long[] counts = new long[2];
+        Writer target = output.equals("-")
+                ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                : Files.newBufferedWriter(Paths.get(output));
+        try (BufferedWriter out = new BufferedWriter(target)) {
+            if (!json) {
+                StringJoiner names = new StringJoiner(",");
+                format.columns().forEach(column -> names.add(column.name));
+                out.write(names.toString());
+                out.newLine();
+            }
+            Predicate<T> selected = matches;
+            forEachStored(format, row -> {
+                counts[0]++;
+                if (selected.test(row)) {
+                    out.write(json ? JsonLines.toJson(format, row) : format.toCsv(row));
+                    out.newLine();
+                    counts[1]++;
+                }
+            });
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.printf("Exported %,d of %,d %s in %.1f s (%,.0f rows/s)%n",
+                counts[1], counts[0], format.name(), seconds, counts[0] / Math.max(seconds, 1e-9));
+        return 0;
+    }
+
+    // column=value, column!=value, or a comparison; numeric columns compare
+    // as numbers and text columns alphabetically.
+    private static <T> Predicate<T> filter(StoreFormat<T> format, String expression) {
+        Matcher matcher = FILTER.matcher(expression);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Bad filter: " + expression);
+        }
+        int index = format.columnIndex(matcher.group(1));
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown column in filter: " + expression);
+        }
+        StoreFormat.Column<T> column = format.columns().get(index);
+        String operator = matcher.group(2);
+        String value = matcher.group(3).trim();
+        if (column.type == StoreFormat.NUMBER) {
+            double number;
+            try {
+                number = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number in filter: " + expression);
+            }
+            return row -> compares(Double.compare(column.number.applyAsDouble(row), number), operator);
+        }
+        return row -> compares(column.text.apply(row).compareTo(value), operator);
+    }
+
+    private static boolean compares(int comparison, String operator) {
+        switch (operator) {
+            case "=": return comparison == 0;
+            case "!=": return comparison != 0;
+            case "<": return comparison < 0;
+            case "<=": return comparison <= 0;
+            case ">": return comparison > 0;
+            default: return comparison >= 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+// Column layout of one stored table, shared by the CSV files, the change
+// journal and the binary snapshots. Column order is the CSV field order, so
+// one mapper builds entities from either kind of file.
+class StoreFormat<T> {
+    static final byte TEXT = 0;
+    static final byte DICTIONARY = 1;
+    static final byte NUMBER = 2;
+
+    static final StoreFormat<Car> CARS = new StoreFormat<Car>("cars",
+            row -> new Car(row.text(0), row.text(1), row.text(2), row.number(3), row.text(4),
+                    row.has(5) ? (long) row.number(5) : 0))
+            .text("id", Car::getId)
+            .dictionary("make", Car::getMake)
+            .dictionary("model", Car::getModel)
+            .number("price", Car::getPrice)
+            .dictionary("feature", Car::getFeature)
+            .time("listedAt", Car::getListedAt);
+
+    static final StoreFormat<Customer> CUSTOMERS = new StoreFormat<Customer>("customers",
+            row -> new Customer(row.text(0), row.text(1), row.text(2), row.text(3),
+                    row.has(4) ? (long) row.number(4) : 0))
+            .text("id", Customer::getId)
+            .text("name", Customer::getName)
+            .text("email", Customer::getEmail)
+            .text("phone", Customer::getPhone)
+            .time("joinedAt", Customer::getJoinedAt);
+
+    static final StoreFormat<Sale> SALES = new StoreFormat<Sale>("sales",
+            row -> new Sale(row.text(0), row.text(1), row.text(2), row.number(3),
+                    row.has(4) ? (long) row.number(4) : 0))
+            .text("saleId", Sale::getSaleId)
+            .text("carId", Sale::getCarId)
+            .text("customerId", Sale::getCustomerId)
+            .number("totalPrice", Sale::getTotalPrice)
+            .time("soldAt", Sale::getSoldAt);
+
+    static final class Column<T> {
+        final String name;
+        final byte type;
+        final Function<T, String> text;
+        final ToDoubleFunction<T> number;
+        // Epoch milliseconds, written as a whole number. Files from before
+        // the column existed leave it off, which reads as 0 (unknown).
+        final boolean time;
+
+        private Column(String name, byte type, Function<T, String> text, ToDoubleFunction<T> number,
+                       boolean time) {
+            this.name = name;
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.time = time;
+        }
+
+        String format(T row) {
+            if (type != NUMBER) {
+                return text.apply(row);
+            }
+            double value = number.applyAsDouble(row);
+            return time ? Long.toString((long) value) : String.valueOf(value);
+        }
+    }
+
+    private final String name;
+    private final CsvParser.RowMapper<T> mapper;
+    private final List<Column<T>> columns = new ArrayList<>();
+
+    private StoreFormat(String name, CsvParser.RowMapper<T> mapper) {
+        this.name = name;
+        this.mapper = mapper;
+    }
+
+    private StoreFormat<T> text(String column, Function<T, String> getter) {
+        columns.add(new Column<>(column, TEXT, getter, null, false));
+        return this;
+    }
+
+    // Low-cardinality text; snapshots store it once per distinct value.
+    private StoreFormat<T> dictionary(String column, Function<T, String> getter) {
+        columns.add(new Column<>(column, DICTIONARY, getter, null, false));
+        return this;
+    }
+
+    private StoreFormat<T> number(String column, ToDoubleFunction<T> getter) {
+        columns.add(new Column<>(column, NUMBER, null, getter, false));
+        return this;
+    }
+
+    // Must come after every other column, so older files that lack it
+    // still parse.
+    private StoreFormat<T> time(String column, ToLongFunction<T> getter) {
+        columns.add(new Column<>(column, NUMBER, null, getter::applyAsLong, true));
+        return this;
+    }
+
+    String name() {
+        return name;
+    }
+
+    String csvFile() {
+        return name + ".csv";
+    }
+
+    String snapshotFile() {
+        return name + ".snapshot";
+    }
+
+    int fieldCount() {
+        return columns.size();
+    }
+
+    // Fields a CSV line needs at least; the time column may be left off.
+    int requiredFieldCount() {
+        int required = columns.size();
+        while (required > 0 && columns.get(required - 1).time) {
+            required--;
+        }
+        return required;
+    }
+
+    List<Column<T>> columns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    CsvParser.RowMapper<T> mapper() {
+        return mapper;
+    }
+
+    // The first column is every table's primary key.
+    String idOf(T row) {
+        return columns.get(0).format(row);
+    }
+
+    // Returns 0 for tables without a time column and rows without a time.
+    long timeOf(T row) {
+        Column<T> column = timeColumn();
+        return column == null ? 0 : (long) column.number.applyAsDouble(row);
+    }
+
+    // Stamps a row that has no time yet, e.g. one posted without it.
+    T withTime(T row, long millis) {
+        Column<T> column = timeColumn();
+        if (column == null || timeOf(row) != 0) {
+            return row;
+        }
+        String[] values = new String[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i) == column ? Long.toString(millis) : columns.get(i).format(row);
+        }
+        return fromValues(values);
+    }
+
+    private Column<T> timeColumn() {
+        Column<T> last = columns.get(columns.size() - 1);
+        return last.time ? last : null;
+    }
+
+    int columnIndex(String name) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Builds a row from field values in column order, e.g. from a JSON line.
+    T fromValues(String[] values) {
+        return mapper.map(new RowFields() {
+            @Override
+            public String text(int field) {
+                return values[field] == null ? null : values[field].trim();
+            }
+
+            @Override
+            public boolean has(int field) {
+                return values[field] != null;
+            }
+
+            @Override
+            public double number(int field) {
+                if (values[field] == null) {
+                    throw new NumberFormatException("missing " + columns.get(field).name);
+                }
+                return Double.parseDouble(values[field].trim());
+            }
+        });
+    }
+
+    // Returns why the row cannot be stored, or null if it can. The CSV files
+    // have no quoting, so text must not contain separators or line breaks.
+    String validate(T row) {
+        for (Column<T> column : columns) {
+            if (column.type == NUMBER) {
+                double value = column.number.applyAsDouble(row);
+                if (!Double.isFinite(value) || value < 0) {
+                    return column.name + " must be a non-negative number";
+                }
+            } else {
+                String value = column.text.apply(row);
+                if (value == null || value.trim().isEmpty()) {
+                    return column.name + " is empty";
+                }
+                if (value.indexOf(',') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                    return column.name + " contains a comma or line break";
+                }
+            }
+        }
+        return null;
+    }
+
+    String toCsv(T row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(columns.get(i).format(row));
+        }
+        return line.toString();
+    }
+
+    T parseLine(String line) {
+        try {
+            return CsvParser.parseLine(line, requiredFieldCount(), columns.size(), mapper);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Returns the number of lines skipped, as CsvParser.parse does.
+    long parseCsv(Path file, Consumer<List<T>> consumer) throws IOException {
+        return CsvParser.parse(file, requiredFieldCount(), columns.size(), mapper, consumer);
+    }
+}
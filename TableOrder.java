@@ -0,0 +1,122 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableColumn;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Map;
+
+// Sorting and range filters for a table, both backed by OrderedIndexes.
+// Clicking the header of an indexed column sorts by it ascending, then
+// descending, then back to the repository order; other columns ignore the
+// click. The From/To fields filter on one numeric column as you type.
+class TableOrder<T> {
+    private static final int DEBOUNCE_MILLIS = 150;
+    private static final String ASCENDING = " \u25B2";
+    private static final String DESCENDING = " \u25BC";
+
+    private final JTable table;
+    private final RepositoryTableModel<T> tableModel;
+    private final Map<Integer, OrderedIndex<T, ?>> indexes;
+    private int sortColumn = -1;
+    private boolean descending;
+
+    private TableOrder(JTable table, RepositoryTableModel<T> tableModel, Map<Integer, OrderedIndex<T, ?>> indexes) {
+        this.table = table;
+        this.tableModel = tableModel;
+        this.indexes = indexes;
+    }
+
+    // indexes maps model column numbers to the index that sorts them.
+    static <T> void sortOnHeaderClick(JTable table, RepositoryTableModel<T> tableModel,
+                                      Map<Integer, OrderedIndex<T, ?>> indexes) {
+        TableOrder<T> order = new TableOrder<>(table, tableModel, indexes);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    order.clicked(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
+    }
+
+    static <T> void filterOnRange(JTextField fromField, JTextField toField, RepositoryTableModel<T> tableModel,
+                                  OrderedIndex<T, Double> index) {
+        Color normal = fromField.getForeground();
+        Timer timer = new Timer(DEBOUNCE_MILLIS, e -> {
+            Double from = parseAmount(fromField, normal);
+            Double to = parseAmount(toField, normal);
+            if (from != null && Double.isNaN(from) || to != null && Double.isNaN(to)) {
+                return;
+            }
+            tableModel.filterBy(index, from, to);
+        });
+        timer.setRepeats(false);
+        DocumentListener listener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+        };
+        fromField.getDocument().addDocumentListener(listener);
+        toField.getDocument().addDocumentListener(listener);
+    }
+
+    // Accepts "40000", "$40,000" and "40k". null for a blank field, NaN
+    // (and red text) for anything else.
+    private static Double parseAmount(JTextField field, Color normal) {
+        String text = field.getText().trim().replace("$", "").replace(",", "");
+        field.setForeground(normal);
+        if (text.isEmpty()) {
+            return null;
+        }
+        double scale = 1;
+        if (text.endsWith("k") || text.endsWith("K")) {
+            scale = 1000;
+            text = text.substring(0, text.length() - 1);
+        }
+        try {
+            return Double.parseDouble(text) * scale;
+        } catch (NumberFormatException e) {
+            field.setForeground(Color.RED);
+            return Double.NaN;
+        }
+    }
+
+    private void clicked(int column) {
+        OrderedIndex<T, ?> index = indexes.get(column);
+        if (index == null) {
+            return;
+        }
+        if (column != sortColumn) {
+            sortColumn = column;
+            descending = false;
+        } else if (!descending) {
+            descending = true;
+        } else {
+            sortColumn = -1;
+            index = null;
+        }
+        tableModel.sortBy(index, descending);
+        for (int i = 0; i < table.getColumnCount(); i++) {
+            TableColumn tableColumn = table.getColumnModel().getColumn(i);
+            int modelColumn = tableColumn.getModelIndex();
+            String name = tableModel.getColumnName(modelColumn);
+            tableColumn.setHeaderValue(modelColumn != sortColumn ? name : name + (descending ? DESCENDING : ASCENDING));
+        }
+        table.getTableHeader().repaint();
+    }
+}
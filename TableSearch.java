@@ -0,0 +1,69 @@
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+// Wires a Search field to a table: keystrokes restart a short timer, the
+// query runs against the index on a worker thread, and the results become
+// the table's view. Rows added while a query is active re-run it.
+class TableSearch<T> implements DocumentListener {
+    private static final int DEBOUNCE_MILLIS = 150;
+
+    private final JTextField searchField;
+    private final SearchIndex<T> index;
+    private final RepositoryTableModel<T> tableModel;
+    private final Timer timer;
+    private String activeQuery = "";
+
+    private TableSearch(JTextField searchField, ChangeFeed<T> changes, SearchIndex<T> index,
+                        RepositoryTableModel<T> tableModel) {
+        this.searchField = searchField;
+        this.index = index;
+        this.tableModel = tableModel;
+        this.timer = new Timer(DEBOUNCE_MILLIS, e -> runQuery());
+        timer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(this);
+        changes.subscribe(this::changed);
+    }
+
+    static <T> void install(JTextField searchField, ChangeFeed<T> changes, SearchIndex<T> index,
+                            RepositoryTableModel<T> tableModel) {
+        new TableSearch<>(searchField, changes, index, tableModel);
+    }
+
+    private void runQuery() {
+        String query = searchField.getText().trim();
+        activeQuery = query;
+        if (query.isEmpty()) {
+            tableModel.setView(null);
+            return;
+        }
+        BackgroundTasks.query(() -> Metrics.time("query.search", () -> index.search(query)), results -> {
+            if (query.equals(activeQuery)) {
+                tableModel.setView(results);
+            }
+        });
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        timer.restart();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        timer.restart();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        timer.restart();
+    }
+
+    // Unlike typing, a stream of changes must not keep pushing the query
+    // back, so it only starts the timer.
+    private void changed(ChangeFeed.Batch<T> batch) {
+        if (!activeQuery.isEmpty() && (batch.inserted > 0 || !batch.complete) && !timer.isRunning()) {
+            timer.start();
+        }
+    }
+}
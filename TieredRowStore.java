@@ -0,0 +1,472 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Row store for tables that do not fit in the heap. Only the IDs, their
+// order and the secondary index keys stay in memory; the rows themselves
+// live in a scratch file and the most recently read ones in a RowCache.
+// The scratch file is rebuilt from the CSV or snapshot on every start and
+// deleted on exit, so the CSV and its journal stay the only durable copy.
+//
+// Records are appended: an edit writes a new record and leaves the old one
+// as garbage, which is squeezed out once it outweighs the live rows. Each
+// record is the row's columns in StoreFormat order, numbers as 8-byte
+// doubles and text as a length-prefixed UTF-8 string. Appends collect in a
+// buffer so a bulk load does not make one write call per row.
+//
+// Like every RowStore this is only called under its repository's lock, so
+// reads may run in parallel and writes run alone. Snapshots are the
+// exception: they read the scratch file without the lock, which works
+// because records are never overwritten in place (see Snapshot).
+class TieredRowStore<T> implements RowStore<T> {
+    private static final int BUFFER_BYTES = 64 << 10;
+    private static final long MIN_COMPACT_BYTES = 64L << 20;
+    // A location is the record's file offset and length packed into a long.
+    private static final int LENGTH_BITS = 24;
+    private static final long MAX_RECORD_BYTES = (1L << LENGTH_BITS) - 1;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // An open scratch file. After a compaction the old file stays open, and
+    // on disk, until no snapshot that reads it is left.
+    private static final class Scratch {
+        final FileChannel channel;
+
+        Scratch(FileChannel channel) {
+            this.channel = channel;
+            CLEANER.register(this, () -> close(channel));
+        }
+    }
+
+    // The rows as they were when it was taken. Only their record locations
+    // are copied, plus the few unflushed bytes of the tail; the rows are
+    // read from the scratch file as they are used. Edits append new records
+    // and leave the old ones in place, and a compaction writes a new file,
+    // so nothing a snapshot points at is ever overwritten.
+    private static final class Snapshot<T> extends AbstractList<T> {
+        private final StoreFormat<T> format;
+        private final Scratch scratch;
+        private final long[] locations;
+        private final long flushed;
+        private final byte[] tail;
+
+        Snapshot(StoreFormat<T> format, Scratch scratch, long[] locations, long flushed, byte[] tail) {
+            this.format = format;
+            this.scratch = scratch;
+            this.locations = locations;
+            this.flushed = flushed;
+            this.tail = tail;
+        }
+
+        @Override
+        public int size() {
+            return locations.length;
+        }
+
+        @Override
+        public T get(int index) {
+            long location = locations[index];
+            long offset = location >>> LENGTH_BITS;
+            if (offset >= flushed) {
+                return decode(format, ByteBuffer.wrap(tail, (int) (offset - flushed), length(location)));
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(length(location));
+            readRecord(scratch.channel, bytes, offset);
+            return decode(format, bytes.flip());
+        }
+
+        // Reads the file a buffer at a time, as records of rows next to
+        // each other in the table mostly sit next to each other on disk.
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private final byte[] window = new byte[BUFFER_BYTES];
+                private long windowStart;
+                private int windowLength;
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < locations.length;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long location = locations[next];
+                    long offset = location >>> LENGTH_BITS;
+                    int length = length(location);
+                    if (offset >= flushed || length > window.length) {
+                        return get(next++);
+                    }
+                    next++;
+                    if (offset < windowStart || offset + length > windowStart + windowLength) {
+                        windowStart = offset;
+                        windowLength = (int) Math.min(window.length, flushed - offset);
+                        readRecord(scratch.channel, ByteBuffer.wrap(window, 0, windowLength), offset);
+                    }
+                    return decode(format, ByteBuffer.wrap(window, (int) (offset - windowStart), length));
+                }
+            };
+        }
+    }
+
+    private static final class KeyIndex<T> implements Repository.Index<T> {
+        private final Function<T, String> keyOf;
+        private final Map<String, List<String>> ids = new HashMap<>();
+        private final TieredRowStore<T> store;
+
+        private KeyIndex(Function<T, String> keyOf, TieredRowStore<T> store) {
+            this.keyOf = keyOf;
+            this.store = store;
+        }
+
+        @Override
+        public List<T> find(String key) {
+            List<String> matches = ids.get(key);
+            if (matches == null) {
+                return Collections.emptyList();
+            }
+            List<T> rows = new ArrayList<>(matches.size());
+            for (String id : matches) {
+                rows.add(store.findById(id));
+            }
+            return rows;
+        }
+
+        @Override
+        public int count(String key) {
+            List<String> matches = ids.get(key);
+            return matches == null ? 0 : matches.size();
+        }
+
+        private void add(String id, T row) {
+            ids.computeIfAbsent(keyOf.apply(row), key -> new ArrayList<>(2)).add(id);
+        }
+
+        private void remove(String id, T row) {
+            String key = keyOf.apply(row);
+            List<String> matches = ids.get(key);
+            if (matches != null) {
+                matches.remove(id);
+                if (matches.isEmpty()) {
+                    ids.remove(key);
+                }
+            }
+        }
+    }
+
+    private final StoreFormat<T> format;
+    private final Path file;
+    private final RowCache<T> cache;
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final Map<String, Long> locations = new HashMap<>();
+    private final List<KeyIndex<T>> indexes = new ArrayList<>();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final ByteBuffer tail = ByteBuffer.allocate(BUFFER_BYTES);
+    private Scratch scratch;
+    // Whether a snapshot reads the current scratch file.
+    private boolean scratchShared;
+    // Bytes written to the file; records at or past this are in the tail.
+    private long flushed;
+    private long garbageBytes;
+    private int compactions;
+
+    TieredRowStore(StoreFormat<T> format, Path file, int cachedRows, long idleTime, TimeUnit unit) {
+        this.format = format;
+        this.file = file;
+        this.cache = new RowCache<>(cachedRows, idleTime, unit);
+        this.scratch = new Scratch(open(file));
+    }
+
+    RowCache.Stats cacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public T get(int position) {
+        return findById(ids.get(position));
+    }
+
+    @Override
+    public T findById(String id) {
+        T row = cache.get(id);
+        if (row != null) {
+            return row;
+        }
+        Long location = locations.get(id);
+        if (location == null) {
+            return null;
+        }
+        row = read(location);
+        cache.put(id, row);
+        return row;
+    }
+
+    @Override
+    public boolean containsId(String id) {
+        return locations.containsKey(id);
+    }
+
+    @Override
+    public int positionOf(String id) {
+        Integer position = positions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public Repository.Index<T> addIndex(Function<T, String> keyOf) {
+        KeyIndex<T> index = new KeyIndex<>(keyOf, this);
+        for (String id : ids) {
+            index.add(id, read(locations.get(id)));
+        }
+        indexes.add(index);
+        return index;
+    }
+
+    // Written rows go into the cache too: the repository reads a row back
+    // right after writing it, and new rows are the likeliest to be looked at.
+    @Override
+    public void add(T row) {
+        String id = format.idOf(row);
+        long location = append(row);
+        ids.add(id);
+        positions.put(id, ids.size() - 1);
+        locations.put(id, location);
+        cache.put(id, row);
+        indexes.forEach(index -> index.add(id, row));
+    }
+
+    @Override
+    public T set(int position, T row) {
+        String oldId = ids.get(position);
+        String newId = format.idOf(row);
+        T previous = findById(oldId);
+        garbageBytes += length(locations.remove(oldId));
+        cache.invalidate(oldId);
+        ids.set(position, newId);
+        positions.remove(oldId);
+        positions.put(newId, position);
+        locations.put(newId, append(row));
+        cache.put(newId, row);
+        for (KeyIndex<T> index : indexes) {
+            index.remove(oldId, previous);
+            index.add(newId, row);
+        }
+        compactIfWasteful();
+        return previous;
+    }
+
+    @Override
+    public T remove(int position) {
+        String id = ids.get(position);
+        T removed = findById(id);
+        ids.remove(position);
+        positions.remove(id);
+        for (int i = position; i < ids.size(); i++) {
+            positions.put(ids.get(i), i);
+        }
+        garbageBytes += length(locations.remove(id));
+        cache.invalidate(id);
+        indexes.forEach(index -> index.remove(id, removed));
+        compactIfWasteful();
+        return removed;
+    }
+
+    // Reads around the cache so a full scan does not push out the hot rows.
+    @Override
+    public List<T> toList() {
+        return new ArrayList<>(snapshot());
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return snapshot().stream();
+    }
+
+    // Holds eight bytes per row rather than the rows, so compaction, exports
+    // and reports can go through a table larger than the heap.
+    @Override
+    public List<T> snapshot() {
+        long[] rowLocations = new long[ids.size()];
+        for (int i = 0; i < rowLocations.length; i++) {
+            rowLocations[i] = locations.get(ids.get(i));
+        }
+        byte[] unflushed = new byte[tail.position()];
+        tail.get(0, unflushed);
+        scratchShared = true;
+        return new Snapshot<>(format, scratch, rowLocations, flushed, unflushed);
+    }
+
+    private static FileChannel open(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + file, e);
+        }
+    }
+
+    private long append(T row) {
+        try {
+            recordBytes.reset();
+            for (StoreFormat.Column<T> column : format.columns()) {
+                if (column.type == StoreFormat.NUMBER) {
+                    record.writeDouble(column.number.applyAsDouble(row));
+                } else {
+                    byte[] text = column.text.apply(row).getBytes(StandardCharsets.UTF_8);
+                    record.writeInt(text.length);
+                    record.write(text);
+                }
+            }
+            int length = recordBytes.size();
+            if (length > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("Row " + format.idOf(row) + " is too large to store");
+            }
+            if (length > tail.remaining()) {
+                flush();
+            }
+            long offset = flushed + tail.position();
+            if (length > tail.capacity()) {
+                writeFully(scratch.channel, ByteBuffer.wrap(recordBytes.toByteArray()), offset);
+                flushed += length;
+            } else {
+                tail.put(recordBytes.toByteArray());
+            }
+            return offset << LENGTH_BITS | length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing " + file, e);
+        }
+    }
+
+    private void flush() throws IOException {
+        tail.flip();
+        int length = tail.remaining();
+        writeFully(scratch.channel, tail, flushed);
+        flushed += length;
+        tail.clear();
+    }
+
+    private T read(long location) {
+        byte[] bytes = new byte[length(location)];
+        long offset = location >>> LENGTH_BITS;
+        if (offset >= flushed) {
+            tail.get((int) (offset - flushed), bytes);
+        } else {
+            readRecord(scratch.channel, ByteBuffer.wrap(bytes), offset);
+        }
+        return decode(format, ByteBuffer.wrap(bytes));
+    }
+
+    private static void readRecord(FileChannel channel, ByteBuffer bytes, long offset) {
+        try {
+            readFully(channel, bytes, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading the row file", e);
+        }
+    }
+
+    private static <T> T decode(StoreFormat<T> format, ByteBuffer in) {
+        List<StoreFormat.Column<T>> columns = format.columns();
+        String[] texts = new String[columns.size()];
+        double[] numbers = new double[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).type == StoreFormat.NUMBER) {
+                numbers[c] = in.getDouble();
+            } else {
+                int length = in.getInt();
+                texts[c] = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+        }
+        return format.mapper().map(new RowFields() {
+            @Override
+            public String text(int field) {
+                return texts[field];
+            }
+
+            @Override
+            public double number(int field) {
+                return numbers[field];
+            }
+        });
+    }
+
+    private static int length(Long location) {
+        return location == null ? 0 : (int) (location & MAX_RECORD_BYTES);
+    }
+
+    // Copies the live records, in table order, to a fresh file once the
+    // garbage is larger than they are. Each copy gets a new name, since on
+    // some systems the old file only goes away when its channel is closed.
+    private void compactIfWasteful() {
+        long total = flushed + tail.position();
+        if (garbageBytes < MIN_COMPACT_BYTES || garbageBytes < total - garbageBytes) {
+            return;
+        }
+        try {
+            flush();
+            FileChannel compacted = open(file.resolveSibling(file.getFileName() + "." + ++compactions));
+            long offset = 0;
+            for (String id : ids) {
+                long location = locations.get(id);
+                ByteBuffer bytes = ByteBuffer.allocate(length(location));
+                readFully(scratch.channel, bytes, location >>> LENGTH_BITS);
+                bytes.flip();
+                writeFully(compacted, bytes, offset);
+                locations.put(id, offset << LENGTH_BITS | bytes.limit());
+                offset += bytes.limit();
+            }
+            if (!scratchShared) {
+                scratch.channel.close();
+            }
+            scratch = new Scratch(compacted);
+            scratchShared = false;
+            flushed = offset;
+            garbageBytes = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error compacting " + file, e);
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Deleted on exit at the latest.
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
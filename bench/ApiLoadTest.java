@@ -0,0 +1,147 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Load test for ApiServer over localhost:
+//
+//   java ApiLoadTest [clients] [seconds] [base URL]
+//
+// Without a URL it starts a server in this JVM over generated data. Each
+// client sends requests back to back: 80% car lookups by ID, 10% car pages,
+// 5% sales by customer and 5% new sales. Prints requests per second and
+// latency percentiles.
+public class ApiLoadTest {
+    private static final int CARS = 100_000;
+    private static final int CUSTOMERS = 50_000;
+    private static final int SALES = 500_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ApiServer server = null;
+        String base;
+        if (args.length > 2) {
+            base = args[2];
+        } else {
+            server = startServer();
+            base = "http://localhost:" + server.port() + "/api/";
+        }
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        AtomicLong saleIds = new AtomicLong(10_000_000);
+
+        // Warm up the server's JIT before measuring.
+        run(client, base, clients, 5, saleIds);
+        Result result = run(client, base, clients, seconds, saleIds);
+
+        long[] latencies = result.latencies;
+        Arrays.sort(latencies);
+        System.out.printf("%d clients, %d s: %,d requests, %,.0f requests/s, %d errors%n", clients, seconds,
+                latencies.length, latencies.length / (double) seconds, result.errors);
+        System.out.printf("latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static final class Result {
+        long[] latencies;
+        long errors;
+    }
+
+    private static Result run(HttpClient client, String base, int clients, int seconds, AtomicLong saleIds) {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<CompletableFuture<long[]>> workers = new ArrayList<>();
+        AtomicLong errors = new AtomicLong();
+        for (int c = 0; c < clients; c++) {
+            workers.add(CompletableFuture.supplyAsync(() -> {
+                long[] latencies = new long[1 << 16];
+                int count = 0;
+                while (System.nanoTime() < end) {
+                    HttpRequest request = nextRequest(base, saleIds);
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(latencies, count);
+            }, command -> new Thread(command).start()));
+        }
+        Result result = new Result();
+        result.latencies = workers.stream().map(CompletableFuture::join).flatMapToLong(Arrays::stream).toArray();
+        result.errors = errors.get();
+        return result;
+    }
+
+    private static HttpRequest nextRequest(String base, AtomicLong saleIds) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int kind = random.nextInt(100);
+        if (kind < 80) {
+            return HttpRequest.newBuilder(URI.create(base + "cars/" + random.nextInt(CARS))).build();
+        }
+        if (kind < 90) {
+            return HttpRequest.newBuilder(URI.create(base + "cars?offset=" + random.nextInt(CARS) + "&limit=50")).build();
+        }
+        if (kind < 95) {
+            return HttpRequest.newBuilder(URI.create(base + "sales?customerId=" + random.nextInt(CUSTOMERS))).build();
+        }
+        String sale = "{\"saleId\":\"" + saleIds.incrementAndGet() + "\",\"carId\":\"" + random.nextInt(CARS)
+                + "\",\"customerId\":\"" + random.nextInt(CUSTOMERS) + "\",\"totalPrice\":25000}";
+        return HttpRequest.newBuilder(URI.create(base + "sales"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(sale)).build();
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+
+    // The same wiring as CarStoreApp, over generated rows.
+    private static ApiServer startServer() throws Exception {
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        Repository<Car> cars = new Repository<>(Car::getId, new ListRowStore<>(Car::getId), lock);
+        Repository<Customer> customers = new Repository<>(Customer::getId, new ListRowStore<>(Customer::getId), lock);
+        Repository<Sale> sales = new Repository<>(Sale::getSaleId, new SaleColumnStore(), lock);
+        Repository.Index<Car> carsByMake = cars.addIndex(Car::getMake);
+        Repository.Index<Sale> salesByCar = sales.addIndex(Sale::getCarId);
+        Repository.Index<Sale> salesByCustomer = sales.addIndex(Sale::getCustomerId);
+        for (int i = 0; i < CARS; i++) {
+            cars.add(new Car(Integer.toString(i), "Make" + i % 40, "Model" + i % 400, 20_000 + i % 50_000, "Feature"));
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(new Customer(Integer.toString(i), "Customer " + i, "c" + i + "@example.com", "555-" + i));
+        }
+        for (int i = 0; i < SALES; i++) {
+            sales.add(new Sale(Integer.toString(i), Integer.toString(i % CARS), Integer.toString(i % CUSTOMERS), 25_000));
+        }
+        new ReferentialIntegrity(cars, customers, sales, salesByCar, salesByCustomer).startEnforcing();
+        SearchIndex<Car> carSearch = new SearchIndex<>(cars, Car::getId, Car::getMake, Car::getModel);
+        ApiServer server = new ApiServer(0, CompletableFuture.completedFuture(null),
+                new ApiServer.Resource<>(StoreFormat.CARS, cars).filter("make", carsByMake).search(carSearch),
+                new ApiServer.Resource<>(StoreFormat.CUSTOMERS, customers),
+                new ApiServer.Resource<>(StoreFormat.SALES, sales)
+                        .filter("carId", salesByCar).filter("customerId", salesByCustomer));
+        server.start();
+        return server;
+    }
+}
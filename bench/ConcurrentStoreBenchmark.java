@@ -0,0 +1,164 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Repository throughput with several threads at once: ID lookups,
+// compare-and-set price edits, and a 9:1 mix of the two. main first runs a
+// stress check for lost updates, then the benchmarks at 1, 2, 4, ... threads
+// up to the number of cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentStoreBenchmark {
+    private static final int CARS = 100_000;
+    private static final int FILLER = 10_000;
+
+    private Repository<Car> cars;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cars = carRepository(CARS);
+    }
+
+    private static Repository<Car> carRepository(int count) {
+        Repository<Car> cars = new Repository<>(Car::getId);
+        for (int i = 0; i < count; i++) {
+            cars.add(new Car(Integer.toString(i), "Make" + i % 20, "Model" + i % 50, 20_000, "Feature"));
+        }
+        return cars;
+    }
+
+    private static String randomId(int count) {
+        return Integer.toString(ThreadLocalRandom.current().nextInt(count));
+    }
+
+    // Adds one to the car's price, retrying until no other writer got in
+    // between; returns the number of retries.
+    private static int addOne(Repository<Car> cars, String id) {
+        for (int retries = 0; ; retries++) {
+            Repository.Versioned<Car> read = cars.findVersioned(id);
+            Car car = read.row;
+            Car bumped = new Car(car.getId(), car.getMake(), car.getModel(), car.getPrice() + 1, car.getFeature());
+            if (cars.compareAndSet(id, read.version, bumped)) {
+                return retries;
+            }
+        }
+    }
+
+    @Benchmark
+    public Car lookup() {
+        return cars.findById(randomId(CARS));
+    }
+
+    @Benchmark
+    public int casUpdate() {
+        return addOne(cars, randomId(CARS));
+    }
+
+    @Benchmark
+    public Object mixed() {
+        return ThreadLocalRandom.current().nextInt(10) == 0 ? (Object) casUpdate() : lookup();
+    }
+
+    public static void main(String[] args) throws RunnerException, InterruptedException {
+        stressCheck();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentStoreBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    // Many writers bump the prices of a few hot cars while others insert and
+    // delete rows around them, moving every position. With compare-and-set
+    // every increment must survive; blind read-then-update loses some.
+    private static void stressCheck() throws InterruptedException {
+        int writers = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        int increments = 20_000;
+        int hotCars = 16;
+
+        Repository<Car> cars = stressRepository(hotCars);
+        AtomicLong retries = new AtomicLong();
+        runThreads(writers, increments, cars, () -> retries.addAndGet(addOne(cars, randomId(hotCars))));
+        long expected = hotCars * 20_000L + (long) writers * increments;
+        long actual = totalPrice(cars);
+        System.out.printf("compare-and-set: %,d increments, %,d retries, total %s%n", (long) writers * increments,
+                retries.get(), actual == expected ? "correct" : "WRONG (" + (expected - actual) + " lost)");
+        if (actual != expected) {
+            throw new AssertionError("Lost updates with compare-and-set");
+        }
+
+        Repository<Car> blind = stressRepository(hotCars);
+        runThreads(writers, increments, blind, () -> {
+            String id = randomId(hotCars);
+            Car car = blind.findById(id);
+            blind.update(id, new Car(id, car.getMake(), car.getModel(), car.getPrice() + 1, car.getFeature()));
+        });
+        System.out.printf("blind updates:   %,d of %,d increments lost%n", expected - totalPrice(blind),
+                (long) writers * increments);
+    }
+
+    // Filler rows sit in front of the hot cars, so removing them shifts the
+    // hot cars' positions.
+    private static Repository<Car> stressRepository(int hotCars) {
+        Repository<Car> cars = new Repository<>(Car::getId);
+        for (int i = 0; i < FILLER; i++) {
+            cars.add(new Car("filler-" + i, "Filler", "Filler", 1, "Filler"));
+        }
+        for (int i = 0; i < hotCars; i++) {
+            cars.add(new Car(Integer.toString(i), "Make", "Model", 20_000, "Feature"));
+        }
+        return cars;
+    }
+
+    private static void runThreads(int writers, int increments, Repository<Car> cars, Runnable step)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < increments; i++) {
+                    step.run();
+                }
+            }));
+        }
+        // Churn: rows are removed in front of the hot cars and added and
+        // removed behind them.
+        Thread churn = new Thread(() -> {
+            for (int i = 0; !Thread.currentThread().isInterrupted(); i++) {
+                String id = "churn-" + i;
+                cars.add(new Car(id, "Filler", "Filler", 1, "Filler"));
+                cars.removeById(id);
+                if (i % 16 == 0 && i / 16 < FILLER) {
+                    cars.removeById("filler-" + i / 16);
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        churn.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        churn.interrupt();
+        churn.join();
+    }
+
+    private static long totalPrice(Repository<Car> cars) {
+        return Math.round(cars.stream().filter(car -> !car.getMake().equals("Filler"))
+                .mapToDouble(Car::getPrice).sum());
+    }
+}
@@ -0,0 +1,68 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Rows per second for sales.csv: the original readLine()/split() loader
+// against CsvParser on one thread and across all cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class CsvLoadBenchmark {
+    private static final int ROWS = 1_000_000;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws IOException {
+        file = Files.createTempFile("sales-bench", ".csv");
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(i + ", " + random.nextInt(100_000) + ", " + random.nextInt(50_000) + ", "
+                        + (10_000 + random.nextInt(80_000)) + "." + random.nextInt(100));
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readLineSplit(Blackhole blackhole) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] data = line.split(",");
+                if (data.length == 4) {
+                    blackhole.consume(new Sale(data[0], data[1], data[2], Double.parseDouble(data[3])));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mappedSingleThread(Blackhole blackhole) throws IOException {
+        CsvParser.parse(file, 4, StoreFormat.SALES.mapper(), 1, blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void mappedParallel(Blackhole blackhole) throws IOException {
+        CsvParser.parse(file, 4, StoreFormat.SALES.mapper(), blackhole::consume);
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.SplittableRandom;
+import java.util.function.LongFunction;
+
+// Writes cars.csv, customers.csv and sales.csv in the app's own format:
+//
+//   java DataGenerator <sales rows> [directory] [seed]
+//
+// There is one car for every 10 sales and one customer for every 4, at
+// least 10 of each. Every row is derived from its ID and the seed, so the
+// files stream out in constant memory at any size and the same seed gives
+// the same files on the same day. Sales reference existing cars and
+// customers; a few cars take most of the sales, and each sells at its list
+// price less a dealer discount of up to 8%. Sales are spread evenly over the
+// two years before today in sale ID order, and cars are listed and
+// customers join over the same span starting three months earlier. About 3% of customers are the
+// same person as an earlier one, entered again with different spacing,
+// email case or phone format.
+public class DataGenerator {
+    private static final String[][] MODELS = {
+            {"Toyota", "Camry", "24000"}, {"Toyota", "Corolla", "21000"}, {"Toyota", "RAV4", "29000"},
+            {"Honda", "Civic", "23000"}, {"Honda", "Accord", "28000"}, {"Honda", "CR-V", "30000"},
+            {"Ford", "Mustang", "35000"}, {"Ford", "F-150", "42000"}, {"Ford", "Escape", "28000"},
+            {"Tesla", "Model S", "80000"}, {"Tesla", "Model 3", "42000"}, {"Tesla", "Model Y", "50000"},
+            {"BMW", "X5", "60000"}, {"BMW", "3 Series", "44000"}, {"Audi", "A4", "40000"},
+            {"Audi", "Q5", "45000"}, {"Kia", "Sportage", "27000"}, {"Hyundai", "Elantra", "22000"},
+            {"Mazda", "CX-5", "29000"}, {"Chevrolet", "Silverado", "40000"}};
+    private static final String[] FEATURES = {"Reliable", "Sporty", "Electric", "Luxury", "Performance",
+            "Hybrid", "Sunroof", "Leather", "AWD", "Navigation"};
+    private static final String[] FIRST = {"John", "Jane", "Robert", "Michael", "William", "Priya", "Chen",
+            "Maria", "David", "Aisha", "Carlos", "Emma", "Olivia", "Liam", "Noah", "Sofia"};
+    private static final String[] LAST = {"Doe", "Smith", "Johnson", "Brown", "Davis", "Patel", "Wang",
+            "Garcia", "Miller", "Wilson", "Khan", "Nguyen", "Lopez", "Taylor", "Anderson", "Kim"};
+    private static final String[] DOMAINS = {"example.com", "mail.com", "inbox.net", "post.org"};
+    // Sale i buys car 1 + cars * u^SKEW for uniform u, so low IDs sell most.
+    private static final double SKEW = 3;
+    private static final double DUPLICATE_CUSTOMERS = 0.03;
+    private static final long SPAN_MILLIS = Duration.ofDays(730).toMillis();
+    private static final long LISTING_LEAD_MILLIS = Duration.ofDays(90).toMillis();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java DataGenerator <sales rows> [directory] [seed]");
+            System.exit(2);
+        }
+        long sales = Long.parseLong(args[0].replace("_", ""));
+        Path directory = Paths.get(args.length > 1 ? args[1] : "generated");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        long start = System.nanoTime();
+        write(directory, sales, seed);
+        System.out.printf("Wrote %,d cars, %,d customers and %,d sales to %s in %.1f s%n",
+                carsFor(sales), customersFor(sales), sales, directory.toAbsolutePath(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    static long carsFor(long sales) {
+        return Math.max(10, sales / 10);
+    }
+
+    static long customersFor(long sales) {
+        return Math.max(10, sales / 4);
+    }
+
+    static void write(Path directory, long sales, long seed) throws IOException {
+        write(directory, sales, seed, LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    // Times run up to, but not including, end.
+    static void write(Path directory, long sales, long seed, long end) throws IOException {
+        Files.createDirectories(directory);
+        long cars = carsFor(sales);
+        long customers = customersFor(sales);
+        write(directory.resolve("cars.csv"), StoreFormat.CARS, cars, id -> car(id, seed, cars, end));
+        write(directory.resolve("customers.csv"), StoreFormat.CUSTOMERS, customers, id -> customer(id, seed, customers, end));
+        write(directory.resolve("sales.csv"), StoreFormat.SALES, sales,
+                id -> sale(id, seed, cars, customers, sales, end));
+    }
+
+    private static <T> void write(Path file, StoreFormat<T> format, long rows, LongFunction<T> row)
+            throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (long id = 1; id <= rows; id++) {
+                writer.write(format.toCsv(row.apply(id)));
+                writer.newLine();
+            }
+        }
+    }
+
+    static Car car(long id, long seed, long cars, long end) {
+        SplittableRandom random = random(id, seed, 1);
+        String[] model = MODELS[random.nextInt(MODELS.length)];
+        // List prices within -15%..+25% of the model's base, in hundreds.
+        double price = Math.round(Integer.parseInt(model[2]) * (0.85 + 0.4 * random.nextDouble()) / 100) * 100;
+        long span = SPAN_MILLIS + LISTING_LEAD_MILLIS;
+        return new Car(String.valueOf(id), model[0], model[1], price, FEATURES[random.nextInt(FEATURES.length)],
+                timeOf(id, cars, end - span, span, random));
+    }
+
+    static Customer customer(long id, long seed) {
+        SplittableRandom random = random(id, seed, 2);
+        if (id > 1 && random.nextDouble() < DUPLICATE_CUSTOMERS) {
+            return reentered(id, customer(1 + random.nextLong(id - 1), seed), random);
+        }
+        String first = FIRST[random.nextInt(FIRST.length)];
+        String last = LAST[random.nextInt(LAST.length)];
+        String email = (first + "." + last + id).toLowerCase() + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+        String phone = String.format("555-%04d", random.nextInt(10_000));
+        return new Customer(String.valueOf(id), first + " " + last, email, phone);
+    }
+
+    static Customer customer(long id, long seed, long customers, long end) {
+        Customer customer = customer(id, seed);
+        long span = SPAN_MILLIS + LISTING_LEAD_MILLIS;
+        return new Customer(customer.getId(), customer.getName(), customer.getEmail(), customer.getPhone(),
+                timeOf(id, customers, end - span, span, random(id, seed, 4)));
+    }
+
+    static Customer reentered(long id, Customer original, SplittableRandom random) {
+        String name = random.nextBoolean() ? original.getName().replace(" ", "  ") : " " + original.getName();
+        String email = random.nextBoolean() ? original.getEmail().toUpperCase() : original.getEmail();
+        String digits = original.getPhone().replaceAll("[^0-9]", "");
+        String phone = random.nextBoolean() ? digits : digits.substring(0, 3) + " " + digits.substring(3);
+        return new Customer(String.valueOf(id), name, email, phone);
+    }
+
+    static Sale sale(long id, long seed, long cars, long customers, long sales, long end) {
+        SplittableRandom random = random(id, seed, 3);
+        long carId = 1 + Math.min(cars - 1, (long) (cars * Math.pow(random.nextDouble(), SKEW)));
+        long customerId = 1 + random.nextLong(customers);
+        double price = Math.round(car(carId, seed, cars, end).getPrice() * (1 - 0.08 * random.nextDouble()));
+        return new Sale(String.valueOf(id), String.valueOf(carId), String.valueOf(customerId), price,
+                timeOf(id, sales, end - SPAN_MILLIS, SPAN_MILLIS, random));
+    }
+
+    // The rows share the span evenly and each falls at a random moment in
+    // its share, so times increase with the ID.
+    private static long timeOf(long id, long rows, long start, long span, SplittableRandom random) {
+        double share = (double) span / rows;
+        return start + (long) ((id - 1) * share + random.nextDouble() * share);
+    }
+
+    private static SplittableRandom random(long id, long seed, long table) {
+        return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + table * 0xC2B2AE3D27D4EB4FL + id);
+    }
+}
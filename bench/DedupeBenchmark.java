@@ -0,0 +1,48 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A full duplicate scan over DataGenerator's customers, about 3% of which
+// re-enter an earlier customer. Phone numbers only have 10,000 values and
+// names a few hundred, so the phone and name blocks are large and exercise
+// the windowed comparison. Each run also counts sales per customer over
+// DataGenerator's sales, four per customer, as the app does to pick the
+// customer to keep. Run the laptop-scale case with -p rows=5000000.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class DedupeBenchmark {
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private List<Customer> customers;
+    private SaleColumnStore.Snapshot sales;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        customers = new ArrayList<>(rows);
+        for (long id = 1; id <= rows; id++) {
+            customers.add(DataGenerator.customer(id, 42));
+        }
+        long saleRows = 4L * rows;
+        long cars = DataGenerator.carsFor(saleRows);
+        long end = System.currentTimeMillis();
+        SaleColumnStore store = new SaleColumnStore();
+        for (long id = 1; id <= saleRows; id++) {
+            store.add(DataGenerator.sale(id, 42, cars, rows, saleRows, end));
+        }
+        sales = store.snapshot();
+    }
+
+    @Benchmark
+    public List<CustomerDedupe.Merge> find() {
+        Map<String, Integer> salesOf = sales.countByCustomer();
+        return CustomerDedupe.find(customers, id -> salesOf.getOrDefault(id, 0), CustomerDedupe.DEFAULT_MIN_SCORE);
+    }
+}
@@ -0,0 +1,69 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sustained sales per second through the change journal. maxBatch 1 is the
+// old fsync per change; 256 with no delay is the group-commit default, and a
+// 5 ms delay shows what waiting for fuller batches costs. burst is a clerk
+// entering sales back to back on the EDT, which never waits for the disk
+// (the score counts sales that reached it); clients are 16 API callers
+// that each wait for their sale to be on disk before sending the next.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupCommitBenchmark {
+    private static final int BURST = 1000;
+
+    @Param({"1", "256"})
+    public int maxBatch;
+
+    @Param({"0", "5"})
+    public long maxDelayMillis;
+
+    private Path directory;
+    private ChangeJournal journal;
+    private final AtomicLong saleIds = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void openJournal() throws IOException {
+        directory = Files.createTempDirectory("carstore-commit");
+        journal = new ChangeJournal(directory.resolve("sales.csv").toString(), maxBatch, maxDelayMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJournal() throws IOException {
+        journal.close();
+        Files.deleteIfExists(directory.resolve("sales.csv.journal"));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void burst() {
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < BURST; i++) {
+            last = logSale();
+        }
+        last.join();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void clients() {
+        logSale().join();
+    }
+
+    private CompletableFuture<Void> logSale() {
+        long id = saleIds.incrementAndGet();
+        Sale sale = new Sale(Long.toString(id), Long.toString(id % 100_000), Long.toString(id % 50_000), 24_000);
+        return journal.log(ChangeJournal.INSERT, sale.getSaleId(), StoreFormat.SALES.toCsv(sale));
+    }
+}
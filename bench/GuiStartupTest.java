@@ -0,0 +1,142 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// Time to the login screen and to the first table, each run in a fresh JVM:
+//
+//   java -cp benchmarks.jar carstore.GuiStartupTest <data dir> [runs] [JVM options...]
+//
+// Each run starts the window in <data dir> (see DataGenerator), logs in and
+// opens Cars through its components as a user would, and prints the
+// milliseconds from JVM start until the login screen shows and until the
+// Cars table shows rows, then the medians. The JVM options go to every run,
+// e.g. -XX:SharedArchiveFile=carstore.jsa to compare with a class data
+// sharing archive. Needs a display.
+public class GuiStartupTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--run")) {
+            run();
+            return;
+        }
+        Path dataDir = Paths.get(args.length > 0 ? args[0] : ".");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(args).subList(Math.min(2, args.length), args.length));
+        command.addAll(Arrays.asList("-cp", new File(GuiStartupTest.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()).getAbsolutePath(), GuiStartupTest.class.getName(), "--run"));
+
+        long[] login = new long[runs];
+        long[] table = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            Process process = new ProcessBuilder(command).directory(dataDir.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            String result;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                result = null;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("startup ")) {
+                        result = line;
+                    }
+                }
+            }
+            if (process.waitFor() != 0 || result == null) {
+                throw new IllegalStateException("Run " + (i + 1) + " failed");
+            }
+            String[] fields = result.split(" ");
+            login[i] = Long.parseLong(fields[1]);
+            table[i] = Long.parseLong(fields[2]);
+            System.out.printf("run %d: login screen %d ms, first table %d ms%n", i + 1, login[i], table[i]);
+        }
+        Arrays.sort(login);
+        Arrays.sort(table);
+        System.out.printf("median: login screen %d ms, first table %d ms%n", login[runs / 2], table[runs / 2]);
+    }
+
+    private static void run() throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("GuiStartupTest needs a display.");
+            System.exit(1);
+        }
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        CarStoreApp.main(new String[0]);
+
+        JButton loginButton = waitFor(JButton.class, button -> button.getText().equals("Login"));
+        long login = System.currentTimeMillis() - jvmStart;
+
+        SwingUtilities.invokeAndWait(() -> {
+            JPasswordField password = find(JPasswordField.class, field -> true);
+            JTextField username = find(JTextField.class, field -> !(field instanceof JPasswordField));
+            username.setText("admin");
+            password.setText("12345");
+            loginButton.doClick();
+            find(JButton.class, button -> button.getText().equals("Cars")).doClick();
+        });
+        waitFor(JTable.class, found -> found.getRowCount() > 0);
+        long table = System.currentTimeMillis() - jvmStart;
+
+        System.out.println("startup " + login + " " + table);
+        System.exit(0);
+    }
+
+    // Polls the EDT until a showing component matches.
+    private static <C extends Component> C waitFor(Class<C> type, Predicate<C> test) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            List<C> found = new ArrayList<>(1);
+            SwingUtilities.invokeAndWait(() -> {
+                C component = find(type, test);
+                if (component != null) {
+                    found.add(component);
+                }
+            });
+            if (!found.isEmpty()) {
+                return found.get(0);
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("No " + type.getSimpleName() + " showed up");
+    }
+
+    // Called on the EDT.
+    private static <C extends Component> C find(Class<C> type, Predicate<C> test) {
+        for (Window window : Window.getWindows()) {
+            C component = find(window, type, test);
+            if (component != null) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    private static <C extends Component> C find(Component component, Class<C> type, Predicate<C> test) {
+        if (!component.isShowing()) {
+            return null;
+        }
+        if (type.isInstance(component) && test.test(type.cast(component))) {
+            return type.cast(component);
+        }
+        if (component instanceof Container) {
+            for (Component child : ((Container) component).getComponents()) {
+                C found = find(child, type, test);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,135 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// The paths every release should keep an eye on, over files written by
+// DataGenerator and stores set up as in CarStoreApp (sales in a
+// SaleColumnStore indexed by car and customer). rows is the number of
+// sales; cars and customers scale with it. bench/baseline.json holds the
+// results to compare a change against.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class HotPathBenchmark {
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private Repository<Car> cars;
+    private Repository<Sale> sales;
+    private SaleColumnStore saleColumns;
+    private List<Sale> saleList;
+    private long probe;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("carstore-bench");
+        DataGenerator.write(directory, rows, 42);
+        cars = new Repository<>(Car::getId);
+        cars.addIndex(Car::getMake);
+        parse(directory.resolve("cars.csv"), StoreFormat.CARS, list -> list.forEach(cars::add));
+        saleColumns = new SaleColumnStore();
+        sales = new Repository<>(Sale::getSaleId, saleColumns);
+        sales.addIndex(Sale::getCarId);
+        sales.addIndex(Sale::getCustomerId);
+        parse(directory.resolve("sales.csv"), StoreFormat.SALES, list -> list.forEach(sales::add));
+        saleList = sales.toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // Startup without a snapshot, and the import path.
+    @Benchmark
+    public long parseSalesCsv() throws IOException {
+        return parse(directory.resolve("sales.csv"), StoreFormat.SALES, list -> { });
+    }
+
+    @Benchmark
+    public long parseCarsCsv() throws IOException {
+        return parse(directory.resolve("cars.csv"), StoreFormat.CARS, list -> { });
+    }
+
+    // Journal compaction rewrites the whole CSV, fsync included.
+    @Benchmark
+    public void rewriteSalesCsv() throws IOException {
+        PersistentTable.writeCsv(directory.resolve("rewrite.csv"), StoreFormat.SALES, saleList);
+    }
+
+    @Benchmark
+    public void writeSalesSnapshot() throws IOException {
+        SnapshotFile.write(directory.resolve("sales.snapshot"), StoreFormat.SALES, saleList);
+    }
+
+    // Every edit, reference check and API GET starts with an ID lookup.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Car findCarById() {
+        probe = (probe + 7919) % DataGenerator.carsFor(rows);
+        return cars.findById(Long.toString(probe + 1));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Sale findSaleById() {
+        probe = (probe + 7919) % rows;
+        return sales.findById(Long.toString(probe + 1));
+    }
+
+    // Reports and ad-hoc totals stream the rows; the column store sums its
+    // price array directly.
+    @Benchmark
+    public double revenueStream() {
+        return sales.stream().mapToDouble(Sale::getTotalPrice).sum();
+    }
+
+    @Benchmark
+    public double revenueColumns() {
+        return saleColumns.totalPrice();
+    }
+
+    // Opening the Sales panel: the model, its JTable and the first screen
+    // of cells.
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void salesTableModel(Blackhole blackhole) {
+        ChangeFeed<Sale> changes = new ChangeFeed<>(sales);
+        SaleTableModel model = new SaleTableModel(sales, changes);
+        JTable table = new JTable(model);
+        for (int row = 0; row < Math.min(VISIBLE_ROWS, model.getRowCount()); row++) {
+            for (int column = 0; column < model.getColumnCount(); column++) {
+                blackhole.consume(table.getValueAt(row, column));
+            }
+        }
+        sales.removeListener(changes);
+    }
+
+    private static <T> long parse(Path file, StoreFormat<T> format, Consumer<List<T>> consumer) throws IOException {
+        long[] parsed = new long[1];
+        format.parseCsv(file, chunk -> {
+            parsed[0] += chunk.size();
+            consumer.accept(chunk);
+        });
+        return parsed[0];
+    }
+}
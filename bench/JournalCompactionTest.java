@@ -0,0 +1,117 @@
+import javax.swing.*;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Regression checks for compacting the change journal:
+//
+//   java -cp benchmarks.jar carstore.JournalCompactionTest
+//
+// A change made while a compaction is queued: with the I/O thread held up,
+// customer 1 is added, a compaction is scheduled and customer 2 is added.
+// Once the thread runs again, both must be on disk: customer 1 in the CSV
+// and customer 2 in the new journal, not in the sealed log the compaction
+// deletes.
+//
+// A sealed log left by a crash: customer 3 is in a sealed log and customer
+// 5 in the active one, as after a crash during compaction. Loading must
+// compact both into the CSV and delete the sealed log, and customer 4,
+// added afterwards, must be journaled as usual.
+//
+// Runs in a fresh JVM in a temporary directory, as the tables use fixed
+// file names, and exits with 1 on failure.
+public class JournalCompactionTest {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--run")) {
+            System.exit(run() ? 0 : 1);
+        }
+        Path dir = Files.createTempDirectory("journal-test");
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Djava.awt.headless=true", "-cp", new File(JournalCompactionTest.class.getProtectionDomain()
+                .getCodeSource().getLocation().toURI()).getAbsolutePath(), JournalCompactionTest.class.getName(),
+                "--run").directory(dir.toFile()).inheritIO().start();
+        int status = process.waitFor();
+        for (File file : dir.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(dir);
+        System.exit(status);
+    }
+
+    private static boolean run() throws Exception {
+        boolean queued = queuedCompaction();
+        return leftoverSealedLog() && queued;
+    }
+
+    private static boolean queuedCompaction() throws Exception {
+        Repository<Customer> customers = new Repository<>(Customer::getId);
+        PersistentTable<Customer> table = new PersistentTable<>(StoreFormat.CUSTOMERS, customers);
+
+        CountDownLatch release = new CountDownLatch(1);
+        BackgroundTasks.io().execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        customers.add(new Customer("1", "Ann Lee", "ann@example.com", "555-0101"));
+        table.compact();
+        customers.add(new Customer("2", "Bob Ray", "bob@example.com", "555-0102"));
+        release.countDown();
+        table.durable().get(10, TimeUnit.SECONDS);
+        BackgroundTasks.io(() -> { }).get(10, TimeUnit.SECONDS);
+        String files = Arrays.toString(new File(".").list());
+
+        Repository<Customer> reloaded = reload();
+        boolean passed = reloaded.containsId("1") && reloaded.containsId("2");
+        System.out.println((passed ? "PASS" : "FAIL") + ": queued compaction, reloaded " + reloaded.size()
+                + " of 2 customers, files " + files);
+        return passed;
+    }
+
+    private static boolean leftoverSealedLog() throws Exception {
+        BackgroundTasks.io(() -> { }).get(10, TimeUnit.SECONDS);
+        for (File file : new File(".").listFiles()) {
+            Files.delete(file.toPath());
+        }
+        String csvFile = StoreFormat.CUSTOMERS.csvFile();
+        Files.createFile(Paths.get(csvFile));
+        ChangeJournal crashed = new ChangeJournal(csvFile);
+        crashed.log(ChangeJournal.INSERT, "3", StoreFormat.CUSTOMERS.toCsv(
+                new Customer("3", "Cal Orr", "cal@example.com", "555-0103")));
+        crashed.beginCompaction();
+        crashed.log(ChangeJournal.INSERT, "5", StoreFormat.CUSTOMERS.toCsv(
+                new Customer("5", "Eve Poe", "eve@example.com", "555-0105"))).get(10, TimeUnit.SECONDS);
+        crashed.close();
+
+        Repository<Customer> customers = new Repository<>(Customer::getId);
+        PersistentTable<Customer> table = new PersistentTable<>(StoreFormat.CUSTOMERS, customers);
+        table.load();
+        SwingUtilities.invokeAndWait(() -> { });
+        BackgroundTasks.io(() -> { }).get(10, TimeUnit.SECONDS);
+        customers.add(new Customer("4", "Dan Fox", "dan@example.com", "555-0104"));
+        table.durable().get(10, TimeUnit.SECONDS);
+        boolean sealedGone = !Files.exists(Paths.get(csvFile + ".journal.sealed"));
+        int csvLines = Files.readAllLines(Paths.get(csvFile)).size();
+        String files = Arrays.toString(new File(".").list());
+
+        Repository<Customer> reloaded = reload();
+        boolean passed = sealedGone && csvLines == 2 && reloaded.size() == 3 && reloaded.containsId("3")
+                && reloaded.containsId("4") && reloaded.containsId("5");
+        System.out.println((passed ? "PASS" : "FAIL") + ": leftover sealed log, " + csvLines + " of 2 rows in "
+                + csvFile + ", reloaded " + reloaded.size() + " of 3 customers, files " + files);
+        return passed;
+    }
+
+    private static Repository<Customer> reload() throws Exception {
+        Repository<Customer> reloaded = new Repository<>(Customer::getId);
+        new PersistentTable<>(StoreFormat.CUSTOMERS, reloaded).load();
+        SwingUtilities.invokeAndWait(() -> { });
+        return reloaded;
+    }
+}
@@ -0,0 +1,32 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of instrumentation on a hot path: recording into a histogram, and a
+// whole Metrics.time() call around an empty action, with no JFR recording
+// running. Run with -t 4 as well to see contention on the shared buckets.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private final Metrics.Histogram histogram = new Metrics.Histogram();
+
+    @Benchmark
+    public void record() {
+        histogram.record(ThreadLocalRandom.current().nextLong(1_000_000_000L));
+    }
+
+    @Benchmark
+    public Object timeEmptyAction() {
+        return Metrics.time("bench.empty", () -> null);
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return ThreadLocalRandom.current().nextLong(1_000_000_000L);
+    }
+}
@@ -0,0 +1,91 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Clicking the Total Price header of the Sales table and filtering it to
+// "sales over $50k", from the price OrderedIndex versus copying and
+// sorting the rows as a TableRowSorter would (it sorts every row, boxed,
+// to show the first page) and scanning the price column. A page is the 40
+// rows a table paints. addAndRemove is what the index adds to a write.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class OrderedIndexBenchmark {
+    private static final int PAGE = 40;
+    private static final double OVER = 50_000;
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private Repository<Sale> sales;
+    private SaleColumnStore.Snapshot snapshot;
+    private OrderedIndex<Sale, Double> byPrice;
+    private long nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("carstore-ordered");
+        DataGenerator.write(directory, rows, 42);
+        SaleColumnStore saleColumns = new SaleColumnStore();
+        sales = new Repository<>(Sale::getSaleId, saleColumns);
+        byPrice = new OrderedIndex<>(sales, Sale::getTotalPrice);
+        StoreFormat.SALES.parseCsv(directory.resolve("sales.csv"), list -> list.forEach(sales::add));
+        snapshot = saleColumns.snapshot();
+        nextId = rows * 10L;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Sale> sortedPageIndex() {
+        return new ArrayList<>(byPrice.range(null, null, true).subList(0, PAGE));
+    }
+
+    @Benchmark
+    public List<Sale> sortedPageCopy() {
+        List<Sale> all = sales.toList();
+        all.sort(byPrice.comparator().reversed());
+        return new ArrayList<>(all.subList(0, PAGE));
+    }
+
+    @Benchmark
+    public int overIndex() {
+        return byPrice.count(OVER, null);
+    }
+
+    @Benchmark
+    public int overScan() {
+        int count = 0;
+        for (int row = 0; row < snapshot.size(); row++) {
+            if (snapshot.price(row) >= OVER) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Sale addAndRemove() {
+        String id = Long.toString(nextId++);
+        sales.add(new Sale(id, "1", "1", 20_000 + nextId % 30_000, 0));
+        return sales.removeById(id);
+    }
+}
@@ -0,0 +1,74 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Quotes per second: the Customize panel's original linear scan plus
+// hardcoded surcharges, PricingEngine one quote at a time, and the batch API
+// pricing a fleet order of BATCH configurations across all cores.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+    private static final int CARS = 100_000;
+    private static final int BATCH = 10_000;
+
+    private final List<Car> carList = new ArrayList<>();
+    private PricingEngine engine;
+    private List<PricingEngine.Configuration> batch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Repository<Car> cars = new Repository<>(Car::getId);
+        Random random = new Random(42);
+        for (int i = 0; i < CARS; i++) {
+            Car car = new Car(Integer.toString(i), "Make " + random.nextInt(20), "Model " + random.nextInt(50),
+                    20_000 + random.nextInt(60_000), "Feature");
+            cars.add(car);
+            carList.add(car);
+        }
+        engine = new PricingEngine(cars, PricingEngine.readOptions(Paths.get(PricingEngine.OPTIONS_FILE)));
+        batch = new ArrayList<>();
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(configuration(random));
+        }
+    }
+
+    private static PricingEngine.Configuration configuration(Random random) {
+        return new PricingEngine.Configuration(Integer.toString(random.nextInt(CARS)),
+                random.nextInt(5), random.nextInt(3), random.nextInt(3), random.nextInt(3));
+    }
+
+    @Benchmark
+    public double legacyScan() {
+        PricingEngine.Configuration configuration = batch.get(next++ % BATCH);
+        double basePrice = 0;
+        for (Car car : carList) {
+            if (car.getId().equals(configuration.carId)) {
+                basePrice = car.getPrice();
+                break;
+            }
+        }
+        int[] options = configuration.options;
+        return basePrice + options[0] * 500 + options[1] * 800 + options[2] * 1000 + options[3] * 1200;
+    }
+
+    @Benchmark
+    public double engineSingle() {
+        PricingEngine.Configuration configuration = batch.get(next++ % BATCH);
+        return engine.price(configuration.carId, configuration.options);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double[] engineBatch() {
+        return engine.price(batch);
+    }
+}
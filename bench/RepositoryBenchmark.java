@@ -0,0 +1,113 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Primary-key and foreign-key lookups: the old linear scans over an
+// ArrayList against the hash indexes kept by Repository.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class RepositoryBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    private final List<Car> carList = new ArrayList<>();
+    private final List<Sale> saleList = new ArrayList<>();
+    private final Repository<Car> cars = new Repository<>(Car::getId);
+    private final Repository<Sale> sales = new Repository<>(Sale::getSaleId);
+    private final Repository<Sale> saleColumns = new Repository<>(Sale::getSaleId, new SaleColumnStore());
+    private Repository.Index<Sale> salesByCustomer;
+    private Repository.Index<Sale> saleColumnsByCustomer;
+    private int customers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        customers = Math.max(1, rows / 10);
+        salesByCustomer = sales.addIndex(Sale::getCustomerId);
+        saleColumnsByCustomer = saleColumns.addIndex(Sale::getCustomerId);
+        for (int i = 0; i < rows; i++) {
+            Car car = new Car(String.valueOf(i), "Make" + (i % 40), "Model" + (i % 400), 20000 + i % 50000, "Feature");
+            Sale sale = new Sale(String.valueOf(i), String.valueOf(i), String.valueOf(i % customers), car.getPrice());
+            carList.add(car);
+            cars.add(car);
+            saleList.add(sale);
+            sales.add(sale);
+            saleColumns.add(sale);
+        }
+    }
+
+    private String randomCarId() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(rows));
+    }
+
+    private String randomCustomerId() {
+        return String.valueOf(ThreadLocalRandom.current().nextInt(customers));
+    }
+
+    @Benchmark
+    public double carByIdListScan() {
+        String id = randomCarId();
+        return carList.stream()
+                .filter(car -> car.getId().equals(id))
+                .mapToDouble(Car::getPrice)
+                .findFirst()
+                .orElse(0);
+    }
+
+    @Benchmark
+    public double carByIdIndexed() {
+        Car car = cars.findById(randomCarId());
+        return car == null ? 0 : car.getPrice();
+    }
+
+    // The lookup update, compareAndSet and removeById start with.
+    @Benchmark
+    public long carVersionedById() {
+        Repository.Versioned<Car> read = cars.findVersioned(randomCarId());
+        return read == null ? 0 : read.version;
+    }
+
+    @Benchmark
+    public double salesByCustomerListScan() {
+        String id = randomCustomerId();
+        double total = 0;
+        for (Sale sale : saleList) {
+            if (sale.getCustomerId().equals(id)) {
+                total += sale.getTotalPrice();
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double salesByCustomerIndexed() {
+        double total = 0;
+        for (Sale sale : salesByCustomer.find(randomCustomerId())) {
+            total += sale.getTotalPrice();
+        }
+        return total;
+    }
+
+    // The column store's index, as used for the "is this customer still
+    // referenced" check on every customer delete or rename.
+    @Benchmark
+    public double salesByCustomerColumnIndex() {
+        double total = 0;
+        for (Sale sale : saleColumnsByCustomer.find(randomCustomerId())) {
+            total += sale.getTotalPrice();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int countByCustomerColumnIndex() {
+        return saleColumnsByCustomer.count(randomCustomerId());
+    }
+}
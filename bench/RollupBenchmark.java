@@ -0,0 +1,91 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// "Revenue over the last 30 days by make" answered from SalesRollups versus
+// a scan of the sale columns, over DataGenerator files (two years of sales
+// up to today). The scan is what a report would have to do without the
+// rollups; it runs over a snapshot taken in setup, so neither side pays for
+// copying.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class RollupBenchmark {
+    private static final long WINDOW_MILLIS = Duration.ofDays(30).toMillis();
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private SalesRollups rollups;
+    private SaleColumnStore.Snapshot snapshot;
+    private Map<String, String> makeByCar;
+    private long now;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        now = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        directory = Files.createTempDirectory("carstore-rollups");
+        DataGenerator.write(directory, rows, 42, now);
+        Repository<Car> cars = new Repository<>(Car::getId);
+        Repository<Customer> customers = new Repository<>(Customer::getId);
+        SaleColumnStore saleColumns = new SaleColumnStore();
+        Repository<Sale> sales = new Repository<>(Sale::getSaleId, saleColumns);
+        Repository.Index<Sale> salesByCar = sales.addIndex(Sale::getCarId);
+        rollups = new SalesRollups(cars, customers, sales, salesByCar);
+        StoreFormat.CARS.parseCsv(directory.resolve("cars.csv"), list -> list.forEach(cars::add));
+        StoreFormat.SALES.parseCsv(directory.resolve("sales.csv"), list -> list.forEach(sales::add));
+        snapshot = saleColumns.snapshot();
+        makeByCar = new HashMap<>();
+        cars.stream().forEach(car -> makeByCar.put(car.getId(), car.getMake()));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, Double> last30DaysRollups() {
+        return rollups.revenueByMake(now - WINDOW_MILLIS, now);
+    }
+
+    @Benchmark
+    public Map<String, Double> last30DaysScan() {
+        long from = now - WINDOW_MILLIS;
+        Map<String, Double> revenue = new TreeMap<>();
+        for (int row = 0; row < snapshot.size(); row++) {
+            long time = snapshot.soldAt(row);
+            if (time >= from && time < now) {
+                String make = makeByCar.getOrDefault(snapshot.carId(row), StoreAggregates.UNKNOWN_MAKE);
+                revenue.merge(make, snapshot.price(row), Double::sum);
+            }
+        }
+        return revenue;
+    }
+
+    // The Monthly Sales report's query.
+    @Benchmark
+    public SortedMap<Long, SalesRollups.Totals> monthlySeries() {
+        return rollups.series(SalesRollups.MONTH, rollups.firstMonth(), now);
+    }
+}
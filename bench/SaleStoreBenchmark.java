@@ -0,0 +1,83 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One-object-per-row sales against SaleColumnStore, both indexed by car and
+// customer as in CarStoreApp. JMH times the revenue scan and ID lookups;
+// main() reports retained heap per sale, e.g.
+//   java -Xmx4g -cp ... SaleStoreBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SaleStoreBenchmark {
+    private static final int ROWS = 1_000_000;
+
+    @Param({"objects", "columns"})
+    public String store;
+
+    private Repository<Sale> sales;
+    private SaleColumnStore columns;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        columns = store.equals("columns") ? new SaleColumnStore() : null;
+        sales = build(columns);
+    }
+
+    @Benchmark
+    public double revenue() {
+        return columns != null ? columns.totalPrice() : sales.stream().mapToDouble(Sale::getTotalPrice).sum();
+    }
+
+    @Benchmark
+    public Sale findById() {
+        probe = (probe + 7919) % ROWS;
+        return sales.findById(Integer.toString(probe));
+    }
+
+    static Repository<Sale> build(SaleColumnStore columns) {
+        Repository<Sale> sales = columns != null
+                ? new Repository<>(Sale::getSaleId, columns)
+                : new Repository<>(Sale::getSaleId);
+        sales.addIndex(Sale::getCarId);
+        sales.addIndex(Sale::getCustomerId);
+        Random random = new Random(42);
+        for (int i = 0; i < ROWS; i++) {
+            sales.add(new Sale(Integer.toString(i), Integer.toString(random.nextInt(100_000)),
+                    Integer.toString(random.nextInt(50_000)), 10_000 + random.nextInt(8_000_000) / 100.0));
+        }
+        return sales;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long columns = retainedBytes(true);
+        long objects = retainedBytes(false);
+        System.out.printf("objects: %d bytes/sale%ncolumns: %d bytes/sale%nratio:   %.1fx%n",
+                objects / ROWS, columns / ROWS, (double) objects / columns);
+    }
+
+    // Keeps the store reachable while the heap is measured.
+    private static Repository<Sale> retained;
+
+    private static long retainedBytes(boolean columnar) throws InterruptedException {
+        long before = usedHeap();
+        retained = build(columnar ? new SaleColumnStore() : null);
+        long after = usedHeap();
+        retained = null;
+        return after - before;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
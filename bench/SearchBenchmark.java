@@ -0,0 +1,65 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// One keystroke of the Customers search: the trigram/token index against a
+// lower-cased String.contains scan over name, email and phone.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SearchBenchmark {
+    private static final String[] FIRST = {"John", "Jane", "Robert", "Michael", "William", "Priya", "Chen", "Maria"};
+    private static final String[] LAST = {"Doe", "Smith", "Johnson", "Brown", "Davis", "Patel", "Wang", "Garcia"};
+
+    @Param({"100000", "500000"})
+    int rows;
+
+    @Param({"jo", "john", "john.doe1234", "555-12", "smith 555"})
+    String query;
+
+    private final Repository<Customer> customers = new Repository<>(Customer::getId);
+    private SearchIndex<Customer> index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new SearchIndex<>(customers, Customer::getName, Customer::getEmail, Customer::getPhone);
+        Random random = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            String first = FIRST[random.nextInt(FIRST.length)];
+            String last = LAST[random.nextInt(LAST.length)];
+            customers.add(new Customer(String.valueOf(i), first + " " + last + i,
+                    (first + "." + last + i + "@example.com").toLowerCase(Locale.ROOT),
+                    "555-" + (1000 + random.nextInt(9000))));
+        }
+    }
+
+    @Benchmark
+    public int indexed() {
+        return index.search(query).size();
+    }
+
+    @Benchmark
+    public int containsScan() {
+        String[] terms = query.toLowerCase(Locale.ROOT).split("\\s+");
+        int matches = 0;
+        for (int i = 0; i < customers.size(); i++) {
+            Customer customer = customers.get(i);
+            String text = (customer.getName() + "\n" + customer.getEmail() + "\n" + customer.getPhone())
+                    .toLowerCase(Locale.ROOT);
+            boolean all = true;
+            for (String term : terms) {
+                all &= text.contains(term);
+            }
+            if (all) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
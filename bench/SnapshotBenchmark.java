@@ -0,0 +1,104 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Report-style reads (a pass adding up every sale's price) while a writer
+// keeps adding, editing and deleting sales. snapshot reads a point-in-time
+// snapshot without the lock; locked holds the read lock for the whole
+// pass, which is what reading the live store safely takes; copy is the old
+// toList() under the lock. Each group reports the reader's passes and the
+// writer's changes per second; a snapshot's cost shows up on the writer,
+// whose first edit after it copies the columns.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class SnapshotBenchmark {
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private Path directory;
+    private Repository<Sale> sales;
+    private SaleColumnStore saleColumns;
+    private long nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("carstore-snapshot");
+        DataGenerator.write(directory, rows, 42);
+        saleColumns = new SaleColumnStore();
+        sales = new Repository<>(Sale::getSaleId, saleColumns);
+        StoreFormat.SALES.parseCsv(directory.resolve("sales.csv"), list -> list.forEach(sales::add));
+        nextId = rows * 10L;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    public double snapshotRead() {
+        return sales.read(saleColumns::snapshot).totalPrice();
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    public Sale snapshotWrite() {
+        return write();
+    }
+
+    @Benchmark
+    @Group("locked")
+    public double lockedRead() {
+        return sales.read(saleColumns::totalPrice);
+    }
+
+    @Benchmark
+    @Group("locked")
+    public Sale lockedWrite() {
+        return write();
+    }
+
+    @Benchmark
+    @Group("copy")
+    public double copyRead() {
+        List<Sale> copy = sales.toList();
+        double total = 0;
+        for (Sale sale : copy) {
+            total += sale.getTotalPrice();
+        }
+        return total;
+    }
+
+    @Benchmark
+    @Group("copy")
+    public Sale copyWrite() {
+        return write();
+    }
+
+    // One sale added, one existing sale repriced and the new one deleted.
+    private Sale write() {
+        String id = Long.toString(nextId++);
+        sales.add(new Sale(id, "1", "1", 20_000, 0));
+        int position = ThreadLocalRandom.current().nextInt(rows);
+        Sale sale = sales.get(position);
+        sales.set(position, new Sale(sale.getSaleId(), sale.getCarId(), sale.getCustomerId(),
+                sale.getTotalPrice() + 1, sale.getSoldAt()));
+        return sales.removeById(id);
+    }
+}
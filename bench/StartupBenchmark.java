@@ -0,0 +1,70 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cold-load time for the cars table from cars.csv against the binary
+// snapshot, the work done on the I/O thread before the tables are filled.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class StartupBenchmark {
+    private static final String[] MAKES = {"Toyota", "Honda", "Ford", "BMW", "Audi", "Tesla", "Kia", "Mazda"};
+    private static final String[] FEATURES = {"Sunroof", "Leather", "Navigation", "AWD", "Hybrid", "Turbo"};
+
+    @Param({"1000000", "10000000"})
+    public int rows;
+
+    private Path csv;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        csv = Files.createTempFile("cars-bench", ".csv");
+        snapshot = Files.createTempFile("cars-bench", ".snapshot");
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write("C" + i + "," + MAKES[random.nextInt(MAKES.length)] + ",Model "
+                        + random.nextInt(200) + "," + (10_000 + random.nextInt(80_000)) + "."
+                        + random.nextInt(100) + "," + FEATURES[random.nextInt(FEATURES.length)]);
+                writer.newLine();
+            }
+        }
+        SnapshotFile.write(snapshot, StoreFormat.CARS, loadCsv());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    public void csv(Blackhole blackhole) throws IOException {
+        blackhole.consume(loadCsv());
+    }
+
+    @Benchmark
+    public void snapshot(Blackhole blackhole) throws IOException {
+        List<Car> loaded = new ArrayList<>(rows);
+        SnapshotFile.read(snapshot, StoreFormat.CARS, loaded::addAll);
+        blackhole.consume(loaded);
+    }
+
+    private List<Car> loadCsv() throws IOException {
+        List<Car> loaded = new ArrayList<>(rows);
+        StoreFormat.CARS.parseCsv(csv, loaded::addAll);
+        return loaded;
+    }
+}
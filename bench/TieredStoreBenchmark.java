@@ -0,0 +1,170 @@
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Car lookups against the in-heap ListRowStore and against TieredRowStore
+// with caches holding 1% and 10% of the rows. IDs are drawn from a Zipf
+// distribution, since a few cars get most of the attention. main first
+// checks the tiered store against ListRowStore under random edits, then
+// prints each cache's hit rate and runs the benchmarks.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TieredStoreBenchmark {
+    private static final int CARS = 1_000_000;
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    @Param({"heap", "tiered-1%", "tiered-10%"})
+    public String store;
+
+    private Repository<Car> cars;
+    private Zipf zipf;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        cars = filled(store.equals("heap") ? new ListRowStore<>(Car::getId)
+                : tiered(CARS / 100 * Integer.parseInt(store.replaceAll("\\D", ""))), CARS);
+        zipf = new Zipf(CARS, ZIPF_EXPONENT);
+    }
+
+    @Benchmark
+    public Car findById() {
+        return cars.findById(Integer.toString(zipf.next(ThreadLocalRandom.current())));
+    }
+
+    @Benchmark
+    public void salesJoin(Blackhole blackhole) {
+        // A screenful of sales, each looking up its car.
+        for (int i = 0; i < 40; i++) {
+            blackhole.consume(cars.findById(Integer.toString(zipf.next(ThreadLocalRandom.current()))));
+        }
+    }
+
+    private static TieredRowStore<Car> tiered(int cachedRows) throws IOException {
+        return new TieredRowStore<>(StoreFormat.CARS, Files.createTempFile("cars", ".rows"), cachedRows,
+                10, TimeUnit.MINUTES);
+    }
+
+    private static Repository<Car> filled(RowStore<Car> rows, int count) {
+        Repository<Car> cars = new Repository<>(Car::getId, rows);
+        cars.addIndex(Car::getMake);
+        for (int i = 0; i < count; i++) {
+            cars.add(car(i, 20_000 + i % 50_000));
+        }
+        return cars;
+    }
+
+    private static Car car(int id, double price) {
+        return new Car(Integer.toString(id), "Make" + id % 40, "Model" + id % 400, price, "Feature " + id % 7);
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        differentialCheck();
+        for (int percent : new int[]{1, 10}) {
+            TieredRowStore<Car> rows = tiered(CARS / 100 * percent);
+            Repository<Car> cars = filled(rows, CARS);
+            Zipf zipf = new Zipf(CARS, ZIPF_EXPONENT);
+            Random random = new Random(7);
+            int lookups = 2_000_000;
+            RowCache.Stats before = rows.cacheStats();
+            for (int i = 0; i < lookups; i++) {
+                cars.findById(Integer.toString(zipf.next(random)));
+            }
+            RowCache.Stats after = rows.cacheStats();
+            System.out.printf("cache of %d%%: %.1f%% of %,d lookups hit; %s%n", percent,
+                    100.0 * (after.hits - before.hits) / lookups, lookups, after);
+        }
+        new Runner(new OptionsBuilder().include(TieredStoreBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // Adds, edits, renames and removes at random on both stores, with a
+    // cache far smaller than the table and enough churn to compact the
+    // file, and compares contents, positions and index results as it goes.
+    private static void differentialCheck() throws IOException {
+        Repository<Car> expected = new Repository<>(Car::getId);
+        Repository.Index<Car> expectedByMake = expected.addIndex(Car::getMake);
+        TieredRowStore<Car> rows = tiered(500);
+        Repository<Car> actual = new Repository<>(Car::getId, rows);
+        Repository.Index<Car> actualByMake = actual.addIndex(Car::getMake);
+        Random random = new Random(11);
+        int nextId = 0;
+        int operations = 400_000;
+        for (int op = 0; op < operations; op++) {
+            int kind = random.nextInt(10);
+            if (kind < 3 || expected.size() < 100) {
+                Car car = car(nextId++, random.nextInt(100_000));
+                expected.add(car);
+                actual.add(car);
+            } else if (kind < 8) {
+                int position = random.nextInt(expected.size());
+                String id = random.nextInt(20) == 0 ? Integer.toString(nextId++) : expected.get(position).getId();
+                Car car = new Car(id, "Make" + random.nextInt(40), "Model" + random.nextInt(400),
+                        random.nextInt(100_000), "x".repeat(random.nextInt(400)));
+                expected.set(position, car);
+                actual.set(position, car);
+            } else {
+                int position = random.nextInt(expected.size());
+                expected.remove(position);
+                actual.remove(position);
+            }
+            if (op % 1000 == 0) {
+                int position = random.nextInt(expected.size());
+                String id = expected.get(position).getId();
+                String make = "Make" + random.nextInt(40);
+                if (!same(expected.findById(id), actual.findById(id)) || actual.positionOf(id) != position
+                        || !same(expected.get(position), actual.get(position))
+                        || expectedByMake.count(make) != actualByMake.count(make)) {
+                    throw new AssertionError("Stores differ after " + op + " operations at " + id);
+                }
+            }
+        }
+        List<Car> all = actual.toList();
+        for (int i = 0; i < expected.size(); i++) {
+            if (!same(expected.get(i), all.get(i))) {
+                throw new AssertionError("Stores differ at position " + i);
+            }
+        }
+        System.out.printf("differential check: %,d operations, %,d rows, identical; cache %s%n",
+                operations, expected.size(), rows.cacheStats());
+    }
+
+    private static boolean same(Car a, Car b) {
+        return a.getId().equals(b.getId()) && a.getMake().equals(b.getMake()) && a.getModel().equals(b.getModel())
+                && a.getPrice() == b.getPrice() && a.getFeature().equals(b.getFeature());
+    }
+
+    // Inverse-CDF sampling over precomputed cumulative weights.
+    private static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int next(Random random) {
+            int found = Arrays.binarySearch(cumulative, random.nextDouble());
+            return found >= 0 ? found : Math.min(cumulative.length - 1, -found - 1);
+        }
+    }
+}